@@ -1,28 +1,90 @@
 package com.nmr.image_api.controller;
 
+import com.nmr.image_api.dto.BatchUploadResponse;
+import com.nmr.image_api.dto.ImageMetaPage;
 import com.nmr.image_api.dto.ImageMetaResponse;
+import com.nmr.image_api.dto.PurgeJobResponse;
+import com.nmr.image_api.dto.PurgeRequest;
+import com.nmr.image_api.dto.SimilarImagesResponse;
 import com.nmr.image_api.dto.UploadResponse;
 import com.nmr.image_api.dto.UpdateMetaRequest;
 import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.metrics.ImageMetrics;
+import com.nmr.image_api.service.BatchUploadService;
+import com.nmr.image_api.service.CompactVariants;
+import com.nmr.image_api.service.DescriptorCache;
+import com.nmr.image_api.service.DownloadDescriptor;
+import com.nmr.image_api.service.HotBlobCache;
+import com.nmr.image_api.service.ImageArchiveService;
 import com.nmr.image_api.service.ImageService;
+import com.nmr.image_api.service.MetaExportService;
+import com.nmr.image_api.service.MetaJsonCache;
+import com.nmr.image_api.service.PurgeJobs;
+import com.nmr.image_api.service.SimilarityIndex;
+import com.nmr.image_api.service.VariantService;
+import com.nmr.image_api.service.VariantSpec;
+import com.nmr.image_api.storage.BlobRegion;
+import com.nmr.image_api.web.ConcurrencyLimits;
+import com.nmr.image_api.web.ConditionalRequests;
+import com.nmr.image_api.web.FileResponder;
+import com.nmr.image_api.web.Negotiation;
+import com.nmr.image_api.web.NotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/images")
 public class ImageController {
 
     private static final Logger log = LoggerFactory.getLogger(ImageController.class);
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+
     private final ImageService service;
+    private final VariantService variants;
+    private final CompactVariants compact;
+    private final MetaExportService exporter;
+    private final ImageArchiveService archives;
+    private final BatchUploadService batch;
+    private final HotBlobCache hot;
+    private final MetaJsonCache metaJson;
+    private final SimilarityIndex similar;
+    private final PurgeJobs purges;
+    private final ConcurrencyLimits limits;
+    private final ImageMetrics metrics;
 
-    public ImageController(ImageService service) {
+    public ImageController(ImageService service, VariantService variants, CompactVariants compact,
+                           MetaExportService exporter, ImageArchiveService archives, BatchUploadService batch,
+                           HotBlobCache hot, MetaJsonCache metaJson, SimilarityIndex similar, PurgeJobs purges,
+                           ConcurrencyLimits limits, ImageMetrics metrics) {
         this.service = service;
+        this.variants = variants;
+        this.compact = compact;
+        this.exporter = exporter;
+        this.archives = archives;
+        this.batch = batch;
+        this.hot = hot;
+        this.metaJson = metaJson;
+        this.similar = similar;
+        this.purges = purges;
+        this.limits = limits;
+        this.metrics = metrics;
     }
 
     /** POST /images/upload — upload an image */
@@ -43,72 +105,317 @@ public class ImageController {
                 .body(new UploadResponse(saved.getId(), downloadUrl, metaUrl));
     }
 
-    /** GET /images/ref — download by referenceId + referenceType */
+    /**
+     * POST /images/batch — upload many images in one request; referenceId is given once for all files or once
+     * per file (same order). Files are processed in parallel and the response reports a status per file.
+     */
+    @PostMapping(path = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public BatchUploadResponse uploadBatch(
+            @RequestParam("file") List<MultipartFile> files,
+            @RequestParam(value = "uploadedBy", required = false) String uploadedBy,
+            @RequestParam("referenceId") List<String> referenceIds,
+            @RequestParam("referenceType") String referenceType
+    ) {
+        List<BatchUploadResponse.Item> items = batch.upload(files, uploadedBy, referenceIds, referenceType).stream()
+                .map(r -> r.ok()
+                        ? new BatchUploadResponse.Item(r.index(), r.filename(), BatchUploadResponse.Status.CREATED,
+                                r.asset().getId(),
+                                "/images/ref?referenceId=" + r.asset().getReferenceId() + "&referenceType=" + referenceType,
+                                "/images/" + r.asset().getId() + "/meta", null)
+                        : new BatchUploadResponse.Item(r.index(), r.filename(), BatchUploadResponse.Status.FAILED,
+                                null, null, null, r.error()))
+                .toList();
+        int created = (int) items.stream().filter(i -> i.status() == BatchUploadResponse.Status.CREATED).count();
+        log.info("Batch upload: {} created, {} failed", created, items.size() - created);
+        return new BatchUploadResponse(created, items.size() - created, items);
+    }
+
+    /**
+     * GET /images/ref — download by referenceId + referenceType (supports Range and conditional requests).
+     * Like GET /images/{id}, may answer with a smaller re-encoding when Accept allows (see {@link CompactVariants}).
+     */
     @GetMapping("/ref")
     public ResponseEntity<Resource> getByReference(
             @RequestParam String referenceId,
-            @RequestParam String referenceType
+            @RequestParam String referenceType,
+            HttpServletRequest request
     ) {
-        var meta = service.getMetaByReference(referenceId, referenceType);
-        Resource res = service.getByReference(referenceId, referenceType);
+        limits.acquire("ref", request);
+        long start = System.nanoTime();
+        DescriptorCache.Lookup found = service.lookupByReference(referenceId, referenceType);
+        return measured("ref", found.hit(), start, serveOriginal(found.descriptor(), true, request));
+    }
 
-        String filename = (meta.originalFilename() != null && !meta.originalFilename().isBlank())
-                ? meta.originalFilename()
-                : referenceId + "-" + referenceType;
+    /**
+     * GET /images/refs?referenceType=&referenceId=a&referenceId=b — metadata of every image of many references (up
+     * to 1000) in one call, in the order requested and newest first within a reference; latest=true keeps only the
+     * newest per reference, as GET /images/ref would pick it.
+     */
+    @GetMapping("/refs")
+    public List<ImageMetaResponse> listByReferences(
+            @RequestParam String referenceType,
+            @RequestParam(required = false) List<String> referenceId,
+            @RequestParam(defaultValue = "false") boolean latest
+    ) {
+        return service.getMetaByReferences(referenceType, referenceId, latest);
+    }
 
+    /** GET /images/refs?...&format=zip — the same images' originals as one zip, streamed */
+    @GetMapping(path = "/refs", params = "format=zip")
+    public ResponseEntity<StreamingResponseBody> zipByReferences(
+            @RequestParam String referenceType,
+            @RequestParam(required = false) List<String> referenceId,
+            @RequestParam(defaultValue = "false") boolean latest
+    ) {
+        List<ImageAsset> images = service.findByReferences(referenceType, referenceId, latest);
+        StreamingResponseBody body = out -> archives.writeZip(images, out);
         return ResponseEntity.ok()
-                .contentType(service.getMediaTypeByReference(referenceId, referenceType))
-                .contentLength(meta.sizeBytes())
-                .eTag("\"" + meta.checksumSha256() + "\"")
-                .header(HttpHeaders.CACHE_CONTROL, "max-age=86400, public")
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                .body(res);
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"images.zip\"")
+                .body(body);
     }
 
-    /** GET /images/{id} — get raw image by id */
+    /** GET /images/refs?...&format=multipart — the same images' originals as multipart/mixed, one part each */
+    @GetMapping(path = "/refs", params = "format=multipart")
+    public ResponseEntity<StreamingResponseBody> multipartByReferences(
+            @RequestParam String referenceType,
+            @RequestParam(required = false) List<String> referenceId,
+            @RequestParam(defaultValue = "false") boolean latest
+    ) {
+        List<ImageAsset> images = service.findByReferences(referenceType, referenceId, latest);
+        String boundary = UUID.randomUUID().toString();
+        StreamingResponseBody body = out -> archives.writeMultipart(images, boundary, out);
+        return ResponseEntity.ok()
+                .contentType(new MediaType("multipart", "mixed", Map.of("boundary", boundary)))
+                .body(body);
+    }
+
+    /**
+     * GET /images/{id} — get raw image by id, or a resized variant when w/h/fit/format/q are given
+     * (supports Range and conditional requests; variants carry a weak ETag since re-rendering may change bytes).
+     * Without variant parameters the response is negotiated on Accept: browsers asking for images may get a
+     * compact re-encoding instead of a large original, so responses carry {@code Vary: Accept}.
+     */
     @GetMapping("/{id}")
     public ResponseEntity<Resource> getImage(
             @PathVariable long id,
-            @RequestHeader(value = "If-None-Match", required = false) String inm
+            @RequestParam(required = false) Integer w,
+            @RequestParam(required = false) Integer h,
+            @RequestParam(required = false) String fit,
+            @RequestParam(required = false) String format,
+            @RequestParam(required = false) Integer q,
+            HttpServletRequest request
     ) {
-        ImageMetaResponse meta = service.getMeta(id);
-        Resource res = service.getImageData(id);
+        boolean variant = VariantSpec.requested(w, h, fit, format, q);
+        limits.acquire(variant ? "variant" : "id", request);
+        long start = System.nanoTime();
+        DescriptorCache.Lookup found = service.lookup(id);
+        return measured(variant ? "variant" : "id", found.hit(), start,
+                serveImage(found.descriptor(), variant, w, h, fit, format, q, request));
+    }
+
+    private ResponseEntity<Resource> serveImage(DownloadDescriptor d, boolean variant, Integer w, Integer h, String fit,
+                                                String format, Integer q, HttpServletRequest request) {
+        if (variant) {
+            VariantSpec spec = VariantSpec.of(w, h, fit, format, q, d.mediaType().toString());
+            String etag = "W/\"" + d.checksumSha256() + "-" + spec.key() + "\"";
+            HttpHeaders headers = downloadHeaders(etag, d.lastModified());
+            ResponseEntity<Resource> precondition = ConditionalRequests.evaluate(request, etag, d.lastModified(), headers);
+            if (precondition != null) return precondition;
 
-        String etag = "\"" + meta.checksumSha256() + "\"";
-        if (etag.equals(inm)) {
-            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            ByteBuffer held = hot.getIfPresent(etag);
+            if (held != null) return FileResponder.serve(request, held, spec.mediaType(), headers, d.lastModified());
+            Path file = variants.getOrRender(d.checksumSha256(), service.source(d), spec);
+            long size = fileSize(file);
+            return serveBytes(request, etag, size, () -> new BlobRegion(file, 0, size), spec.mediaType(), headers,
+                    d.lastModified());
         }
 
-        return ResponseEntity.ok()
-                .contentType(service.getMediaType(id))
-                .contentLength(meta.sizeBytes())
-                .eTag(etag)
-                .header(HttpHeaders.CACHE_CONTROL, "max-age=86400, public")
-                .body(res);
+        return serveOriginal(d, false, request);
+    }
+
+    /** The stored original, or its compact encoding when the client's Accept header prefers that. */
+    private ResponseEntity<Resource> serveOriginal(DownloadDescriptor d, boolean attachment, HttpServletRequest request) {
+        CompactVariants.Compact c = compact.select(d, request.getHeader(HttpHeaders.ACCEPT));
+        String etag = c != null ? c.etag() : d.etag();
+        HttpHeaders headers = downloadHeaders(etag, d.lastModified());
+        if (compact.enabled()) headers.setVary(List.of(HttpHeaders.ACCEPT));
+        ResponseEntity<Resource> precondition = ConditionalRequests.evaluate(request, etag, d.lastModified(), headers);
+        if (precondition != null) return precondition;
+
+        if (attachment) {
+            String name = c != null ? withExtension(d.filename(), "jpg") : d.filename();
+            headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "\"");
+        }
+        if (c == null) {
+            return serveBytes(request, etag, d.sizeBytes(), () -> service.locate(d), d.mediaType(), headers,
+                    d.lastModified());
+        }
+        ResponseEntity<Resource> r = serveBytes(request, etag, c.sizeBytes(), () -> new BlobRegion(c.path(), 0, c.sizeBytes()),
+                c.mediaType(), headers, d.lastModified());
+        if (r.getStatusCode().value() == 200) metrics.compactSaved(CompactVariants.savedBytes(d, c));
+        return r;
     }
 
-    /** GET /images/{id}/meta — get metadata as JSON */
+    /** GET /images/{id}/meta — get metadata as JSON (ETag / If-None-Match) */
     @GetMapping("/{id}/meta")
-    public ImageMetaResponse getMeta(@PathVariable long id) {
-        return service.getMeta(id);
+    public ResponseEntity<ImageMetaResponse> getMeta(@PathVariable long id, HttpServletRequest request) {
+        ImageMetaResponse meta = service.getMeta(id);
+        String etag = ImageService.metaEtag(meta);
+        HttpHeaders headers = ConditionalRequests.validators(new HttpHeaders(), etag, null);
+        ResponseEntity<ImageMetaResponse> precondition = ConditionalRequests.evaluate(request, etag, null, headers);
+        if (precondition != null) return precondition;
+        return ResponseEntity.ok().headers(headers).body(meta);
     }
 
-    /** GET /images/allmeta — list all metadata */
+    /**
+     * GET /images/{id}/similar — near-duplicates (re-encoded, resized, lightly edited copies) by perceptual hash,
+     * nearest first; maxDistance is in differing bits of 64 (0..16)
+     */
+    @GetMapping("/{id}/similar")
+    public SimilarImagesResponse similar(
+            @PathVariable long id,
+            @RequestParam(defaultValue = "10") int maxDistance,
+            @RequestParam(defaultValue = "50") int limit
+    ) {
+        return similar.similarTo(id, maxDistance, limit);
+    }
+
+    /**
+     * GET /images/allmeta — list all metadata (small catalogues; use /images/meta or /images/export otherwise).
+     * Carries a weak ETag of the catalogue state, so an unchanged list revalidates with 304. The JSON is built from
+     * per-row cached JSON and sent pre-compressed when Accept-Encoding allows gzip; Accept: application/cbor gets
+     * CBOR (as do the other metadata endpoints, through content negotiation).
+     */
     @GetMapping("/allmeta")
-    public List<ImageMetaResponse> listAllMeta() {
-        return service.getAllMeta();
+    public ResponseEntity<?> listAllMeta(HttpServletRequest request) {
+        String etag = metaJson.catalogueEtag();
+        HttpHeaders headers = ConditionalRequests.validators(new HttpHeaders(), etag, null);
+        headers.setCacheControl(CacheControl.noCache());
+        headers.setVary(List.of(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING));
+        ResponseEntity<?> precondition = ConditionalRequests.evaluate(request, etag, null, headers);
+        if (precondition != null) return precondition;
+
+        if (Negotiation.prefers(request.getHeader(HttpHeaders.ACCEPT), CBOR, MediaType.APPLICATION_JSON)) {
+            headers.setContentType(CBOR);
+            return ResponseEntity.ok().headers(headers).body(service.getAllMeta());
+        }
+        MetaJsonCache.Catalogue catalogue = metaJson.catalogue(etag);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (Negotiation.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            return ResponseEntity.ok().headers(headers).body(catalogue.gzip());
+        }
+        return ResponseEntity.ok().headers(headers).body(catalogue.json());
+    }
+
+    /** GET /images/meta — keyset-paginated metadata; follow nextCursor via ?after= */
+    @GetMapping("/meta")
+    public ImageMetaPage listMeta(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) String referenceType,
+            @RequestParam(required = false) String uploadedBy
+    ) {
+        return service.getMetaPage(after, limit, referenceType, uploadedBy);
+    }
+
+    /** GET /images/export — full metadata catalogue as NDJSON, streamed from a DB cursor */
+    @GetMapping(path = "/export", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportMeta(
+            @RequestParam(required = false) String referenceType,
+            @RequestParam(required = false) String uploadedBy
+    ) {
+        StreamingResponseBody body = out -> exporter.exportNdjson(referenceType, uploadedBy, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON_VALUE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"images.ndjson\"")
+                .body(body);
     }
 
-    /** PUT /images/{id}/meta — update uploadedBy / filename */
+    /** PUT /images/{id}/meta — update uploadedBy / filename; If-Match takes the ETag from GET /images/{id}/meta */
     @PutMapping(path = "/{id}/meta", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ImageMetaResponse editMeta(@PathVariable long id, @RequestBody UpdateMetaRequest req) {
-        return service.updateMeta(id, req.uploadedBy(), req.originalFilename());
+    public ResponseEntity<ImageMetaResponse> editMeta(@PathVariable long id, @RequestBody UpdateMetaRequest req,
+                                                      HttpServletRequest request) {
+        // checked by the service against the row it saves, so a concurrent edit cannot slip in between
+        ImageMetaResponse updated = service.updateMeta(id, req.uploadedBy(), req.originalFilename(),
+                !hasPreconditions(request) ? null : current -> ConditionalRequests.evaluate(
+                        request, ImageService.metaEtag(current), null, new HttpHeaders()) == null);
+        return ResponseEntity.ok().eTag(ImageService.metaEtag(updated)).body(updated);
     }
 
-    /** DELETE /images/{id} — delete image + metadata */
+    /** DELETE /images/{id} — delete image + metadata; If-Match / If-Unmodified-Since are checked against the original */
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> delete(@PathVariable long id) {
+    public ResponseEntity<Void> delete(@PathVariable long id, HttpServletRequest request) {
+        if (hasPreconditions(request)) {
+            DownloadDescriptor d = service.resolve(id);
+            ResponseEntity<Void> precondition = ConditionalRequests.evaluate(request, d.etag(), d.lastModified(), new HttpHeaders());
+            if (precondition != null) return precondition;
+        }
         service.deleteImage(id);
         return ResponseEntity.noContent().build();
     }
+
+    /**
+     * POST /images/purge — delete every image of referenceType + referenceIds (up to 1000) and/or uploaded before
+     * uploadedBefore, as a background job; 202 with the job, whose progress is at the Location
+     */
+    @PostMapping(path = "/purge", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PurgeJobResponse> purge(@RequestBody PurgeRequest req) {
+        PurgeJobResponse job = purges.submit(req.referenceType(), req.referenceIds(), req.uploadedBefore());
+        log.info("Purge job {} queued: referenceType={} references={} uploadedBefore={}", job.id(), job.referenceType(),
+                job.referenceIds() == null ? 0 : job.referenceIds().size(), job.uploadedBefore());
+        return ResponseEntity.accepted().location(java.net.URI.create("/images/purge/" + job.id())).body(job);
+    }
+
+    /** GET /images/purge/{jobId} — state and progress of a purge job */
+    @GetMapping("/purge/{jobId}")
+    public PurgeJobResponse purgeStatus(@PathVariable long jobId) {
+        return purges.status(jobId);
+    }
+
+    /**
+     * Small representations come from the hot-object tier, keyed by their ETag; {@code region} is only resolved
+     * when the bytes are not held there. Larger ones are served from the file (sendfile where available).
+     */
+    private ResponseEntity<Resource> serveBytes(HttpServletRequest request, String etag, long size,
+                                                Supplier<BlobRegion> region, MediaType type, HttpHeaders headers,
+                                                Instant lastModified) {
+        if (hot.admits(size)) {
+            return FileResponder.serve(request, hot.get(etag, region), type, headers, lastModified);
+        }
+        BlobRegion blob = region.get();
+        return FileResponder.serve(request, blob.file(), blob.offset(), blob.length(), type, headers, lastModified);
+    }
+
+    private ResponseEntity<Resource> measured(String endpoint, boolean cacheHit, long start, ResponseEntity<Resource> r) {
+        long bytes = r.getStatusCode().is2xxSuccessful() ? Math.max(0, r.getHeaders().getContentLength()) : 0;
+        metrics.download(endpoint, cacheHit, r.getStatusCode().value(), bytes, System.nanoTime() - start);
+        return r;
+    }
+
+    private static HttpHeaders downloadHeaders(String etag, Instant lastModified) {
+        HttpHeaders headers = ConditionalRequests.validators(new HttpHeaders(), etag, lastModified);
+        headers.setCacheControl("max-age=86400, public");
+        return headers;
+    }
+
+    private static boolean hasPreconditions(HttpServletRequest request) {
+        return request.getHeader(HttpHeaders.IF_MATCH) != null || request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                || request.getHeader(HttpHeaders.IF_UNMODIFIED_SINCE) != null;
+    }
+
+    private static String withExtension(String filename, String ext) {
+        if (filename == null) return null;
+        int dot = filename.lastIndexOf('.');
+        return (dot > 0 ? filename.substring(0, dot) : filename) + "." + ext;
+    }
+
+    private static long fileSize(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            throw new NotFoundException("file missing on disk");
+        }
+    }
 }
@@ -0,0 +1,22 @@
+package com.nmr.image_api.dto;
+
+import java.util.List;
+
+public record BatchUploadResponse(
+        int created,
+        int failed,
+        List<Item> items
+) {
+    public enum Status { CREATED, FAILED }
+
+    /** One entry per uploaded part, in request order. */
+    public record Item(
+            int index,
+            String filename,
+            Status status,
+            Long id,
+            String downloadUrl,
+            String metaUrl,
+            String error
+    ) {}
+}
@@ -0,0 +1,8 @@
+package com.nmr.image_api.dto;
+
+import java.util.List;
+
+public record ImageMetaPage(
+        List<ImageMetaResponse> items,
+        Long nextCursor // pass as ?after= for the next page; null on the last page
+) {}
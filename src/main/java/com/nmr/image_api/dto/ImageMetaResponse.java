@@ -1,5 +1,7 @@
 package com.nmr.image_api.dto;
 
+import com.nmr.image_api.entity.ImageStatus;
+
 import java.time.Instant;
 
 public record ImageMetaResponse(
@@ -13,5 +15,6 @@ public record ImageMetaResponse(
         Integer width,
         Integer height,
         String referenceId,
-        String referenceType
+        String referenceType,
+        ImageStatus status
 ) {}
@@ -0,0 +1,21 @@
+package com.nmr.image_api.dto;
+
+import com.nmr.image_api.entity.PurgeJob;
+
+import java.time.Instant;
+import java.util.List;
+
+public record PurgeJobResponse(
+        long id,
+        PurgeJob.State state,
+        String referenceType,
+        List<String> referenceIds,
+        Instant uploadedBefore,
+        Instant createdAt,
+        Instant startedAt,
+        Instant finishedAt,
+        long imagesDeleted,
+        long filesDeleted,
+        long fileErrors,   // files that could not be deleted; the storage scrubber finds them as orphans
+        String error       // why a FAILED job stopped
+) {}
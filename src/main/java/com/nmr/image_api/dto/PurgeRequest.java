@@ -0,0 +1,10 @@
+package com.nmr.image_api.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+public record PurgeRequest(
+        String referenceType,      // required with referenceIds; otherwise narrows a retention purge to one type
+        List<String> referenceIds, // up to 1000 references whose images are all deleted
+        Instant uploadedBefore     // deletes images uploaded before this (with referenceIds: only those of them)
+) {}
@@ -0,0 +1,15 @@
+package com.nmr.image_api.dto;
+
+import java.util.List;
+
+public record SimilarImagesResponse(
+        long id,
+        String perceptualHash, // hex; null while the image is not hashed yet (or cannot be decoded): no matches
+        List<Match> matches
+) {
+    /** Nearest first; distance is the number of differing hash bits (0..64). */
+    public record Match(
+            int distance,
+            ImageMetaResponse image
+    ) {}
+}
@@ -2,5 +2,5 @@ package com.nmr.image_api.dto;
 
 public record UpdateMetaRequest(
         String uploadedBy,
-        String originalFilename // optional: update display name only (file on disk stays UUID)
+        String originalFilename // optional: update display name only (stored blob is unchanged)
 ) {}
@@ -7,14 +7,23 @@ import java.time.Instant;
 
 @Data
 @Entity
-@Table(name = "image_asset")
+@Table(name = "image_asset", indexes = {
+        // created by V2__reference_lookup_index.sql; serves latest-by-reference lookups
+        @Index(name = "idx_image_asset_ref_lookup", columnList = "referenceType, referenceId, uploadedAt DESC"),
+        // V5; orphan checks by StorageScrubber
+        @Index(name = "idx_image_asset_stored_filename", columnList = "storedFilename"),
+        // V8; retention purges by upload time
+        @Index(name = "idx_image_asset_uploaded_at", columnList = "uploadedAt")
+})
 public class ImageAsset {
+    // sequence (V3) rather than IDENTITY so inserts can be JDBC-batched; ids are handed out 50 at a time
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "image_asset_seq")
+    @SequenceGenerator(name = "image_asset_seq", sequenceName = "image_asset_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)  private String originalFilename;
-    @Column(nullable = false, unique = true) private String storedFilename; // UUID.ext on disk
+    @Column(nullable = false)  private String storedFilename; // ab/cd/<sha256>, shared via StoredBlob (older rows: UUID.ext)
     @Column(nullable = false)  private String contentType;
     @Column(nullable = false)  private long   sizeBytes;
     @Column(nullable = false)  private String uploadedBy;
@@ -23,6 +32,7 @@ public class ImageAsset {
     @Column(nullable = false)  private String checksumSha256; // for ETag/caching
     private Integer width;   // optional: image width
     private Integer height;  // optional: image height
+    private Long perceptualHash; // V7: 64-bit dHash (PerceptualHash); null until processed or when undecodable
 
     @Column(nullable = false)
     private String referenceId;
@@ -30,5 +40,14 @@ public class ImageAsset {
     @Column(nullable = false)
     private String referenceType;
 
+    // PROCESSING until ProcessingQueue has probed dimensions and rendered the thumbnail (V4)
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private ImageStatus status = ImageStatus.READY;
+
+    // V6; optimistic lock, and what MetaJsonCache keys cached JSON on (bulk updates bump it explicitly)
+    @Version
+    @Column(nullable = false)
+    private long version;
 
 }
@@ -0,0 +1,14 @@
+package com.nmr.image_api.entity;
+
+/**
+ * Lifecycle of an upload: bytes and row are stored first, dimensions and thumbnail follow asynchronously.
+ * MISSING and CORRUPT are set by StorageScrubber (image.scrub.repair) when the stored bytes are gone or no
+ * longer match the checksum.
+ */
+public enum ImageStatus {
+    PROCESSING,
+    READY,
+    FAILED,
+    MISSING,
+    CORRUPT
+}
@@ -0,0 +1,29 @@
+package com.nmr.image_api.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/** One queued post-processing job for an {@link ImageAsset}; see ProcessingQueue. */
+@Data
+@Entity
+@Table(name = "processing_task", indexes = {
+        @Index(name = "idx_processing_task_state", columnList = "state, id")
+})
+public class ProcessingTask {
+    public enum State { PENDING, RUNNING, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)  private long imageId;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private State state;
+    @Column(nullable = false)  private int attempts;
+    @Column(nullable = false)  private Instant createdAt;
+    private Instant startedAt;
+    @Column(length = 1000)     private String lastError;
+}
@@ -0,0 +1,37 @@
+package com.nmr.image_api.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/** One bulk delete (POST /images/purge): what it deletes and how far it got; see PurgeJobs. */
+@Data
+@Entity
+@Table(name = "purge_job")
+public class PurgeJob {
+    /** QUEUED until its turn, RUNNING while batches are deleted, then DONE, or FAILED with lastError. */
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private State state;
+    private String referenceType;
+    @Column(columnDefinition = "text")
+    private String referenceIds;    // newline-separated; null when not restricted to references
+    private Instant uploadedBefore;
+    @Column(nullable = false)  private long maxId;   // highest image id when the job was created
+    @Column(nullable = false)  private long lastId;  // last image id deleted
+
+    @Column(nullable = false)  private Instant createdAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    @Column(nullable = false)  private long imagesDeleted;
+    @Column(nullable = false)  private long filesDeleted;
+    @Column(nullable = false)  private long fileErrors;
+    @Column(length = 1000)     private String lastError;
+}
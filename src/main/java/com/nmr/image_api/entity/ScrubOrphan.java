@@ -0,0 +1,18 @@
+package com.nmr.image_api.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/** A blob StorageScrubber found unreferenced; lastSeen is refreshed each pass it is still there. */
+@Data
+@Entity
+@Table(name = "scrub_orphan")
+public class ScrubOrphan {
+    @Id
+    private String blobKey;
+
+    @Column(nullable = false)  private Instant firstSeen;
+    @Column(nullable = false)  private Instant lastSeen;
+}
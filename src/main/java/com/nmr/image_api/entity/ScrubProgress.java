@@ -0,0 +1,34 @@
+package com.nmr.image_api.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/** Position and findings of the current StorageScrubber pass, saved after every batch. */
+@Data
+@Entity
+@Table(name = "scrub_progress")
+public class ScrubProgress {
+    /** IDLE between passes; ROWS walks image_asset by id, then BLOBS walks the store by key. */
+    public enum Phase { IDLE, ROWS, BLOBS }
+
+    @Id
+    @Column(length = 32)
+    private String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Phase phase = Phase.IDLE;
+    @Column(nullable = false)  private long lastId;  // ROWS: last image id checked
+    private String lastKey;                            // BLOBS: last blob key checked
+    private Instant passStartedAt;
+    private Instant passFinishedAt;
+
+    @Column(nullable = false)  private long rowsChecked;
+    @Column(nullable = false)  private long blobsChecked;
+    @Column(nullable = false)  private long bytesVerified;
+    @Column(nullable = false)  private long missing;
+    @Column(nullable = false)  private long corrupt;
+    @Column(nullable = false)  private long orphans;
+}
@@ -0,0 +1,21 @@
+package com.nmr.image_api.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.Instant;
+
+/** One content-addressed file on disk, shared by every ImageAsset with the same checksum. */
+@Data
+@Entity
+@Table(name = "stored_blob")
+public class StoredBlob {
+    @Id
+    @Column(length = 64)
+    private String checksumSha256;
+
+    @Column(nullable = false, unique = true) private String storedFilename; // ab/cd/<sha256> under storage root
+    @Column(nullable = false)  private long   sizeBytes;
+    @Column(nullable = false)  private long   refCount;  // number of image_asset rows pointing here
+    @Column(nullable = false)  private Instant createdAt;
+}
@@ -0,0 +1,116 @@
+package com.nmr.image_api.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application meters (Prometheus names in brackets):
+ * <ul>
+ *   <li>image.upload.phase {phase=receive|store|save} — per-phase upload latency [image_upload_phase_seconds]</li>
+ *   <li>image.processing.task {outcome=ok|retry|failed|inline} — post-processing per image, off the request
+ *       path unless the queue is over its backlog limit [image_processing_task_seconds]</li>
+ *   <li>image.download {endpoint=id|ref|variant, cache=hit|miss, status} — time to hand the response to the
+ *       container; with sendfile the bytes are written afterwards [image_download_seconds]</li>
+ *   <li>image.bytes {direction=ingested|served|saved} — saved: original minus compact size for each full
+ *       download answered with a compact encoding [image_bytes_total]</li>
+ *   <li>image.storage.bytes / image.storage.files — storage directory totals, rescanned periodically</li>
+ *   <li>image.scrub.findings {kind=missing|corrupt|orphan, action=reported|repaired} — StorageScrubber results
+ *       [image_scrub_findings_total]</li>
+ * </ul>
+ */
+@Component
+public class ImageMetrics {
+    private static final Logger log = LoggerFactory.getLogger(ImageMetrics.class);
+
+    private final MeterRegistry registry;
+    private final Path root;
+    private final Counter ingested;
+    private final Counter served;
+    private final Counter saved;
+    private final AtomicLong storageBytes = new AtomicLong();
+    private final AtomicLong storageFiles = new AtomicLong();
+
+    public ImageMetrics(MeterRegistry registry, @Value("${storage.dir:./storage}") String storageDir) {
+        this.registry = registry;
+        this.root = Paths.get(storageDir).toAbsolutePath().normalize();
+        this.ingested = Counter.builder("image.bytes").baseUnit("bytes").tag("direction", "ingested").register(registry);
+        this.served = Counter.builder("image.bytes").baseUnit("bytes").tag("direction", "served").register(registry);
+        this.saved = Counter.builder("image.bytes").baseUnit("bytes").tag("direction", "saved").register(registry);
+        Gauge.builder("image.storage.bytes", storageBytes, AtomicLong::get).baseUnit("bytes")
+                .description("size of the storage directory at the last scan").register(registry);
+        Gauge.builder("image.storage.files", storageFiles, AtomicLong::get)
+                .description("files in the storage directory at the last scan").register(registry);
+    }
+
+    public void uploadPhase(String phase, long nanos) {
+        Timer.builder("image.upload.phase").tag("phase", phase).publishPercentileHistogram().register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void ingested(long bytes) {
+        ingested.increment(bytes);
+    }
+
+    public void compactSaved(long bytes) {
+        if (bytes > 0) saved.increment(bytes);
+    }
+
+    public void processed(String outcome, long nanos) {
+        Timer.builder("image.processing.task").tag("outcome", outcome).register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void scrubFinding(String kind, boolean repaired) {
+        Counter.builder("image.scrub.findings").tag("kind", kind).tag("action", repaired ? "repaired" : "reported")
+                .register(registry).increment();
+    }
+
+    /** @param bytes body length sent (0 for 304/412/416) */
+    public void download(String endpoint, boolean cacheHit, int status, long bytes, long nanos) {
+        Timer.builder("image.download")
+                .tag("endpoint", endpoint).tag("cache", cacheHit ? "hit" : "miss").tag("status", Integer.toString(status))
+                .publishPercentileHistogram().register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (bytes > 0) served.increment(bytes);
+    }
+
+    /** Walks the storage directory; skips unreadable entries. */
+    @Scheduled(initialDelayString = "${image.metrics.storage-scan.initial-delay:10s}",
+               fixedDelayString = "${image.metrics.storage-scan.interval:5m}")
+    public void scanStorage() {
+        long[] totals = new long[2];
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    totals[0] += attrs.size();
+                    totals[1]++;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Storage scan failed: {}", e.toString());
+            return;
+        }
+        storageBytes.set(totals[0]);
+        storageFiles.set(totals[1]);
+    }
+}
@@ -0,0 +1,26 @@
+package com.nmr.image_api.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling
+public class MetricsConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer queryCountInspector() {
+        return props -> props.put(AvailableSettings.STATEMENT_INSPECTOR, new QueryCountInspector());
+    }
+
+    @Bean
+    public FilterRegistrationBean<QueryCountFilter> queryCountFilter(MeterRegistry registry) {
+        FilterRegistrationBean<QueryCountFilter> bean = new FilterRegistrationBean<>(new QueryCountFilter(registry));
+        bean.addUrlPatterns("/images/*");
+        return bean;
+    }
+}
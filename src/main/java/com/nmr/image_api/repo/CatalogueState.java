@@ -0,0 +1,4 @@
+package com.nmr.image_api.repo;
+
+/** See {@link ImageAssetRepository#catalogueState()}. */
+public record CatalogueState(Long rows, Long idSum, Long versionSum) {}
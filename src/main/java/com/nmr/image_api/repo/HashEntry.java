@@ -0,0 +1,4 @@
+package com.nmr.image_api.repo;
+
+/** See {@link ImageAssetRepository#findPerceptualHashes}. */
+public record HashEntry(Long id, Long hash) {}
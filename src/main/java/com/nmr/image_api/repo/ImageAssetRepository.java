@@ -1,10 +1,146 @@
 package com.nmr.image_api.repo;
 
 import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface ImageAssetRepository extends JpaRepository<ImageAsset, Long> {
     Optional<ImageAsset> findTopByReferenceIdAndReferenceTypeOrderByUploadedAtDesc(
             String referenceId, String referenceType);
+
+    /** Every image of the given references, newest first within a reference (idx_image_asset_ref_lookup). */
+    @Query("""
+            select a from ImageAsset a
+            where a.referenceType = :referenceType and a.referenceId in :referenceIds
+            order by a.referenceId, a.uploadedAt desc, a.id desc""")
+    List<ImageAsset> findByReferences(@Param("referenceType") String referenceType,
+                                      @Param("referenceIds") Collection<String> referenceIds);
+
+    /**
+     * The newest image of each of the given references (ties on uploadedAt go to the higher id); the batched form
+     * of {@link #findTopByReferenceIdAndReferenceTypeOrderByUploadedAtDesc}.
+     */
+    @Query("""
+            select a from ImageAsset a
+            where a.referenceType = :referenceType and a.referenceId in :referenceIds
+              and not exists (
+                  select 1 from ImageAsset b
+                  where b.referenceType = a.referenceType and b.referenceId = a.referenceId
+                    and (b.uploadedAt > a.uploadedAt or (b.uploadedAt = a.uploadedAt and b.id > a.id)))
+            order by a.referenceId""")
+    List<ImageAsset> findLatestByReferences(@Param("referenceType") String referenceType,
+                                            @Param("referenceIds") Collection<String> referenceIds);
+
+    /** Keyset page: rows with id > afterId, optional filters, ascending id. */
+    @Query("""
+            select a from ImageAsset a
+            where a.id > :afterId
+              and (:referenceType is null or a.referenceType = :referenceType)
+              and (:uploadedBy is null or a.uploadedBy = :uploadedBy)
+            order by a.id asc""")
+    List<ImageAsset> findPage(@Param("afterId") long afterId,
+                              @Param("referenceType") String referenceType,
+                              @Param("uploadedBy") String uploadedBy,
+                              Limit limit);
+
+    /**
+     * Row count, sum of ids and sum of versions. Any insert, delete or update between two calls changes at least
+     * one of them, since ids are never reused and every update bumps the version.
+     */
+    @Query("select new com.nmr.image_api.repo.CatalogueState(count(a), coalesce(sum(a.id), 0), coalesce(sum(a.version), 0)) from ImageAsset a")
+    CatalogueState catalogueState();
+
+    /** Which of {@code keys} some row stores its bytes under. */
+    @Query("select distinct a.storedFilename from ImageAsset a where a.storedFilename in :keys")
+    List<String> findStoredFilenames(@Param("keys") Collection<String> keys);
+
+    /** Cursor over the whole catalogue; must be consumed inside a transaction and closed. */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+            select a from ImageAsset a
+            where (:referenceType is null or a.referenceType = :referenceType)
+              and (:uploadedBy is null or a.uploadedBy = :uploadedBy)
+            order by a.id asc""")
+    Stream<ImageAsset> streamAll(@Param("referenceType") String referenceType,
+                                 @Param("uploadedBy") String uploadedBy);
+
+    /** Writes only what post-processing owns, so concurrent metadata edits are not overwritten. */
+    @Transactional
+    @Modifying
+    @Query("""
+            update ImageAsset a set a.width = :width, a.height = :height, a.perceptualHash = :perceptualHash,
+                a.status = :status, a.version = a.version + 1
+            where a.id = :id""")
+    int completeProcessing(@Param("id") long id, @Param("width") Integer width, @Param("height") Integer height,
+                           @Param("perceptualHash") Long perceptualHash, @Param("status") ImageStatus status);
+
+    @Transactional
+    @Modifying
+    @Query("update ImageAsset a set a.perceptualHash = :perceptualHash, a.version = a.version + 1 where a.id = :id")
+    int setPerceptualHash(@Param("id") long id, @Param("perceptualHash") long perceptualHash);
+
+    /** Keyset batches of (id, perceptual hash) over the rows that have one, in id order. */
+    @Query("""
+            select new com.nmr.image_api.repo.HashEntry(a.id, a.perceptualHash) from ImageAsset a
+            where a.perceptualHash is not null and a.id > :after
+            order by a.id asc""")
+    List<HashEntry> findPerceptualHashes(@Param("after") long after, Limit limit);
+
+    /** Keyset batches of rows in {@code status} without a perceptual hash, in id order. */
+    @Query("""
+            select a from ImageAsset a
+            where a.perceptualHash is null and a.status = :status and a.id > :after
+            order by a.id asc""")
+    List<ImageAsset> findWithoutPerceptualHash(@Param("status") ImageStatus status, @Param("after") long after,
+                                               Limit limit);
+
+    @Transactional
+    @Modifying
+    @Query("update ImageAsset a set a.status = :status, a.version = a.version + 1 where a.id = :id")
+    int updateStatus(@Param("id") long id, @Param("status") ImageStatus status);
+
+    /** One set-based delete; returns how many of the rows were still there. */
+    @Transactional
+    @Modifying
+    @Query("delete from ImageAsset a where a.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select coalesce(max(a.id), 0) from ImageAsset a")
+    long maxId();
+
+    /** Keyset batch of a retention purge: rows in (after, upTo] uploaded before the cutoff, optionally of one type. */
+    @Query("""
+            select a from ImageAsset a
+            where a.uploadedAt < :uploadedBefore and a.id > :after and a.id <= :upTo
+              and (:referenceType is null or a.referenceType = :referenceType)
+            order by a.id asc""")
+    List<ImageAsset> findPurgeBatch(@Param("referenceType") String referenceType,
+                                    @Param("uploadedBefore") Instant uploadedBefore,
+                                    @Param("after") long after, @Param("upTo") long upTo, Limit limit);
+
+    /** Keyset batch of a purge by references (idx_image_asset_ref_lookup); the cutoff is optional. */
+    @Query("""
+            select a from ImageAsset a
+            where a.referenceType = :referenceType and a.referenceId in :referenceIds
+              and (:uploadedBefore is null or a.uploadedAt < :uploadedBefore)
+              and a.id > :after and a.id <= :upTo
+            order by a.id asc""")
+    List<ImageAsset> findPurgeBatchByReferences(@Param("referenceType") String referenceType,
+                                                @Param("referenceIds") Collection<String> referenceIds,
+                                                @Param("uploadedBefore") Instant uploadedBefore,
+                                                @Param("after") long after, @Param("upTo") long upTo, Limit limit);
 }
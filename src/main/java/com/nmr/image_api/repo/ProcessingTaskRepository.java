@@ -0,0 +1,47 @@
+package com.nmr.image_api.repo;
+
+import com.nmr.image_api.entity.ImageStatus;
+import com.nmr.image_api.entity.ProcessingTask;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface ProcessingTaskRepository extends JpaRepository<ProcessingTask, Long> {
+
+    List<ProcessingTask> findByStateOrderByIdAsc(ProcessingTask.State state, Limit limit);
+
+    long countByState(ProcessingTask.State state);
+
+    /** PENDING -> RUNNING; returns 0 when someone else claimed the task first. */
+    @Transactional
+    @Modifying
+    @Query("""
+            update ProcessingTask t set t.state = 'RUNNING', t.startedAt = :now, t.attempts = t.attempts + 1
+            where t.id = :id and t.state = 'PENDING'""")
+    int claim(@Param("id") long id, @Param("now") Instant now);
+
+    @Transactional
+    @Modifying
+    @Query("update ProcessingTask t set t.state = :state, t.lastError = :error where t.id = :id")
+    int finish(@Param("id") long id, @Param("state") ProcessingTask.State state, @Param("error") String error);
+
+    /** Puts RUNNING tasks started before {@code cutoff} (their worker died) back in the queue. */
+    @Transactional
+    @Modifying
+    @Query("update ProcessingTask t set t.state = 'PENDING' where t.state = 'RUNNING' and t.startedAt < :cutoff")
+    int requeueStarted(@Param("cutoff") Instant cutoff);
+
+    /** Images left in {@code status} without any task, e.g. after a crash between the two inserts. */
+    @Query("""
+            select a.id from ImageAsset a
+            where a.status = :status
+              and not exists (select t.id from ProcessingTask t where t.imageId = a.id)
+            order by a.id asc""")
+    List<Long> findImagesWithoutTask(@Param("status") ImageStatus status, Limit limit);
+}
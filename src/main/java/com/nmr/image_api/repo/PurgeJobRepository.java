@@ -0,0 +1,12 @@
+package com.nmr.image_api.repo;
+
+import com.nmr.image_api.entity.PurgeJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+public interface PurgeJobRepository extends JpaRepository<PurgeJob, Long> {
+
+    Optional<PurgeJob> findFirstByStateInOrderByIdAsc(Collection<PurgeJob.State> states);
+}
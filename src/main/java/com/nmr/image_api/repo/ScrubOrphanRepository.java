@@ -0,0 +1,19 @@
+package com.nmr.image_api.repo;
+
+import com.nmr.image_api.entity.ScrubOrphan;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+public interface ScrubOrphanRepository extends JpaRepository<ScrubOrphan, String> {
+
+    /** Forgets orphans not seen again since {@code cutoff} (deleted, or referenced again). */
+    @Transactional
+    @Modifying
+    @Query("delete from ScrubOrphan o where o.lastSeen < :cutoff")
+    int deleteNotSeenSince(@Param("cutoff") Instant cutoff);
+}
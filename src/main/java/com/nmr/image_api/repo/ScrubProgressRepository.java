@@ -0,0 +1,7 @@
+package com.nmr.image_api.repo;
+
+import com.nmr.image_api.entity.ScrubProgress;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ScrubProgressRepository extends JpaRepository<ScrubProgress, String> {
+}
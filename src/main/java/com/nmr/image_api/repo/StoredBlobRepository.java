@@ -0,0 +1,47 @@
+package com.nmr.image_api.repo;
+
+import com.nmr.image_api.entity.StoredBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+
+    /** Which of {@code keys} are content-addressed blobs with a row. */
+    @Query("select b.storedFilename from StoredBlob b where b.storedFilename in :keys")
+    List<String> findStoredFilenames(@Param("keys") Collection<String> keys);
+
+    /** Adds a reference; returns 0 when no blob with that checksum exists yet. */
+    @Transactional
+    @Modifying
+    @Query("update StoredBlob b set b.refCount = b.refCount + 1 where b.checksumSha256 = :sum")
+    int retain(@Param("sum") String checksumSha256);
+
+    @Transactional
+    @Modifying
+    @Query("update StoredBlob b set b.refCount = b.refCount - 1 where b.checksumSha256 = :sum and b.refCount > 0")
+    int release(@Param("sum") String checksumSha256);
+
+    /** Drops {@code n} references from each of the blobs; the set-based {@link #release}. */
+    @Transactional
+    @Modifying
+    @Query("update StoredBlob b set b.refCount = b.refCount - :n where b.checksumSha256 in :sums and b.refCount > 0")
+    int releaseAll(@Param("sums") Collection<String> checksums, @Param("n") long n);
+
+    /** Removes the row once nothing references it; returns 1 when the caller should delete the file. */
+    @Transactional
+    @Modifying
+    @Query("delete from StoredBlob b where b.checksumSha256 = :sum and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("sum") String checksumSha256);
+
+    /** Removes those of the blobs nothing references any more; their files are the caller's to delete. */
+    @Transactional
+    @Modifying
+    @Query("delete from StoredBlob b where b.checksumSha256 in :sums and b.refCount <= 0")
+    int deleteUnreferenced(@Param("sums") Collection<String> checksums);
+}
@@ -0,0 +1,54 @@
+package com.nmr.image_api.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesced loads through an {@link AsyncCache}: the first caller for a key runs the loader on its own thread and
+ * later callers wait on its future. A synchronous Caffeine {@code get(key, loader)} would run the loader inside
+ * ConcurrentHashMap.compute, under a monitor, and on JDK 21 a virtual thread blocked on (or doing I/O under) a
+ * monitor pins its carrier; waiting on a future parks instead. Failed or null loads are not cached: a failed load
+ * takes its future out of the cache before failing it, so Caffeine (which logs a WARN with the stack trace for
+ * every exceptionally completed future it holds, e.g. each 404) never sees it, and the callers already waiting on
+ * it share the exception.
+ */
+final class AsyncLoads {
+    private AsyncLoads() {}
+
+    /** A value and whether it was in the cache already, complete; waiting for a load in progress is a miss. */
+    record Loaded<V>(V value, boolean hit) {}
+
+    static <K, V> V get(AsyncCache<K, V> cache, K key, Supplier<V> loader) {
+        return lookup(cache, key, loader).value();
+    }
+
+    static <K, V> Loaded<V> lookup(AsyncCache<K, V> cache, K key, Supplier<V> loader) {
+        CompletableFuture<V> f = cache.getIfPresent(key); // records the hit/miss
+        boolean hit = f != null && f.isDone() && !f.isCompletedExceptionally();
+        if (f == null) {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            f = cache.asMap().putIfAbsent(key, mine);
+            if (f == null) {
+                try {
+                    V v = loader.get();
+                    mine.complete(v);
+                    return new Loaded<>(v, false);
+                } catch (RuntimeException | Error e) {
+                    cache.asMap().remove(key, mine);
+                    mine.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        try {
+            return new Loaded<>(f.join(), hit);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException r) throw r;
+            if (e.getCause() instanceof Error r) throw r;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.nmr.image_api.service;
+
+import java.util.concurrent.ThreadFactory;
+
+/** Helpers shared by the background workers. */
+final class Background {
+    private Background() {}
+
+    /** length of the lastError columns */
+    static final int MAX_ERROR_LENGTH = 1000;
+
+    /** Daemon threads named {@code prefix}, numbered from 1 when the prefix ends with "-". */
+    static ThreadFactory daemon(String prefix) {
+        return daemon(prefix, Thread.NORM_PRIORITY);
+    }
+
+    /** {@link #daemon(String)} at the given thread priority, e.g. {@link Thread#MIN_PRIORITY} for housekeeping. */
+    static ThreadFactory daemon(String prefix, int priority) {
+        Thread.Builder.OfPlatform b = Thread.ofPlatform().daemon().priority(priority);
+        return (prefix.endsWith("-") ? b.name(prefix, 1) : b.name(prefix)).factory();
+    }
+
+    /** What a task row records of a failure: {@code e.toString()}, cut to fit lastError. */
+    static String errorMessage(Throwable e) {
+        String s = e.toString();
+        return s.length() <= MAX_ERROR_LENGTH ? s : s.substring(0, MAX_ERROR_LENGTH);
+    }
+}
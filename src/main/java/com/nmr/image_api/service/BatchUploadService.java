@@ -0,0 +1,106 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.web.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Multi-file uploads: each file is hashed and stored on its own virtual thread (at most
+ * {@code image.batch.parallelism} at a time across all requests), then all rows are inserted in one batched
+ * transaction. A bad file fails on its own; the rest of the batch still goes through.
+ */
+@Service
+public class BatchUploadService {
+    private static final Logger log = LoggerFactory.getLogger(BatchUploadService.class);
+
+    /** Outcome for one part, in request order; {@code asset} is null when {@code error} is set. */
+    public record Result(int index, String filename, ImageAsset asset, String error) {
+        public boolean ok() { return asset != null; }
+    }
+
+    private final ImageService images;
+    private final Semaphore permits;
+    private final int maxFiles;
+
+    public BatchUploadService(ImageService images,
+                              @Value("${image.batch.parallelism:0}") int parallelism,
+                              @Value("${image.batch.max-files:200}") int maxFiles) {
+        this.images = images;
+        this.permits = new Semaphore(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * @param referenceIds one per file, or a single id applied to every file
+     */
+    public List<Result> upload(List<MultipartFile> files, String uploadedBy, List<String> referenceIds,
+                               String referenceType) {
+        if (files == null || files.isEmpty()) throw new BadRequestException("file required");
+        if (files.size() > maxFiles) throw new BadRequestException("at most " + maxFiles + " files per batch");
+        if (referenceIds == null || (referenceIds.size() != 1 && referenceIds.size() != files.size())) {
+            throw new BadRequestException("referenceId must be given once or once per file");
+        }
+
+        List<Future<ImageAsset>> staging = new ArrayList<>(files.size());
+        try (ExecutorService exec = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile f = files.get(i);
+                String refId = referenceIds.get(referenceIds.size() == 1 ? 0 : i);
+                staging.add(exec.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return images.stage(f, uploadedBy, refId, referenceType);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        } // close() waits for every task
+
+        Result[] results = new Result[files.size()];
+        List<ImageAsset> staged = new ArrayList<>(files.size());
+        List<Integer> stagedIndex = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            String name = files.get(i).getOriginalFilename();
+            try {
+                staged.add(staging.get(i).get());
+                stagedIndex.add(i);
+            } catch (ExecutionException e) {
+                results[i] = new Result(i, name, null, describe(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results[i] = new Result(i, name, null, "interrupted");
+            }
+        }
+
+        try {
+            List<ImageAsset> saved = images.saveAll(staged);
+            for (int k = 0; k < saved.size(); k++) {
+                int i = stagedIndex.get(k);
+                results[i] = new Result(i, files.get(i).getOriginalFilename(), saved.get(k), null);
+            }
+        } catch (RuntimeException e) {
+            log.error("Batch insert failed", e);
+            for (int i : stagedIndex) results[i] = new Result(i, files.get(i).getOriginalFilename(), null, "server_error");
+        }
+        return List.of(results);
+    }
+
+    private static String describe(Throwable t) {
+        if (t instanceof BadRequestException) return t.getMessage();
+        log.error("Batch item failed", t);
+        return "server_error";
+    }
+}
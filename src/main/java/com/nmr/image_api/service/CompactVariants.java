@@ -0,0 +1,194 @@
+package com.nmr.image_api.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nmr.image_api.storage.BlobSource;
+import com.nmr.image_api.storage.BlobStore;
+import com.nmr.image_api.util.ByteBufferStreams;
+import com.nmr.image_api.web.Negotiation;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smaller re-encodings of originals for clients that accept them: a full-size progressive JPEG at
+ * {@code image.compact.quality}, served by GET /images/{id} and /images/ref instead of the original when the
+ * Accept header allows it and the result is at least {@code image.compact.min-savings} smaller.
+ * <p>
+ * The JDK only ships encoders for JPEG, PNG, GIF, BMP and TIFF; WebP/AVIF would need native libraries, so
+ * progressive JPEG is the compact format. Originals with an alpha channel are left alone.
+ * <p>
+ * Encodings are rendered once per checksum into the derivatives directory ({@link VariantService}): at ingest by
+ * {@link ProcessingQueue}, and for older images in the background the first time one is requested. Requests
+ * never wait for a render; they get the original until the compact file exists.
+ */
+@Service
+public class CompactVariants {
+    private static final Logger log = LoggerFactory.getLogger(CompactVariants.class);
+
+    /** Decodable, opaque-capable formats worth re-encoding; GIF is excluded (animation). */
+    private static final Set<String> SOURCE_TYPES = Set.of(
+            "image/png", "image/bmp", "image/x-ms-bmp", "image/tiff", "image/jpeg");
+    /** cached decision for a checksum that has no usable compact encoding */
+    private static final long NONE = -1;
+
+    /** What an original's header says about re-encoding it. */
+    private enum Header { OPAQUE, ALPHA, UNSUPPORTED }
+
+    /** A representation to serve in place of the original; {@code etag} is weak (derived bytes). */
+    public record Compact(Path path, long sizeBytes, MediaType mediaType, String etag) {}
+
+    private final VariantService variants;
+    private final BlobStore store;
+    private final boolean enabled;
+    private final VariantSpec spec;
+    private final double minSavings;
+    private final long minSize;
+    /** checksum -> compact size, or NONE */
+    private final Cache<String, Long> decisions = Caffeine.newBuilder().maximumSize(100_000).build();
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor background = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(64), Background.daemon("image-compact"), new ThreadPoolExecutor.DiscardPolicy());
+
+    public CompactVariants(VariantService variants, BlobStore store,
+                           @Value("${image.compact.enabled:true}") boolean enabled,
+                           @Value("${image.compact.quality:80}") int quality,
+                           @Value("${image.compact.min-savings:0.2}") double minSavings,
+                           @Value("${image.compact.min-size:16KB}") DataSize minSize) {
+        this.variants = variants;
+        this.store = store;
+        this.enabled = enabled;
+        this.spec = VariantSpec.compactJpeg(quality);
+        this.minSavings = minSavings;
+        this.minSize = minSize.toBytes();
+    }
+
+    /** Whether responses of the negotiating endpoints depend on Accept (and so need {@code Vary: Accept}). */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * The compact representation of {@code d} if the client accepts it and it is ready and worthwhile, else null
+     * (serve the original). On first sight of an eligible image the encoding is scheduled in the background.
+     */
+    public Compact select(DownloadDescriptor d, String accept) {
+        if (!eligible(d.mediaType().toString(), d.sizeBytes()) || !prefersCompact(accept, d.mediaType())) return null;
+        Long known = decisions.getIfPresent(d.checksumSha256());
+        if (known != null && known == NONE) return null;
+
+        Path file = variants.find(d.checksumSha256(), spec);
+        if (file == null) {
+            // not rendered yet, or evicted from the derivatives directory since
+            if (queued.add(d.checksumSha256())) {
+                background.execute(() -> {
+                    try {
+                        prepare(d.checksumSha256(), store.source(d.blobKey()), d.mediaType().toString(), d.sizeBytes());
+                    } finally {
+                        queued.remove(d.checksumSha256());
+                    }
+                });
+            }
+            return null;
+        }
+        long size = known != null ? known : decide(d.checksumSha256(), file, d.sizeBytes());
+        if (size == NONE) return null;
+        return new Compact(file, size, spec.mediaType(), "W/\"" + d.checksumSha256() + "-" + spec.key() + "\"");
+    }
+
+    /**
+     * Renders and evaluates the compact encoding of an original (blocking). Encodings that do not save enough
+     * are deleted again and remembered as not worthwhile, as are originals with alpha or in a format ImageIO cannot
+     * read. A failed read or render is not remembered, so the next request for the image tries again.
+     */
+    public void prepare(String checksum, BlobSource original, String contentType, long sizeBytes) {
+        if (!eligible(contentType, sizeBytes) || decisions.getIfPresent(checksum) != null) return;
+        try {
+            if (header(original.read()) != Header.OPAQUE) {
+                decisions.put(checksum, NONE);
+                return;
+            }
+            Path file = variants.getOrRender(checksum, original, spec);
+            decide(checksum, file, sizeBytes);
+        } catch (IOException | RuntimeException e) {
+            log.debug("No compact encoding for {} yet: {}", checksum, e.toString());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        background.shutdownNow();
+    }
+
+    /** Bytes a client saves per full download of the compact representation. */
+    public static long savedBytes(DownloadDescriptor d, Compact c) {
+        return Math.max(0, d.sizeBytes() - c.sizeBytes());
+    }
+
+    private long decide(String checksum, Path file, long originalSize) {
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            return NONE;
+        }
+        if (size > originalSize * (1 - minSavings)) {
+            variants.remove(checksum, spec);
+            size = NONE;
+        }
+        decisions.put(checksum, size);
+        return size;
+    }
+
+    private boolean eligible(String contentType, long sizeBytes) {
+        return enabled && sizeBytes >= minSize && contentType != null && SOURCE_TYPES.contains(contentType);
+    }
+
+    /**
+     * True when the Accept header names image types at all (a bare {@code *}{@code /*} means "whatever is
+     * stored", which API clients downloading originals rely on) and ranks JPEG no lower than the original type.
+     */
+    static boolean prefersCompact(String accept, MediaType original) {
+        List<MediaType> ranges = Negotiation.ranges(accept);
+        if (ranges.stream().noneMatch(r -> r.getType().equals("image"))) return false;
+        double jpeg = Negotiation.quality(ranges, MediaType.IMAGE_JPEG);
+        return jpeg > 0 && jpeg >= Negotiation.quality(ranges, original);
+    }
+
+    /** From the image header where the reader supports it; no pixel decoding. */
+    private static Header header(ByteBuffer data) throws IOException {
+        try (ImageInputStream iis = ByteBufferStreams.imageInputStream(data)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) return Header.UNSUPPORTED;
+            ImageReader r = readers.next();
+            try {
+                r.setInput(iis, true, true);
+                ImageTypeSpecifier type = r.getRawImageType(0);
+                if (type == null) type = r.getImageTypes(0).next();
+                return type.getColorModel().hasAlpha() ? Header.ALPHA : Header.OPAQUE;
+            } finally {
+                r.dispose();
+            }
+        }
+    }
+}
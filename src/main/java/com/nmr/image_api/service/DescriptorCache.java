@@ -0,0 +1,78 @@
+package com.nmr.image_api.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of {@link DownloadDescriptor}s by id and by (referenceId, referenceType), so repeat downloads
+ * and conditional GETs skip the database. Bounded by entry count and TTL; writes invalidate explicitly.
+ */
+@Component
+public class DescriptorCache implements MeterBinder {
+
+    private record RefKey(String referenceId, String referenceType) {}
+
+    /** A descriptor and whether it was served from the cache (see {@link AsyncLoads.Loaded}). */
+    public record Lookup(DownloadDescriptor descriptor, boolean hit) {}
+
+    private final AsyncCache<Long, DownloadDescriptor> byId;
+    private final AsyncCache<RefKey, DownloadDescriptor> byRef;
+
+    public DescriptorCache(@Value("${image.cache.descriptors.max-size:10000}") long maxSize,
+                           @Value("${image.cache.descriptors.ttl:10m}") Duration ttl) {
+        this.byId = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).recordStats().buildAsync();
+        this.byRef = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).recordStats().buildAsync();
+    }
+
+    /** Hit/miss/eviction meters as cache.* {cache=descriptors.id|descriptors.ref}. */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, byId, "descriptors.id");
+        CaffeineCacheMetrics.monitor(registry, byRef, "descriptors.ref");
+    }
+
+    /** Whether an entry (or a load in progress) exists for {@code id}; not recorded as a cache hit or miss. */
+    public boolean containsId(long id) {
+        return byId.asMap().containsKey(id);
+    }
+
+    /** Concurrent misses for the same id share one load (see {@link AsyncLoads}). */
+    public DownloadDescriptor byId(long id, Supplier<DownloadDescriptor> loader) {
+        return lookupById(id, loader).descriptor();
+    }
+
+    public Lookup lookupById(long id, Supplier<DownloadDescriptor> loader) {
+        return lookup(AsyncLoads.lookup(byId, id, loader));
+    }
+
+    public DownloadDescriptor byReference(String referenceId, String referenceType, Supplier<DownloadDescriptor> loader) {
+        return lookupByReference(referenceId, referenceType, loader).descriptor();
+    }
+
+    public Lookup lookupByReference(String referenceId, String referenceType, Supplier<DownloadDescriptor> loader) {
+        return lookup(AsyncLoads.lookup(byRef, new RefKey(referenceId, referenceType), loader));
+    }
+
+    private static Lookup lookup(AsyncLoads.Loaded<DownloadDescriptor> l) {
+        return new Lookup(l.value(), l.hit());
+    }
+
+    /** A load still in progress is not cached once it completes. */
+    public void invalidate(long id, String referenceId, String referenceType) {
+        byId.synchronous().invalidate(id);
+        invalidateReference(referenceId, referenceType);
+    }
+
+    /** A new upload for a reference changes which image is "latest". */
+    public void invalidateReference(String referenceId, String referenceType) {
+        byRef.synchronous().invalidate(new RefKey(referenceId, referenceType));
+    }
+}
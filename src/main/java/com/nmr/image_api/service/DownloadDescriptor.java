@@ -0,0 +1,23 @@
+package com.nmr.image_api.service;
+
+import org.springframework.http.MediaType;
+
+import java.time.Instant;
+
+/** Everything a download response needs, resolved with a single lookup; the bytes are in the BlobStore under blobKey. */
+public record DownloadDescriptor(
+        long id,
+        String blobKey,
+        MediaType mediaType,
+        long sizeBytes,
+        String checksumSha256,
+        String filename,
+        Instant lastModified,
+        String referenceId,
+        String referenceType
+) {
+    /** Strong validator for the original bytes. */
+    public String etag() {
+        return "\"" + checksumSha256 + "\"";
+    }
+}
@@ -0,0 +1,91 @@
+package com.nmr.image_api.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nmr.image_api.storage.BlobRegion;
+import com.nmr.image_api.web.NotFoundException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
+
+/**
+ * Hot-object tier: the bytes of small originals and variants held in memory, keyed by the representation's
+ * entity tag (content-addressed, so entries never go stale). A burst of downloads of one image then reads the
+ * file once instead of once per request. Bounded by total bytes; Caffeine's frequency-based admission keeps
+ * one-off downloads from evicting popular entries. With {@code off-heap} the copies are direct buffers, outside
+ * the Java heap (and also limited by -XX:MaxDirectMemorySize).
+ */
+@Component
+public class HotBlobCache implements MeterBinder {
+
+    private final AsyncCache<String, ByteBuffer> cache;
+    private final long maxObjectSize;
+    private final boolean offHeap;
+
+    public HotBlobCache(@Value("${image.cache.hot.max-size:64MB}") DataSize maxSize,
+                        @Value("${image.cache.hot.max-object-size:256KB}") DataSize maxObjectSize,
+                        @Value("${image.cache.hot.off-heap:false}") boolean offHeap) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, ByteBuffer data) -> data.capacity())
+                .recordStats()
+                .buildAsync();
+        this.maxObjectSize = maxSize.toBytes() > 0 ? Math.min(maxObjectSize.toBytes(), maxSize.toBytes()) : 0;
+        this.offHeap = offHeap;
+    }
+
+    /** Hit/miss/eviction meters as cache.* {cache=hot}, plus image.cache.hot.bytes held. */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "hot");
+        Gauge.builder("image.cache.hot.bytes", cache,
+                        c -> c.synchronous().policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L))
+                .baseUnit("bytes").register(registry);
+    }
+
+    /** Whether a representation of {@code size} bytes is small enough to be held here. */
+    public boolean admits(long size) {
+        return size > 0 && size <= maxObjectSize;
+    }
+
+    /** A read-only view of the cached bytes, or null. */
+    public ByteBuffer getIfPresent(String key) {
+        ByteBuffer data = cache.synchronous().getIfPresent(key);
+        return data == null ? null : data.asReadOnlyBuffer();
+    }
+
+    /**
+     * A read-only view of the bytes of {@code key}, read from {@code region} on a miss; concurrent misses for the
+     * same key share one read (see {@link AsyncLoads}). Callers check {@link #admits} first.
+     */
+    public ByteBuffer get(String key, Supplier<BlobRegion> region) {
+        return AsyncLoads.get(cache, key, () -> load(region.get())).asReadOnlyBuffer();
+    }
+
+    private ByteBuffer load(BlobRegion r) {
+        ByteBuffer buf = offHeap ? ByteBuffer.allocateDirect((int) r.length()) : ByteBuffer.allocate((int) r.length());
+        try (FileChannel ch = FileChannel.open(r.file(), StandardOpenOption.READ)) {
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, r.offset() + buf.position()) < 0) throw new EOFException("blob shorter than expected: " + r);
+            }
+        } catch (NoSuchFileException e) {
+            throw new NotFoundException("file missing on disk");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buf.flip();
+    }
+}
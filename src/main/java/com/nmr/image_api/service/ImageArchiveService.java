@@ -0,0 +1,113 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.storage.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams the originals of several images in one response body (GET /images/refs?format=zip|multipart), reading
+ * each blob through {@link BlobStore#read} without buffering the whole set. Images whose blob is missing are
+ * skipped, since the response has been committed by the time that is known.
+ */
+@Service
+public class ImageArchiveService {
+    private static final Logger log = LoggerFactory.getLogger(ImageArchiveService.class);
+
+    private static final int COPY_BUFFER = 64 << 10;
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final BlobStore store;
+
+    public ImageArchiveService(BlobStore store) {
+        this.store = store;
+    }
+
+    /**
+     * One entry per image, {@code <referenceId>/<id>-<originalFilename>}. Entries are stored without
+     * compression: image formats are compressed already, and deflating them again costs CPU for nothing.
+     */
+    public int writeZip(List<ImageAsset> images, OutputStream out) throws IOException {
+        int written = 0;
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        byte[] buf = new byte[COPY_BUFFER];
+        for (ImageAsset a : images) {
+            ByteBuffer data = read(a);
+            if (data == null) continue;
+            ZipEntry e = new ZipEntry(safeName(a.getReferenceId()) + "/" + a.getId() + "-" + safeName(a.getOriginalFilename()));
+            e.setTime(a.getUploadedAt().toEpochMilli());
+            zip.putNextEntry(e);
+            while (data.hasRemaining()) {
+                int n = Math.min(buf.length, data.remaining());
+                data.get(buf, 0, n);
+                zip.write(buf, 0, n);
+            }
+            zip.closeEntry();
+            written++;
+        }
+        zip.finish(); // the container closes the response stream
+        return written;
+    }
+
+    /**
+     * A multipart/mixed body (RFC 2046) with one part per image carrying its Content-Type, Content-Length, ETag
+     * and Content-Location ({@code /images/<id>}).
+     */
+    public int writeMultipart(List<ImageAsset> images, String boundary, OutputStream out) throws IOException {
+        int written = 0;
+        byte[] buf = new byte[COPY_BUFFER];
+        for (ImageAsset a : images) {
+            ByteBuffer data = read(a);
+            if (data == null) continue;
+            String headers = "--" + boundary + "\r\n"
+                    + "Content-Type: " + ImageService.mediaTypeOf(a.getContentType()) + "\r\n"
+                    + "Content-Length: " + data.remaining() + "\r\n"
+                    + "Content-Location: /images/" + a.getId() + "\r\n"
+                    + "ETag: \"" + a.getChecksumSha256() + "\"\r\n"
+                    + "Content-Disposition: attachment; filename=\"" + safeName(a.getOriginalFilename()) + "\"\r\n"
+                    + "\r\n";
+            out.write(headers.getBytes(StandardCharsets.US_ASCII));
+            while (data.hasRemaining()) {
+                int n = Math.min(buf.length, data.remaining());
+                data.get(buf, 0, n);
+                out.write(buf, 0, n);
+            }
+            out.write(CRLF);
+            written++;
+        }
+        out.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return written;
+    }
+
+    private ByteBuffer read(ImageAsset a) throws IOException {
+        try {
+            return store.read(a.getStoredFilename());
+        } catch (NoSuchFileException | IllegalArgumentException e) {
+            log.warn("Image {} left out of archive: blob {} is missing", a.getId(), a.getStoredFilename());
+            return null;
+        }
+    }
+
+    /** Printable ASCII without path separators or quotes, so names are safe as zip paths and header values. */
+    static String safeName(String name) {
+        if (name == null || name.isBlank()) return "image";
+        StringBuilder sb = new StringBuilder(name.length());
+        for (char c : name.toCharArray()) {
+            sb.append(c < 0x20 || c > 0x7e || "/\\\":*?<>|".indexOf(c) >= 0 ? '_' : c);
+        }
+        String s = sb.toString();
+        return s.equals(".") || s.equals("..") ? "_" : s;
+    }
+}
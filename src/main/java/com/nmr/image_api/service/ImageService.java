@@ -1,46 +1,110 @@
 package com.nmr.image_api.service;
 
+import com.nmr.image_api.dto.ImageMetaPage;
 import com.nmr.image_api.dto.ImageMetaResponse;
 import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import com.nmr.image_api.entity.StoredBlob;
+import com.nmr.image_api.metrics.ImageMetrics;
 import com.nmr.image_api.repo.ImageAssetRepository;
+import com.nmr.image_api.repo.StoredBlobRepository;
+import com.nmr.image_api.storage.BlobRegion;
+import com.nmr.image_api.storage.BlobSource;
+import com.nmr.image_api.storage.BlobStore;
 import com.nmr.image_api.util.HashUtil;
 import com.nmr.image_api.web.BadRequestException;
+import com.nmr.image_api.web.FileResponder;
 import com.nmr.image_api.web.NotFoundException;
+import com.nmr.image_api.web.PreconditionFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Service
 public class ImageService {
     private static final Logger log = LoggerFactory.getLogger(ImageService.class);
 
-    private final Path root;
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int MAX_REFERENCES = 1000;
+    /** reference ids per IN list; keeps statements (and Hibernate's plan cache, see in_clause_parameter_padding) small */
+    static final int IN_CHUNK = 500;
+
+    private final BlobStore store;
     private final ImageAssetRepository repo;
+    private final StoredBlobRepository blobs;
+    private final DescriptorCache descriptors;
+    private final ImageMetrics metrics;
+    private final ProcessingQueue processing;
+    private final TransactionOperations tx;
+    /** serializes retain/release of the same checksum within this instance */
+    private final ReentrantLock[] blobLocks = new ReentrantLock[64];
 
-    public ImageService(@Value("${storage.dir:./storage}") String dir, ImageAssetRepository repo) throws IOException {
-        this.root = Paths.get(dir).toAbsolutePath().normalize();
-        Files.createDirectories(root);
+    public ImageService(BlobStore store, ImageAssetRepository repo,
+                        StoredBlobRepository blobs, DescriptorCache descriptors, ImageMetrics metrics,
+                        ProcessingQueue processing, TransactionOperations tx) {
+        this.store = store;
         this.repo = repo;
-        log.info("Storage at {}", root);
+        this.blobs = blobs;
+        this.descriptors = descriptors;
+        this.metrics = metrics;
+        this.processing = processing;
+        this.tx = tx;
+        for (int i = 0; i < blobLocks.length; i++) blobLocks[i] = new ReentrantLock();
     }
 
 
+    /**
+     * Stores the bytes and the row and returns it in {@link ImageStatus#PROCESSING}; dimensions and the thumbnail
+     * are filled in by {@link ProcessingQueue}. The blob is durable before the row is committed; if the row cannot
+     * be saved, the blob reference is released again.
+     */
     public ImageAsset upload(MultipartFile file, String uploadedBy, String referenceId, String referenceType) {
+        ImageAsset staged = stage(file, uploadedBy, referenceId, referenceType);
+        long t0 = System.nanoTime();
+        ImageAsset saved;
+        try {
+            saved = repo.save(staged);
+        } catch (RuntimeException e) {
+            releaseBlob(staged);
+            throw e;
+        }
+        metrics.uploadPhase("save", System.nanoTime() - t0);
+        descriptors.invalidateReference(referenceId, referenceType);
+        processing.submit(List.of(saved));
+        return saved;
+    }
+
+    /**
+     * Validates and hashes an upload and stores its blob; returns the (unsaved) row describing it.
+     * The checksum stays on the request path: it is the blob's address, needed before anything is stored.
+     * The blob reference taken here belongs to the returned row, so it must be persisted (see {@link #saveAll}).
+     */
+    ImageAsset stage(MultipartFile file, String uploadedBy, String referenceId, String referenceType) {
         if (file == null || file.isEmpty()) throw new BadRequestException("file required");
         if (referenceId == null || referenceId.isBlank()) throw new BadRequestException("referenceId required");
         if (referenceType == null || referenceType.isBlank()) throw new BadRequestException("referenceType required");
@@ -49,57 +113,106 @@ public class ImageService {
         String reqType = file.getContentType() == null ? "" : file.getContentType();
         if (!reqType.startsWith("image/")) throw new BadRequestException("only image/* allowed");
 
-        String ext = getExt(file.getOriginalFilename());
-        String storedName = UUID.randomUUID() + (ext.isEmpty() ? "" : "." + ext);
-        Path target = root.resolve(storedName).normalize();
-        ensureInside(target);
-
-        byte[] bytes;
+        // single pass: stream -> staging file, hashing on the way
+        Path tmp = null;
+        long size;
+        String checksum;
         try {
-            bytes = file.getBytes();
-            Files.write(target, bytes, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            long t0 = System.nanoTime();
+            tmp = Files.createTempFile(store.stagingDir(), "upload-", ".tmp");
+            MessageDigest md = HashUtil.newSha256();
+            try (InputStream in = new DigestInputStream(file.getInputStream(), md);
+                 OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING)) {
+                size = in.transferTo(out);
+            }
+            checksum = HashUtil.hex(md.digest());
+            metrics.uploadPhase("receive", System.nanoTime() - t0); // write + hash: one pass over the bytes
+            metrics.ingested(size);
         } catch (IOException e) {
+            deleteQuietly(tmp);
             throw new BadRequestException("cannot write file");
         }
 
-        // detect dimensions
-        Integer w = null, h = null;
-        try (InputStream in = new ByteArrayInputStream(bytes)) {
-            BufferedImage img = ImageIO.read(in);
-            if (img != null) { w = img.getWidth(); h = img.getHeight(); }
-        } catch (IOException ignored) {}
+        long t2 = System.nanoTime();
+        String storedName = storeBlob(tmp, checksum, size);
+        metrics.uploadPhase("store", System.nanoTime() - t2);
 
         ImageAsset asset = new ImageAsset();
         asset.setOriginalFilename(file.getOriginalFilename());
         asset.setStoredFilename(storedName);
         asset.setContentType(reqType);
-        asset.setSizeBytes(bytes.length);
+        asset.setSizeBytes(size);
         asset.setUploadedBy(uploadedBy);
         asset.setUploadedAt(Instant.now());
-        asset.setChecksumSha256(HashUtil.sha256(bytes));
-        asset.setWidth(w);
-        asset.setHeight(h);
+        asset.setChecksumSha256(checksum);
         asset.setReferenceId(referenceId);
         asset.setReferenceType(referenceType);
+        asset.setStatus(ImageStatus.PROCESSING);
+        return asset;
+    }
+
+    /**
+     * Persists staged rows in one transaction (JDBC-batched inserts). If that fails, the blob references taken
+     * by {@link #stage} are released again and the exception is rethrown.
+     */
+    List<ImageAsset> saveAll(List<ImageAsset> staged) {
+        if (staged.isEmpty()) return List.of();
+        List<ImageAsset> saved;
+        long t0 = System.nanoTime();
+        try {
+            saved = repo.saveAll(staged);
+            metrics.uploadPhase("save", System.nanoTime() - t0);
+        } catch (RuntimeException e) {
+            staged.forEach(this::releaseBlob);
+            throw e;
+        }
+        for (ImageAsset a : saved) descriptors.invalidateReference(a.getReferenceId(), a.getReferenceType());
+        processing.submit(saved);
+        return saved;
+    }
 
-        return repo.save(asset);
+    /** Download descriptor by id; served from the in-process cache when possible (no DB query). */
+    public DownloadDescriptor resolve(long id) {
+        return lookup(id).descriptor();
+    }
+
+    /** {@link #resolve(long)}, also telling whether the cache answered it. */
+    public DescriptorCache.Lookup lookup(long id) {
+        return descriptors.lookupById(id, () -> toDescriptor(
+                repo.findById(id).orElseThrow(() -> new NotFoundException("image not found")), null));
+    }
+
+    /** Download descriptor for the latest image of a reference; cached like {@link #resolve(long)}. */
+    public DownloadDescriptor resolveByReference(String referenceId, String referenceType) {
+        return lookupByReference(referenceId, referenceType).descriptor();
+    }
+
+    public DescriptorCache.Lookup lookupByReference(String referenceId, String referenceType) {
+        return descriptors.lookupByReference(referenceId, referenceType, () -> toDescriptor(
+                repo.findTopByReferenceIdAndReferenceTypeOrderByUploadedAtDesc(referenceId, referenceType)
+                        .orElseThrow(() -> new NotFoundException("no image for ref")),
+                referenceId + "-" + referenceType));
     }
 
     public Resource getByReference(String referenceId, String referenceType) {
         ImageAsset a = repo.findTopByReferenceIdAndReferenceTypeOrderByUploadedAtDesc(referenceId, referenceType)
                 .orElseThrow(() -> new NotFoundException("no image for ref"));
-        Path p = root.resolve(a.getStoredFilename()).normalize();
-        ensureInside(p);
-        if (!Files.exists(p)) throw new NotFoundException("file missing on disk");
-        return new FileSystemResource(p);
+        return resource(locate(a.getStoredFilename()));
     }
 
     public Resource getImageData(long id) {
         ImageAsset a = repo.findById(id).orElseThrow(() -> new NotFoundException("image not found"));
-        Path p = root.resolve(a.getStoredFilename()).normalize();
-        ensureInside(p);
-        if (!Files.exists(p)) throw new NotFoundException("file missing on disk");
-        return new FileSystemResource(p);
+        return resource(locate(a.getStoredFilename()));
+    }
+
+    /** Where the original's bytes are (for sendfile / range responses). */
+    public BlobRegion locate(DownloadDescriptor d) {
+        return locate(d.blobKey());
+    }
+
+    /** The original's bytes, read on demand; source for rendered variants. */
+    public BlobSource source(DownloadDescriptor d) {
+        return store.source(d.blobKey());
     }
 
     public ImageMetaResponse getMeta(long id) {
@@ -109,40 +222,118 @@ public class ImageService {
 
     public MediaType getMediaType(long id) {
         ImageAsset a = repo.findById(id).orElseThrow(() -> new NotFoundException("image not found"));
-        try {
-            return a.getContentType() != null ? MediaType.parseMediaType(a.getContentType()) : MediaType.IMAGE_PNG;
-        } catch (Exception e) {
-            return MediaType.APPLICATION_OCTET_STREAM;
-        }
+        return mediaTypeOf(a.getContentType());
     }
 
     public MediaType getMediaTypeByReference(String refId, String refType) {
         ImageAsset a = repo.findTopByReferenceIdAndReferenceTypeOrderByUploadedAtDesc(refId, refType)
                 .orElseThrow(() -> new NotFoundException("no image for ref"));
-        try {
-            return a.getContentType() != null ? MediaType.parseMediaType(a.getContentType()) : MediaType.IMAGE_PNG;
-        } catch (Exception e) {
-            return MediaType.APPLICATION_OCTET_STREAM;
-        }
+        return mediaTypeOf(a.getContentType());
     }
 
     public List<ImageMetaResponse> getAllMeta() {
-        return repo.findAll().stream().map(this::toMeta).toList();
+        return repo.findAll(Sort.by("id")).stream().map(ImageService::toMeta).toList();
     }
 
-    public ImageMetaResponse updateMeta(long id, String uploadedBy, String originalFilename) {
-        var a = repo.findById(id).orElseThrow(() -> new NotFoundException("image not found"));
-        if (uploadedBy != null && !uploadedBy.isBlank()) a.setUploadedBy(uploadedBy.trim());
-        if (originalFilename != null && !originalFilename.isBlank()) a.setOriginalFilename(originalFilename.trim());
-        return toMeta(repo.save(a));
+    /** Keyset-paginated listing; {@code after} is the last id of the previous page (null for the first). */
+    public ImageMetaPage getMetaPage(Long after, int limit, String referenceType, String uploadedBy) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) throw new BadRequestException("limit must be 1.." + MAX_PAGE_SIZE);
+        List<ImageAsset> rows = repo.findPage(after == null ? 0L : after, blankToNull(referenceType),
+                blankToNull(uploadedBy), Limit.of(limit + 1));
+        boolean more = rows.size() > limit;
+        List<ImageMetaResponse> items = rows.stream().limit(limit).map(ImageService::toMeta).toList();
+        Long next = more ? items.get(items.size() - 1).id() : null;
+        return new ImageMetaPage(items, next);
+    }
+
+    /**
+     * Images of many references of one type in {@code ceil(n / IN_CHUNK)} queries: all of them, or only the newest
+     * per reference. Ordered as {@code referenceIds} (duplicates ignored), newest first within a reference.
+     */
+    public List<ImageAsset> findByReferences(String referenceType, List<String> referenceIds, boolean latestOnly) {
+        String type = blankToNull(referenceType);
+        if (type == null) throw new BadRequestException("referenceType is required");
+        List<String> ids = referenceIds == null ? List.of()
+                : referenceIds.stream().map(ImageService::blankToNull).filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) throw new BadRequestException("referenceId is required");
+        if (ids.size() > MAX_REFERENCES) throw new BadRequestException("at most " + MAX_REFERENCES + " references");
+
+        Map<String, List<ImageAsset>> byRef = new LinkedHashMap<>();
+        for (String id : ids) byRef.put(id, new ArrayList<>());
+        for (int i = 0; i < ids.size(); i += IN_CHUNK) {
+            List<String> chunk = ids.subList(i, Math.min(ids.size(), i + IN_CHUNK));
+            List<ImageAsset> rows = latestOnly ? repo.findLatestByReferences(type, chunk) : repo.findByReferences(type, chunk);
+            for (ImageAsset a : rows) byRef.computeIfAbsent(a.getReferenceId(), k -> new ArrayList<>()).add(a);
+        }
+        return byRef.values().stream().flatMap(List::stream).toList();
+    }
+
+    public List<ImageMetaResponse> getMetaByReferences(String referenceType, List<String> referenceIds, boolean latestOnly) {
+        return findByReferences(referenceType, referenceIds, latestOnly).stream().map(ImageService::toMeta).toList();
+    }
+
+    /**
+     * @param precondition when not null, checked against the row as loaded in the same transaction that saves it;
+     *                     the row's version fails the save if another writer commits in between. Either way the
+     *                     edit is not applied and {@link PreconditionFailedException} is thrown.
+     */
+    public ImageMetaResponse updateMeta(long id, String uploadedBy, String originalFilename,
+                                        Predicate<ImageMetaResponse> precondition) {
+        ImageAsset saved;
+        try {
+            saved = tx.execute(s -> {
+                var a = repo.findById(id).orElseThrow(() -> new NotFoundException("image not found"));
+                if (precondition != null && !precondition.test(toMeta(a))) {
+                    throw new PreconditionFailedException("precondition_failed");
+                }
+                if (uploadedBy != null && !uploadedBy.isBlank()) a.setUploadedBy(uploadedBy.trim());
+                if (originalFilename != null && !originalFilename.isBlank()) a.setOriginalFilename(originalFilename.trim());
+                return repo.saveAndFlush(a);
+            });
+        } catch (OptimisticLockingFailureException e) {
+            if (precondition == null) throw e;
+            throw new PreconditionFailedException("precondition_failed");
+        }
+        descriptors.invalidate(id, saved.getReferenceId(), saved.getReferenceType());
+        return toMeta(saved);
     }
 
     public void deleteImage(long id) {
         var a = repo.findById(id).orElseThrow(() -> new NotFoundException("image not found"));
-        var p = root.resolve(a.getStoredFilename()).normalize();
-        ensureInside(p);
-        try { Files.deleteIfExists(p); } catch (Exception ignore) {}
-        repo.delete(a);
+        ReentrantLock lock = blobLock(a);
+        lock.lock();
+        try {
+            // the row and its blob reference go in one transaction; the file only once that has committed
+            boolean unused = Boolean.TRUE.equals(tx.execute(s -> {
+                repo.deleteByIds(List.of(id));
+                return dropReference(a);
+            }));
+            descriptors.invalidate(id, a.getReferenceId(), a.getReferenceType());
+            if (unused) deleteBlobQuietly(a.getStoredFilename());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes many rows with one statement and drops their blob references set-based (one update per distinct
+     * number of rows sharing a blob), all in one transaction. Files are not touched: the returned keys may have become unused, and the
+     * caller deletes them through {@link #deleteOrphanBlob}, which checks again under the blob lock.
+     */
+    public List<String> deleteAll(List<ImageAsset> rows) {
+        if (rows.isEmpty()) return List.of();
+        Map<String, Long> references = rows.stream().filter(ImageService::contentAddressed)
+                .collect(Collectors.groupingBy(ImageAsset::getChecksumSha256, Collectors.counting()));
+        tx.executeWithoutResult(s -> {
+            repo.deleteByIds(rows.stream().map(ImageAsset::getId).toList());
+            references.entrySet().stream()
+                    .collect(Collectors.groupingBy(Map.Entry::getValue,
+                            Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+                    .forEach((n, checksums) -> blobs.releaseAll(checksums, n));
+            if (!references.isEmpty()) blobs.deleteUnreferenced(references.keySet());
+        });
+        for (ImageAsset a : rows) descriptors.invalidate(a.getId(), a.getReferenceId(), a.getReferenceType());
+        return rows.stream().map(ImageAsset::getStoredFilename).distinct().toList();
     }
 
     public ImageMetaResponse getMetaByReference(String refId, String refType) {
@@ -151,21 +342,153 @@ public class ImageService {
         return toMeta(a);
     }
 
-    private static String getExt(String name) {
-        if (name == null) return "";
-        int dot = name.lastIndexOf('.');
-        return dot == -1 ? "" : name.substring(dot + 1);
+    /**
+     * Moves a staged upload to its content-addressed location ({@code ab/cd/<sha256>}) or, when the same bytes
+     * are already stored, drops the staged copy and adds a reference to the existing blob.
+     */
+    private String storeBlob(Path staged, String checksum, long size) {
+        String storedName = blobName(checksum);
+        ReentrantLock lock = blobLock(checksum);
+        lock.lock();
+        try {
+            if (blobs.retain(checksum) > 0 && store.exists(storedName)) {
+                deleteQuietly(staged);
+                return storedName;
+            }
+            // new blob, or a row whose file went missing: (re)materialize it
+            store.put(storedName, staged);
+            if (!blobs.existsById(checksum)) {
+                StoredBlob b = new StoredBlob();
+                b.setChecksumSha256(checksum);
+                b.setStoredFilename(storedName);
+                b.setSizeBytes(size);
+                b.setRefCount(1);
+                b.setCreatedAt(Instant.now());
+                try {
+                    blobs.saveAndFlush(b);
+                } catch (DataIntegrityViolationException raced) {
+                    blobs.retain(checksum); // another instance inserted it first
+                }
+            }
+            return storedName;
+        } catch (IOException e) {
+            deleteQuietly(staged);
+            throw new BadRequestException("cannot write file");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Drops one reference; the file goes only when the last row using it is gone. */
+    private void releaseBlob(ImageAsset a) {
+        ReentrantLock lock = blobLock(a);
+        lock.lock();
+        try {
+            if (Boolean.TRUE.equals(tx.execute(s -> dropReference(a)))) deleteBlobQuietly(a.getStoredFilename());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Decrements the blob's reference count and removes its row once unreferenced; returns true when the file is
+     * no longer used. Runs inside the caller's transaction, under the blob lock.
+     */
+    private boolean dropReference(ImageAsset a) {
+        // pre content-addressing rows own their UUID-named file exclusively
+        if (!contentAddressed(a)) return true;
+        blobs.release(a.getChecksumSha256());
+        return blobs.deleteIfUnreferenced(a.getChecksumSha256()) > 0;
+    }
+
+    /**
+     * Deletes a blob that no row references (found by StorageScrubber, or left by {@link #deleteAll}). Checked again
+     * under the blob lock, so an upload of the same bytes that is storing it right now keeps it; returns false when
+     * it is in use after all.
+     */
+    public boolean deleteOrphanBlob(String key) throws IOException {
+        ReentrantLock lock = blobLock(key.substring(key.lastIndexOf('/') + 1));
+        lock.lock();
+        try {
+            List<String> keys = List.of(key);
+            if (!blobs.findStoredFilenames(keys).isEmpty() || !repo.findStoredFilenames(keys).isEmpty()) return false;
+            return store.delete(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String blobName(String checksum) {
+        if (checksum == null || checksum.length() < 4) return "";
+        return checksum.substring(0, 2) + "/" + checksum.substring(2, 4) + "/" + checksum;
+    }
+
+    private static boolean contentAddressed(ImageAsset a) {
+        return a.getStoredFilename().equals(blobName(a.getChecksumSha256()));
+    }
+
+    private ReentrantLock blobLock(ImageAsset a) {
+        return blobLock(contentAddressed(a) ? a.getChecksumSha256() : a.getStoredFilename());
+    }
+
+    private ReentrantLock blobLock(String checksum) {
+        return blobLocks[Math.floorMod(checksum.hashCode(), blobLocks.length)];
+    }
+
+    private static void deleteQuietly(Path p) {
+        if (p == null) return;
+        try { Files.deleteIfExists(p); } catch (IOException ignore) {}
+    }
+
+    private void deleteBlobQuietly(String key) {
+        try {
+            store.delete(key);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Cannot delete blob {}: {}", key, e.toString());
+        }
+    }
+
+    private BlobRegion locate(String key) {
+        try {
+            return store.locate(key);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new NotFoundException("file missing on disk");
+        }
+    }
+
+    private static Resource resource(BlobRegion r) {
+        return new FileResponder.RegionResource(r.file(), r.offset(), r.length());
+    }
+
+    private DownloadDescriptor toDescriptor(ImageAsset a, String fallbackName) {
+        String name = a.getOriginalFilename() != null && !a.getOriginalFilename().isBlank()
+                ? a.getOriginalFilename() : fallbackName;
+        return new DownloadDescriptor(a.getId(), a.getStoredFilename(), mediaTypeOf(a.getContentType()), a.getSizeBytes(),
+                a.getChecksumSha256(), name, a.getUploadedAt(), a.getReferenceId(), a.getReferenceType());
+    }
+
+    /** Strong validator for the metadata representation; changes whenever any returned field changes. */
+    public static String metaEtag(ImageMetaResponse m) {
+        return "\"m-" + HashUtil.sha256(m.toString().getBytes(StandardCharsets.UTF_8)).substring(0, 32) + "\"";
+    }
+
+    static MediaType mediaTypeOf(String contentType) {
+        try {
+            return contentType != null ? MediaType.parseMediaType(contentType) : MediaType.IMAGE_PNG;
+        } catch (Exception e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
     }
 
-    private void ensureInside(Path p) {
-        if (!p.normalize().startsWith(root)) throw new BadRequestException("invalid path");
+    static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s.trim();
     }
 
-    private ImageMetaResponse toMeta(ImageAsset a) {
+    public static ImageMetaResponse toMeta(ImageAsset a) {
         return new ImageMetaResponse(
                 a.getId(), a.getOriginalFilename(), a.getContentType(), a.getSizeBytes(),
                 a.getUploadedBy(), a.getUploadedAt(), a.getChecksumSha256(),
-                a.getWidth(), a.getHeight(), a.getReferenceId(), a.getReferenceType()
+                a.getWidth(), a.getHeight(), a.getReferenceId(), a.getReferenceType(), a.getStatus()
         );
     }
 }
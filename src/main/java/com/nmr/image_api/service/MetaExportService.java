@@ -0,0 +1,51 @@
+package com.nmr.image_api.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/** Streams the metadata catalogue as NDJSON from a DB cursor; memory stays flat regardless of row count. */
+@Service
+public class MetaExportService {
+
+    private static final int FLUSH_EVERY = 500;
+
+    private final ImageAssetRepository repo;
+    private final EntityManager em;
+    private final ObjectMapper mapper;
+
+    public MetaExportService(ImageAssetRepository repo, EntityManager em, ObjectMapper mapper) {
+        this.repo = repo;
+        this.em = em;
+        this.mapper = mapper;
+    }
+
+    @Transactional(readOnly = true)
+    public long exportNdjson(String referenceType, String uploadedBy, OutputStream out) throws IOException {
+        long n = 0;
+        try (Stream<ImageAsset> rows = repo.streamAll(ImageService.blankToNull(referenceType), ImageService.blankToNull(uploadedBy));
+             JsonGenerator gen = mapper.getFactory().createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+            Iterator<ImageAsset> it = rows.iterator();
+            while (it.hasNext()) {
+                ImageAsset a = it.next();
+                gen.writeObject(ImageService.toMeta(a));
+                em.detach(a); // keep the persistence context from growing with the cursor
+                if (++n % FLUSH_EVERY == 0) gen.flush();
+            }
+            if (n > 0) gen.writeRaw('\n');
+        }
+        return n;
+    }
+}
@@ -0,0 +1,139 @@
+package com.nmr.image_api.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.repo.CatalogueState;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized {@link com.nmr.image_api.dto.ImageMetaResponse} JSON per row, reused while the row's version is
+ * unchanged, so listings copy bytes instead of running Jackson per row. On top of it, the last GET /images/allmeta
+ * body (and its gzip encoding, made on first use) is kept under a weak ETag of the catalogue state, so polling an
+ * unchanged catalogue costs one aggregate query: 304 with If-None-Match, the kept bytes without.
+ */
+@Component
+public class MetaJsonCache implements MeterBinder {
+
+    private static final byte[] EMPTY = {'[', ']'};
+
+    private record Entry(long version, byte[] json) {}
+
+    /** The JSON array of the whole catalogue as of {@code etag}. */
+    public static final class Catalogue {
+        private final String etag;
+        private final byte[] json;
+        private volatile byte[] gzip;
+
+        Catalogue(String etag, byte[] json) {
+            this.etag = etag;
+            this.json = json;
+        }
+
+        public String etag() { return etag; }
+
+        public byte[] json() { return json; }
+
+        /** Compressed once per catalogue state; a concurrent first call may compress twice. */
+        public byte[] gzip() {
+            byte[] g = gzip;
+            if (g == null) gzip = g = MetaJsonCache.gzip(json);
+            return g;
+        }
+    }
+
+    private final ImageAssetRepository repo;
+    private final ObjectMapper mapper;
+    private final Cache<Long, Entry> rows;
+    private volatile Catalogue last;
+
+    public MetaJsonCache(ImageAssetRepository repo, ObjectMapper mapper,
+                         @Value("${image.cache.meta-json.max-size:64MB}") DataSize maxSize) {
+        this.repo = repo;
+        this.mapper = mapper;
+        this.rows = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((Long id, Entry e) -> e.json().length + 48)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, rows, "meta.json");
+    }
+
+    /** The row's metadata as JSON; serialized only when the row changed since it was last cached. */
+    public byte[] json(ImageAsset a) {
+        Entry e = rows.getIfPresent(a.getId());
+        if (e != null && e.version() == a.getVersion()) return e.json();
+        byte[] json;
+        try {
+            json = mapper.writeValueAsBytes(ImageService.toMeta(a));
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        rows.put(a.getId(), new Entry(a.getVersion(), json));
+        return json;
+    }
+
+    /** {@code [row,row,...]} from the per-row JSON. */
+    public byte[] jsonArray(List<ImageAsset> assets) {
+        if (assets.isEmpty()) return EMPTY;
+        byte[][] parts = new byte[assets.size()][];
+        int size = 1 + assets.size();
+        for (int i = 0; i < parts.length; i++) size += (parts[i] = json(assets.get(i))).length;
+        ByteBuffer out = ByteBuffer.allocate(size).put((byte) '[');
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) out.put((byte) ',');
+            out.put(parts[i]);
+        }
+        return out.put((byte) ']').array();
+    }
+
+    /** Weak ETag of the current catalogue state (one aggregate query, no rows loaded). */
+    public String catalogueEtag() {
+        CatalogueState s = repo.catalogueState();
+        HexFormat hex = HexFormat.of();
+        return "W/\"all-" + hex.toHexDigits(s.rows()) + hex.toHexDigits(s.idSum()) + hex.toHexDigits(s.versionSum()) + "\"";
+    }
+
+    /**
+     * The catalogue for {@code etag} (from {@link #catalogueEtag()}), rebuilt from the rows when it differs from the
+     * one kept. Rows are read after the ETag, so the body is never older than the state it is labelled with.
+     */
+    public Catalogue catalogue(String etag) {
+        Catalogue c = last;
+        if (c != null && c.etag().equals(etag)) return c;
+        c = new Catalogue(etag, jsonArray(repo.findAll(Sort.by("id"))));
+        last = c;
+        return c;
+    }
+
+    static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, data.length / 8));
+        try (GZIPOutputStream gz = new GZIPOutputStream(bytes, 64 << 10)) {
+            gz.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,265 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import com.nmr.image_api.entity.ProcessingTask;
+import com.nmr.image_api.metrics.ImageMetrics;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import com.nmr.image_api.repo.ProcessingTaskRepository;
+import com.nmr.image_api.storage.BlobSource;
+import com.nmr.image_api.storage.BlobStore;
+import com.nmr.image_api.util.ImageDimensions;
+import com.nmr.image_api.util.PerceptualHash;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Finishes uploads off the request path: probes dimensions, computes the perceptual hash (see
+ * {@link SimilarityIndex}), pre-renders the gallery thumbnail and the {@link CompactVariants compact encoding} and
+ * marks the row READY. Work is persisted as {@link ProcessingTask} rows and pulled by a fixed pool of workers whose in-memory
+ * queue holds at most {@code image.processing.queue-capacity} tasks; everything beyond that waits in the table.
+ * When more than {@code image.processing.max-backlog} tasks are pending, uploads are processed on the caller's
+ * thread instead, so a slow pool pushes back on producers rather than letting the table grow without bound.
+ * <p>
+ * Processing is idempotent, so a task whose worker died is simply run again: tasks RUNNING for longer than
+ * {@code image.processing.task-timeout} are put back in the queue on startup and every quarter of that timeout
+ * while polling. Several instances may share the table, so tasks their live peers are running are left alone;
+ * the timeout must exceed the longest processing of a single image.
+ */
+@Service
+public class ProcessingQueue implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(ProcessingQueue.class);
+
+    /** The gallery thumbnail (images.html asks for ?w=144&h=144&fit=cover) */
+    static final int THUMBNAIL_SIZE = 144;
+
+    private final BlobStore store;
+    private final ImageAssetRepository images;
+    private final ProcessingTaskRepository tasks;
+    private final VariantService variants;
+    private final CompactVariants compact;
+    private final SimilarityIndex similar;
+    private final ImageMetrics metrics;
+    private final long maxBacklog;
+    private final int maxAttempts;
+    private final Duration taskTimeout;
+
+    private final ThreadPoolExecutor workers;
+    /** runs {@link #poll()} on demand; a queue of one coalesces bursts of wake-ups */
+    private final ThreadPoolExecutor poller;
+    private final ReentrantLock pollLock = new ReentrantLock();
+    private final AtomicLong backlog = new AtomicLong();
+    /** nanoTime after which {@link #poll()} looks for stale RUNNING tasks again; guarded by pollLock */
+    private long nextRequeue;
+
+    public ProcessingQueue(BlobStore store, ImageAssetRepository images, ProcessingTaskRepository tasks,
+                           VariantService variants, CompactVariants compact, SimilarityIndex similar,
+                           ImageMetrics metrics,
+                           @Value("${image.processing.workers:2}") int workers,
+                           @Value("${image.processing.queue-capacity:32}") int queueCapacity,
+                           @Value("${image.processing.max-backlog:10000}") long maxBacklog,
+                           @Value("${image.processing.max-attempts:3}") int maxAttempts,
+                           @Value("${image.processing.task-timeout:10m}") Duration taskTimeout) {
+        this.store = store;
+        this.images = images;
+        this.tasks = tasks;
+        this.variants = variants;
+        this.compact = compact;
+        this.similar = similar;
+        this.metrics = metrics;
+        this.maxBacklog = maxBacklog;
+        this.maxAttempts = maxAttempts;
+        this.taskTimeout = taskTimeout;
+        this.nextRequeue = System.nanoTime() + taskTimeout.toNanos() / 4; // recover() covers startup
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), Background.daemon("image-processing-"));
+        this.poller = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1), Background.daemon("image-processing-poll"),
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("image.processing.backlog", backlog, AtomicLong::get)
+                .description("pending post-processing tasks at the last poll").register(registry);
+        ExecutorServiceMetrics.monitor(registry, workers, "image.processing");
+    }
+
+    /**
+     * Schedules post-processing for freshly saved rows still in {@link ImageStatus#PROCESSING}. Over the backlog
+     * limit the rows are processed right here instead, and come back READY.
+     */
+    public void submit(List<ImageAsset> saved) {
+        List<ImageAsset> pending = saved.stream().filter(a -> a.getStatus() == ImageStatus.PROCESSING).toList();
+        if (pending.isEmpty()) return;
+        if (backlog.get() >= maxBacklog) {
+            for (ImageAsset a : pending) runInline(a);
+            return;
+        }
+        Instant now = Instant.now();
+        tasks.saveAll(pending.stream().map(a -> newTask(a.getId(), now)).toList());
+        backlog.addAndGet(pending.size());
+        wakeUp();
+    }
+
+    /** Pending tasks as of the last poll. */
+    public long backlog() {
+        return backlog.get();
+    }
+
+    /** Requeues stale RUNNING tasks (e.g. left by a previous run) and creates tasks for PROCESSING rows that have none. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        int requeued = requeueStale();
+        int orphans = 0;
+        for (List<Long> ids; !(ids = tasks.findImagesWithoutTask(ImageStatus.PROCESSING, Limit.of(500))).isEmpty(); ) {
+            Instant now = Instant.now();
+            tasks.saveAll(ids.stream().map(id -> newTask(id, now)).toList());
+            orphans += ids.size();
+        }
+        if (requeued + orphans > 0) {
+            log.info("Processing queue: {} interrupted and {} orphaned tasks requeued", requeued, orphans);
+        }
+        wakeUp();
+    }
+
+    /** Claims as many pending tasks as the worker queue has room for. Also runs periodically as a safety net. */
+    @Scheduled(initialDelayString = "${image.processing.poll-interval:2s}",
+               fixedDelayString = "${image.processing.poll-interval:2s}")
+    public void poll() {
+        if (workers.isShutdown() || !pollLock.tryLock()) return;
+        try {
+            if (System.nanoTime() - nextRequeue >= 0) {
+                nextRequeue = System.nanoTime() + taskTimeout.toNanos() / 4;
+                int requeued = requeueStale();
+                if (requeued > 0) log.info("Processing queue: {} stale tasks requeued", requeued);
+            }
+            int room = workers.getQueue().remainingCapacity();
+            if (room > 0) {
+                for (ProcessingTask t : tasks.findByStateOrderByIdAsc(ProcessingTask.State.PENDING, Limit.of(room))) {
+                    if (tasks.claim(t.getId(), Instant.now()) == 0) continue; // another instance got it
+                    t.setAttempts(t.getAttempts() + 1);
+                    workers.execute(() -> run(t)); // cannot be rejected: only this method fills the queue
+                }
+            }
+            backlog.set(tasks.countByState(ProcessingTask.State.PENDING));
+        } catch (RuntimeException e) {
+            log.warn("Processing queue poll failed: {}", e.toString());
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    /** Puts tasks RUNNING for longer than the task timeout back in the queue; their worker is presumed dead. */
+    private int requeueStale() {
+        return tasks.requeueStarted(Instant.now().minus(taskTimeout));
+    }
+
+    private void run(ProcessingTask task) {
+        long t0 = System.nanoTime();
+        String outcome = "ok";
+        try {
+            ImageAsset a = images.findById(task.getImageId()).orElse(null);
+            if (a != null) process(a); // else deleted meanwhile: nothing left to do
+            tasks.deleteById(task.getId());
+        } catch (Exception e) {
+            boolean last = task.getAttempts() >= maxAttempts;
+            outcome = last ? "failed" : "retry";
+            log.warn("Processing image {} failed (attempt {}/{}): {}",
+                    task.getImageId(), task.getAttempts(), maxAttempts, e.toString());
+            try {
+                tasks.finish(task.getId(), last ? ProcessingTask.State.FAILED : ProcessingTask.State.PENDING,
+                        Background.errorMessage(e));
+                if (last) images.updateStatus(task.getImageId(), ImageStatus.FAILED);
+            } catch (RuntimeException db) {
+                log.warn("Cannot record processing failure for image {}: {}", task.getImageId(), db.toString());
+            }
+        } finally {
+            metrics.processed(outcome, System.nanoTime() - t0);
+            wakeUp();
+        }
+    }
+
+    private void runInline(ImageAsset a) {
+        long t0 = System.nanoTime();
+        try {
+            process(a);
+            metrics.processed("inline", System.nanoTime() - t0);
+        } catch (Exception e) {
+            // the row is saved already; failing the upload now would only orphan it
+            log.warn("Inline processing of image {} failed: {}", a.getId(), e.toString());
+            a.setStatus(ImageStatus.FAILED);
+            images.updateStatus(a.getId(), ImageStatus.FAILED);
+            metrics.processed("failed", System.nanoTime() - t0);
+        }
+    }
+
+    /**
+     * Probes dimensions, hashes, renders the thumbnail and compact encoding and marks {@code a} READY (in memory and
+     * in the table).
+     */
+    void process(ImageAsset a) throws IOException {
+        ByteBuffer data = store.read(a.getStoredFilename()); // NoSuchFileException when the blob is gone
+        BlobSource source = data::duplicate;
+
+        ImageDimensions.Size dim = ImageDimensions.probe(data);
+        if (dim != null) {
+            a.setWidth(dim.width());
+            a.setHeight(dim.height());
+            a.setPerceptualHash(PerceptualHash.dHash(data));
+            try {
+                variants.getOrRender(a.getChecksumSha256(), source,
+                        VariantSpec.of(THUMBNAIL_SIZE, THUMBNAIL_SIZE, "cover", null, null, a.getContentType()));
+            } catch (RuntimeException e) {
+                // e.g. a format ImageIO can size but not decode; the thumbnail is an optimization only
+                log.debug("No thumbnail for image {}: {}", a.getId(), e.toString());
+            }
+            compact.prepare(a.getChecksumSha256(), source, a.getContentType(), a.getSizeBytes());
+        }
+        a.setStatus(ImageStatus.READY);
+        images.completeProcessing(a.getId(), a.getWidth(), a.getHeight(), a.getPerceptualHash(), ImageStatus.READY);
+        similar.add(a.getId(), a.getPerceptualHash());
+    }
+
+    private void wakeUp() {
+        if (!poller.isShutdown()) poller.execute(this::poll);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        poller.shutdownNow();
+        workers.shutdown();
+        // whatever does not finish in time stays RUNNING in the table and is requeued by the next recover()
+        if (!workers.awaitTermination(10, TimeUnit.SECONDS)) workers.shutdownNow();
+    }
+
+    private static ProcessingTask newTask(long imageId, Instant now) {
+        ProcessingTask t = new ProcessingTask();
+        t.setImageId(imageId);
+        t.setState(ProcessingTask.State.PENDING);
+        t.setCreatedAt(now);
+        return t;
+    }
+}
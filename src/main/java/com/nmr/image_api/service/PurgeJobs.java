@@ -0,0 +1,236 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.dto.PurgeJobResponse;
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.PurgeJob;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import com.nmr.image_api.repo.PurgeJobRepository;
+import com.nmr.image_api.web.BadRequestException;
+import com.nmr.image_api.web.NotFoundException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk deletes (POST /images/purge): every image of a list of references, and/or every image uploaded before a
+ * cutoff. A job is a purge_job row; one thread works through the jobs in order, {@code image.purge.batch-size}
+ * rows at a time with {@code image.purge.delay} in between, so other writers get the table in between. A batch is
+ * one keyset select, one set-based delete and a few set-based blob reference updates (see
+ * {@link ImageService#deleteAll}). The files nothing references any more are then deleted by
+ * {@code image.purge.file-parallelism} threads at no more than {@code image.purge.file-rate} per second.
+ * <p>
+ * Progress is saved after every batch, so a restart resumes the job. Files of a batch interrupted by the restart
+ * are left for the storage scrubber to find as orphans.
+ */
+@Service
+public class PurgeJobs {
+    private static final Logger log = LoggerFactory.getLogger(PurgeJobs.class);
+
+    private static final List<PurgeJob.State> UNFINISHED = List.of(PurgeJob.State.RUNNING, PurgeJob.State.QUEUED);
+
+    private final ImageAssetRepository images;
+    private final PurgeJobRepository jobs;
+    private final ImageService service;
+    private final int batchSize;
+    private final Duration delay;
+    private final long fileInterval;
+
+    /** runs {@link #drain()}; a queue of one coalesces wake-ups */
+    private final ThreadPoolExecutor runner;
+    private final ExecutorService files;
+    /** set once the application is ready; jobs submitted before wait for that */
+    private volatile boolean started;
+    /** nanoTime before which no further file may be deleted */
+    private final AtomicLong nextFileSlot = new AtomicLong(System.nanoTime());
+
+    public PurgeJobs(ImageAssetRepository images, PurgeJobRepository jobs, ImageService service,
+                     @Value("${image.purge.batch-size:500}") int batchSize,
+                     @Value("${image.purge.delay:200ms}") Duration delay,
+                     @Value("${image.purge.file-parallelism:4}") int fileParallelism,
+                     @Value("${image.purge.file-rate:200}") int fileRate) {
+        this.images = images;
+        this.jobs = jobs;
+        this.service = service;
+        this.batchSize = batchSize;
+        this.delay = delay;
+        this.fileInterval = fileRate > 0 ? 1_000_000_000L / fileRate : 0;
+        this.runner = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1),
+                Background.daemon("image-purge"), new ThreadPoolExecutor.DiscardPolicy());
+        this.files = Executors.newFixedThreadPool(fileParallelism, Background.daemon("image-purge-files-"));
+    }
+
+    /** Queues a purge of the images that exist now; validated here, run in the background. */
+    public PurgeJobResponse submit(String referenceType, List<String> referenceIds, Instant uploadedBefore) {
+        String type = ImageService.blankToNull(referenceType);
+        List<String> ids = referenceIds == null ? List.of()
+                : referenceIds.stream().map(ImageService::blankToNull).filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty() && uploadedBefore == null) {
+            throw new BadRequestException("referenceIds or uploadedBefore is required");
+        }
+        if (!ids.isEmpty() && type == null) throw new BadRequestException("referenceType is required with referenceIds");
+        if (ids.size() > ImageService.MAX_REFERENCES) {
+            throw new BadRequestException("at most " + ImageService.MAX_REFERENCES + " references");
+        }
+        if (ids.stream().anyMatch(id -> id.indexOf('\n') >= 0)) {
+            throw new BadRequestException("referenceIds must not contain line breaks");
+        }
+
+        PurgeJob job = new PurgeJob();
+        job.setState(PurgeJob.State.QUEUED);
+        job.setReferenceType(type);
+        job.setReferenceIds(ids.isEmpty() ? null : String.join("\n", ids));
+        job.setUploadedBefore(uploadedBefore);
+        job.setMaxId(images.maxId());
+        job.setCreatedAt(Instant.now());
+        PurgeJob saved = jobs.save(job);
+        wakeUp();
+        return toResponse(saved);
+    }
+
+    public PurgeJobResponse status(long id) {
+        return toResponse(jobs.findById(id).orElseThrow(() -> new NotFoundException("purge job not found")));
+    }
+
+    /** Starts running jobs, beginning with those a previous run left unfinished. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        started = true;
+        wakeUp();
+    }
+
+    /** Safety net: picks jobs up again after a failed save stopped {@link #drain()}. */
+    @Scheduled(initialDelayString = "${image.purge.poll-interval:1m}", fixedDelayString = "${image.purge.poll-interval:1m}")
+    public void poll() {
+        wakeUp();
+    }
+
+    private void wakeUp() {
+        if (started && !runner.isShutdown()) runner.execute(this::drain);
+    }
+
+    private void drain() {
+        try {
+            while (!runner.isShutdown() && step()) TimeUnit.MILLISECONDS.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Purge jobs stopped: {}", e.toString());
+        }
+    }
+
+    /** Deletes one batch of the oldest unfinished job; returns false when there is none. */
+    boolean step() {
+        PurgeJob job = jobs.findFirstByStateInOrderByIdAsc(UNFINISHED).orElse(null);
+        if (job == null) return false;
+        if (job.getState() == PurgeJob.State.QUEUED) {
+            job.setState(PurgeJob.State.RUNNING);
+            job.setStartedAt(Instant.now());
+        }
+        try {
+            List<ImageAsset> rows = batch(job);
+            if (rows.isEmpty()) {
+                finish(job, PurgeJob.State.DONE);
+            } else {
+                List<String> keys = service.deleteAll(rows);
+                job.setImagesDeleted(job.getImagesDeleted() + rows.size());
+                job.setLastId(rows.getLast().getId());
+                deleteFiles(keys, job);
+            }
+        } catch (RuntimeException e) {
+            // everything deleted so far stays deleted; submitting the purge again finishes it
+            log.warn("Purge job {} failed: {}", job.getId(), e.toString());
+            job.setLastError(Background.errorMessage(e));
+            finish(job, PurgeJob.State.FAILED);
+        }
+        jobs.save(job);
+        return true;
+    }
+
+    private List<ImageAsset> batch(PurgeJob job) {
+        Limit limit = Limit.of(batchSize);
+        if (job.getReferenceIds() == null) {
+            return images.findPurgeBatch(job.getReferenceType(), job.getUploadedBefore(), job.getLastId(),
+                    job.getMaxId(), limit);
+        }
+        return images.findPurgeBatchByReferences(job.getReferenceType(), referenceIds(job), job.getUploadedBefore(),
+                job.getLastId(), job.getMaxId(), limit);
+    }
+
+    /** Deletes the files no row references any more, in parallel but paced to the configured rate. */
+    private void deleteFiles(List<String> keys, PurgeJob job) {
+        List<Future<Boolean>> deleted = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            deleted.add(files.submit(() -> {
+                pace();
+                return service.deleteOrphanBlob(key);
+            }));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            try {
+                if (deleted.get(i).get()) job.setFilesDeleted(job.getFilesDeleted() + 1);
+            } catch (ExecutionException e) {
+                job.setFileErrors(job.getFileErrors() + 1);
+                log.warn("Purge job {}: cannot delete blob {}: {}", job.getId(), keys.get(i), e.getCause().toString());
+            } catch (InterruptedException e) {
+                // shutting down: the rows are gone, so save that (not interrupted: H2 closes its file on an
+                // interrupted write); the remaining files become orphans
+                return;
+            }
+        }
+    }
+
+    /** Waits for the next free slot; slots are {@code 1 / image.purge.file-rate} apart across all threads. */
+    private void pace() throws InterruptedException {
+        if (fileInterval == 0) return;
+        long now = System.nanoTime();
+        long slot = Math.max(now, nextFileSlot.getAndAccumulate(now, (next, n) -> Math.max(next, n) + fileInterval));
+        TimeUnit.NANOSECONDS.sleep(slot - now);
+    }
+
+    private void finish(PurgeJob job, PurgeJob.State state) {
+        job.setState(state);
+        job.setFinishedAt(Instant.now());
+        if (state == PurgeJob.State.DONE) {
+            log.info("Purge job {} done in {}: {} images, {} files deleted, {} files failed", job.getId(),
+                    Duration.between(job.getStartedAt(), job.getFinishedAt()), job.getImagesDeleted(),
+                    job.getFilesDeleted(), job.getFileErrors());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        runner.shutdownNow();
+        files.shutdownNow();
+    }
+
+    private static PurgeJobResponse toResponse(PurgeJob j) {
+        return new PurgeJobResponse(j.getId(), j.getState(), j.getReferenceType(), referenceIds(j),
+                j.getUploadedBefore(), j.getCreatedAt(), j.getStartedAt(), j.getFinishedAt(), j.getImagesDeleted(),
+                j.getFilesDeleted(), j.getFileErrors(), j.getLastError());
+    }
+
+    private static List<String> referenceIds(PurgeJob j) {
+        return j.getReferenceIds() == null ? null : Arrays.asList(j.getReferenceIds().split("\n"));
+    }
+}
@@ -0,0 +1,171 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.dto.SimilarImagesResponse;
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import com.nmr.image_api.repo.HashEntry;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import com.nmr.image_api.storage.BlobStore;
+import com.nmr.image_api.util.HammingIndex;
+import com.nmr.image_api.util.PerceptualHash;
+import com.nmr.image_api.web.BadRequestException;
+import com.nmr.image_api.web.NotFoundException;
+import com.nmr.image_api.web.OverloadedException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Near-duplicate lookup (GET /images/{id}/similar) over the perceptual hashes of all images, held in a
+ * {@link HammingIndex}. The index is loaded from image_asset once the application is ready (queries answer 503
+ * until then) and fed by {@link ProcessingQueue} as uploads are processed. Rows processed before hashes existed
+ * are hashed in the background, {@code image.similar.backfill-batch} at a time. Deleted images are dropped from
+ * the index when a query finds their row gone.
+ */
+@Service
+public class SimilarityIndex implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(SimilarityIndex.class);
+
+    static final int MAX_LIMIT = 1000;
+    private static final int LOAD_BATCH = 10_000;
+    private static final Duration RETRY_AFTER = Duration.ofSeconds(5);
+
+    private final ImageAssetRepository images;
+    private final BlobStore store;
+    private final int backfillBatch;
+    private final Duration backfillDelay;
+    private final HammingIndex index = new HammingIndex();
+    private volatile boolean loaded;
+    /** backfill position; rows that cannot be hashed are passed over until the next start */
+    private long backfillAfter;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Background.daemon("image-similarity"));
+
+    public SimilarityIndex(ImageAssetRepository images, BlobStore store,
+                           @Value("${image.similar.backfill-batch:100}") int backfillBatch,
+                           @Value("${image.similar.backfill-delay:1s}") Duration backfillDelay) {
+        this.images = images;
+        this.store = store;
+        this.backfillBatch = backfillBatch;
+        this.backfillDelay = backfillDelay;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("image.similar.entries", index, HammingIndex::size)
+                .description("perceptual hashes in the similarity index").register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.execute(this::load);
+        if (backfillBatch > 0) {
+            executor.scheduleWithFixedDelay(this::backfillQuietly, 0, backfillDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** Reads every stored hash into the index, in keyset batches. */
+    void load() {
+        long t0 = System.nanoTime();
+        long[] ids = new long[LOAD_BATCH], hashes = new long[LOAD_BATCH];
+        int n = 0;
+        for (long after = 0; ; ) {
+            List<HashEntry> batch = images.findPerceptualHashes(after, Limit.of(LOAD_BATCH));
+            if (n + batch.size() > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(ids.length * 2, n + batch.size()));
+                hashes = Arrays.copyOf(hashes, ids.length);
+            }
+            for (HashEntry e : batch) {
+                ids[n] = e.id();
+                hashes[n++] = e.hash();
+            }
+            if (batch.size() < LOAD_BATCH) break;
+            after = batch.get(batch.size() - 1).id();
+        }
+        index.addAll(ids, hashes, n);
+        loaded = true;
+        log.info("Similarity index: {} perceptual hashes loaded in {} ms", n, (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    /** A freshly hashed image; null (not decodable) is ignored. */
+    public void add(long id, Long hash) {
+        if (hash != null) index.add(id, hash);
+    }
+
+    public SimilarImagesResponse similarTo(long id, int maxDistance, int limit) {
+        if (maxDistance < 0 || maxDistance > HammingIndex.MAX_DISTANCE) {
+            throw new BadRequestException("maxDistance must be 0.." + HammingIndex.MAX_DISTANCE);
+        }
+        if (limit < 1 || limit > MAX_LIMIT) throw new BadRequestException("limit must be 1.." + MAX_LIMIT);
+        ImageAsset a = images.findById(id).orElseThrow(() -> new NotFoundException("image not found"));
+        if (a.getPerceptualHash() == null) return new SimilarImagesResponse(id, null, List.of());
+        if (!loaded) throw new OverloadedException("similarity index is loading", RETRY_AFTER);
+
+        List<HammingIndex.Match> matches = index.query(a.getPerceptualHash(), maxDistance, limit, id);
+        Map<Long, ImageAsset> rows = images.findAllById(matches.stream().map(HammingIndex.Match::id).toList())
+                .stream().collect(Collectors.toMap(ImageAsset::getId, Function.identity()));
+        List<SimilarImagesResponse.Match> out = new ArrayList<>(matches.size());
+        for (HammingIndex.Match m : matches) {
+            ImageAsset row = rows.get(m.id());
+            if (row == null) {
+                index.remove(m.id(), m.hash()); // deleted
+            } else {
+                out.add(new SimilarImagesResponse.Match(m.distance(), ImageService.toMeta(row)));
+            }
+        }
+        return new SimilarImagesResponse(id, PerceptualHash.hex(a.getPerceptualHash()), out);
+    }
+
+    private void backfillQuietly() {
+        try {
+            if (!backfill()) executor.shutdown(); // caught up; new rows are hashed by ProcessingQueue
+        } catch (RuntimeException e) {
+            log.warn("Perceptual hash backfill failed: {}", e.toString());
+        }
+    }
+
+    /** Hashes one batch of READY rows that have no hash; returns false when there were none left. */
+    boolean backfill() {
+        List<ImageAsset> rows = images.findWithoutPerceptualHash(ImageStatus.READY, backfillAfter, Limit.of(backfillBatch));
+        for (ImageAsset a : rows) {
+            backfillAfter = a.getId();
+            Long hash;
+            try {
+                ByteBuffer data = store.read(a.getStoredFilename());
+                hash = PerceptualHash.dHash(data);
+            } catch (IOException e) {
+                continue; // missing blob: the storage scrubber's business
+            }
+            if (hash != null && images.setPerceptualHash(a.getId(), hash) > 0) index.add(a.getId(), hash);
+        }
+        if (!rows.isEmpty()) log.debug("Perceptual hash backfill: up to id {}", backfillAfter);
+        return rows.size() == backfillBatch;
+    }
+}
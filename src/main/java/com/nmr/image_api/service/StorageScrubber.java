@@ -0,0 +1,297 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import com.nmr.image_api.entity.ScrubOrphan;
+import com.nmr.image_api.entity.ScrubProgress;
+import com.nmr.image_api.metrics.ImageMetrics;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import com.nmr.image_api.repo.ScrubOrphanRepository;
+import com.nmr.image_api.repo.ScrubProgressRepository;
+import com.nmr.image_api.repo.StoredBlobRepository;
+import com.nmr.image_api.storage.BlobStore;
+import com.nmr.image_api.util.HashUtil;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reconciles image_asset with the {@link BlobStore} in the background, one small batch at a time. A pass has two
+ * phases:
+ * <ol>
+ *   <li>ROWS: image rows in id order (keyset). Is the blob there and, with {@code image.scrub.verify-checksums},
+ *       does it still hash to checksumSha256? Verification reads at most {@code image.scrub.verify-rate} bytes per
+ *       second.</li>
+ *   <li>BLOBS: store keys in order. Does any row reference the blob? Unreferenced ones are remembered in
+ *       scrub_orphan.</li>
+ * </ol>
+ * Findings are logged and counted ({@code image.scrub.findings}). With {@code image.scrub.repair}, rows whose blob
+ * is gone or damaged are marked MISSING / CORRUPT (READY again once it is back), and orphans first seen more than
+ * {@code image.scrub.orphan-grace} ago are deleted. Batches run {@code image.scrub.delay} apart on one
+ * minimum-priority thread, and the position is saved to scrub_progress after each, so a restart resumes the pass
+ * where it stopped. The next pass starts {@code image.scrub.pass-interval} after the last one finished.
+ */
+@Service
+public class StorageScrubber {
+    private static final Logger log = LoggerFactory.getLogger(StorageScrubber.class);
+
+    static final String NAME = "storage";
+
+    private final BlobStore store;
+    private final ImageAssetRepository images;
+    private final StoredBlobRepository blobs;
+    private final ScrubProgressRepository progress;
+    private final ScrubOrphanRepository orphans;
+    private final ImageService service;
+    private final ImageMetrics metrics;
+    private final boolean enabled;
+    private final boolean repair;
+    private final boolean verify;
+    private final long verifyRate;
+    private final int batchSize;
+    private final Duration initialDelay;
+    private final Duration delay;
+    private final Duration passInterval;
+    private final Duration orphanGrace;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            Background.daemon("image-scrub", Thread.MIN_PRIORITY));
+
+    public StorageScrubber(BlobStore store, ImageAssetRepository images, StoredBlobRepository blobs,
+                           ScrubProgressRepository progress, ScrubOrphanRepository orphans,
+                           ImageService service, ImageMetrics metrics,
+                           @Value("${image.scrub.enabled:true}") boolean enabled,
+                           @Value("${image.scrub.repair:false}") boolean repair,
+                           @Value("${image.scrub.verify-checksums:false}") boolean verify,
+                           @Value("${image.scrub.verify-rate:8MB}") DataSize verifyRate,
+                           @Value("${image.scrub.batch-size:500}") int batchSize,
+                           @Value("${image.scrub.initial-delay:1m}") Duration initialDelay,
+                           @Value("${image.scrub.delay:2s}") Duration delay,
+                           @Value("${image.scrub.pass-interval:1d}") Duration passInterval,
+                           @Value("${image.scrub.orphan-grace:1h}") Duration orphanGrace) {
+        this.store = store;
+        this.images = images;
+        this.blobs = blobs;
+        this.progress = progress;
+        this.orphans = orphans;
+        this.service = service;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.repair = repair;
+        this.verify = verify;
+        this.verifyRate = verifyRate.toBytes();
+        this.batchSize = batchSize;
+        this.initialDelay = initialDelay;
+        this.delay = delay;
+        this.passInterval = passInterval;
+        this.orphanGrace = orphanGrace;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        executor.scheduleWithFixedDelay(this::stepQuietly, initialDelay.toMillis(), delay.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Storage scrubber: batches of {} every {}, {}{}", batchSize, delay,
+                repair ? "repairing" : "report only", verify ? ", verifying checksums at " + verifyRate + " B/s" : "");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void stepQuietly() {
+        try {
+            step();
+        } catch (RuntimeException e) {
+            // a failing batch is retried after the next delay; an escaping exception would cancel the schedule
+            log.warn("Storage scrub batch failed: {}", e.toString());
+        }
+    }
+
+    /** Runs one batch, or starts a pass when one is due; returns false when there was nothing to do. */
+    boolean step() {
+        ScrubProgress p = progress.findById(NAME).orElseGet(() -> {
+            ScrubProgress fresh = new ScrubProgress();
+            fresh.setName(NAME);
+            return fresh;
+        });
+        Instant now = Instant.now();
+        switch (p.getPhase()) {
+            case IDLE -> {
+                if (p.getPassFinishedAt() != null && p.getPassFinishedAt().plus(passInterval).isAfter(now)) return false;
+                startPass(p, now);
+            }
+            case ROWS -> scrubRows(p);
+            case BLOBS -> scrubBlobs(p, now);
+        }
+        progress.save(p);
+        return true;
+    }
+
+    private void startPass(ScrubProgress p, Instant now) {
+        p.setPhase(ScrubProgress.Phase.ROWS);
+        p.setLastId(0);
+        p.setLastKey(null);
+        p.setPassStartedAt(now);
+        p.setRowsChecked(0);
+        p.setBlobsChecked(0);
+        p.setBytesVerified(0);
+        p.setMissing(0);
+        p.setCorrupt(0);
+        p.setOrphans(0);
+    }
+
+    private void scrubRows(ScrubProgress p) {
+        List<ImageAsset> rows = images.findPage(p.getLastId(), null, null, Limit.of(batchSize));
+        Map<String, ImageStatus> seen = new HashMap<>(); // rows sharing a blob share the verdict
+        for (ImageAsset a : rows) {
+            // PROCESSING / FAILED rows belong to ProcessingQueue
+            if (a.getStatus() != ImageStatus.PROCESSING && a.getStatus() != ImageStatus.FAILED) {
+                ImageStatus found = seen.computeIfAbsent(a.getStoredFilename(), k -> inspect(k, a.getChecksumSha256(), p));
+                apply(a, found, p);
+            }
+            p.setLastId(a.getId());
+        }
+        p.setRowsChecked(p.getRowsChecked() + rows.size());
+        if (rows.size() < batchSize) p.setPhase(ScrubProgress.Phase.BLOBS);
+    }
+
+    /** READY, MISSING or CORRUPT; null when the blob could not be read for another reason. */
+    private ImageStatus inspect(String key, String checksum, ScrubProgress p) {
+        if (!store.exists(key)) return ImageStatus.MISSING;
+        if (!verify) return ImageStatus.READY;
+        long start = System.nanoTime();
+        ByteBuffer data;
+        try {
+            data = store.read(key);
+        } catch (NoSuchFileException e) {
+            return ImageStatus.MISSING;
+        } catch (IOException e) {
+            log.warn("Cannot read blob {}: {}", key, e.toString());
+            return null;
+        }
+        long size = data.remaining();
+        boolean intact = HashUtil.sha256(data).equals(checksum);
+        p.setBytesVerified(p.getBytesVerified() + size);
+        throttle(size, System.nanoTime() - start);
+        return intact ? ImageStatus.READY : ImageStatus.CORRUPT;
+    }
+
+    private void apply(ImageAsset a, ImageStatus found, ScrubProgress p) {
+        if (found == null) return;
+        if (found == ImageStatus.READY) {
+            boolean recovered = a.getStatus() == ImageStatus.MISSING || (a.getStatus() == ImageStatus.CORRUPT && verify);
+            if (recovered && repair) {
+                images.updateStatus(a.getId(), ImageStatus.READY);
+                log.info("Image {}: blob {} is intact again", a.getId(), a.getStoredFilename());
+            }
+            return;
+        }
+        if (found == ImageStatus.MISSING) p.setMissing(p.getMissing() + 1);
+        else p.setCorrupt(p.getCorrupt() + 1);
+        if (a.getStatus() == found) return; // already marked by an earlier pass
+        String kind = found.name().toLowerCase(Locale.ROOT);
+        log.warn("Image {}: blob {} is {}", a.getId(), a.getStoredFilename(), kind);
+        if (repair) images.updateStatus(a.getId(), found);
+        metrics.scrubFinding(kind, repair);
+    }
+
+    private void scrubBlobs(ScrubProgress p, Instant now) {
+        List<String> keys;
+        try (Stream<String> s = store.keys(Objects.requireNonNullElse(p.getLastKey(), ""))) {
+            keys = s.limit(batchSize).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!keys.isEmpty()) {
+            Set<String> referenced = new HashSet<>(blobs.findStoredFilenames(keys));
+            referenced.addAll(images.findStoredFilenames(keys));
+            List<String> unreferenced = keys.stream().filter(k -> !referenced.contains(k)).toList();
+            if (!unreferenced.isEmpty()) orphaned(unreferenced, p, now);
+            p.setBlobsChecked(p.getBlobsChecked() + keys.size());
+            p.setLastKey(keys.getLast());
+        }
+        if (keys.size() < batchSize) finishPass(p, now);
+    }
+
+    private void orphaned(List<String> keys, ScrubProgress p, Instant now) {
+        Map<String, ScrubOrphan> known = orphans.findAllById(keys).stream()
+                .collect(Collectors.toMap(ScrubOrphan::getBlobKey, Function.identity()));
+        for (String key : keys) {
+            p.setOrphans(p.getOrphans() + 1);
+            ScrubOrphan o = known.get(key);
+            if (o == null) {
+                o = new ScrubOrphan();
+                o.setBlobKey(key);
+                o.setFirstSeen(now);
+                log.warn("Blob {} is not referenced by any image", key);
+                metrics.scrubFinding("orphan", false);
+            }
+            o.setLastSeen(now);
+            if (repair && !o.getFirstSeen().isAfter(now.minus(orphanGrace)) && deleteOrphan(key)) {
+                if (known.containsKey(key)) orphans.delete(o);
+                continue;
+            }
+            orphans.save(o);
+        }
+    }
+
+    private boolean deleteOrphan(String key) {
+        try {
+            if (!service.deleteOrphanBlob(key)) return false;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot delete orphaned blob {}: {}", key, e.toString());
+            return false;
+        }
+        log.info("Deleted orphaned blob {}", key);
+        metrics.scrubFinding("orphan", true);
+        return true;
+    }
+
+    private void finishPass(ScrubProgress p, Instant now) {
+        orphans.deleteNotSeenSince(p.getPassStartedAt()); // gone, or referenced again
+        p.setPhase(ScrubProgress.Phase.IDLE);
+        p.setPassFinishedAt(now);
+        log.info("Storage scrub pass done in {}: {} rows, {} blobs, {} bytes verified; {} missing, {} corrupt, {} orphaned",
+                Duration.between(p.getPassStartedAt(), now), p.getRowsChecked(), p.getBlobsChecked(),
+                p.getBytesVerified(), p.getMissing(), p.getCorrupt(), p.getOrphans());
+    }
+
+    /** Sleeps off whatever reading {@code bytes} took less than the configured rate allows. */
+    private void throttle(long bytes, long spentNanos) {
+        if (verifyRate <= 0) return;
+        long due = bytes * 1_000_000_000L / verifyRate;
+        try {
+            TimeUnit.NANOSECONDS.sleep(due - spentNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.storage.BlobSource;
+import com.nmr.image_api.util.ByteBufferStreams;
+import com.nmr.image_api.web.BadRequestException;
+import com.nmr.image_api.web.NotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Renders resized/re-encoded variants of originals and keeps them on disk under the derivatives directory.
+ * Files are keyed by checksum + {@link VariantSpec#key()}, concurrent misses for the same key share one render,
+ * and total size is bounded with LRU eviction.
+ */
+@Service
+public class VariantService {
+    private static final Logger log = LoggerFactory.getLogger(VariantService.class);
+
+    private final Path dir;
+    private final long maxBytes;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    /** relative path -> size, in access order (eldest = least recently used); guarded by lruLock */
+    private final LinkedHashMap<String, Long> lru = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    /** a lock rather than synchronized: virtual threads waiting on a monitor pin their carrier on JDK 21 */
+    private final ReentrantLock lruLock = new ReentrantLock();
+
+    public VariantService(@Value("${storage.dir:./storage}") String storageDir,
+                          @Value("${storage.derivatives-dir:}") String derivativesDir,
+                          @Value("${storage.derivatives.max-size:1GB}") DataSize maxSize) throws IOException {
+        Path root = Paths.get(storageDir).toAbsolutePath().normalize();
+        this.dir = (derivativesDir == null || derivativesDir.isBlank()
+                ? root.resolveSibling("derivatives")
+                : Paths.get(derivativesDir)).toAbsolutePath().normalize();
+        this.maxBytes = maxSize.toBytes();
+        Files.createDirectories(dir);
+        loadIndex();
+        log.info("Derivatives at {} ({} files, {} bytes, max {})", dir, lru.size(), totalBytes, maxSize);
+    }
+
+    /** Returns the cached variant file, rendering it from {@code original} on first use. */
+    public Path getOrRender(String checksum, BlobSource original, VariantSpec spec) {
+        String rel = relativePath(checksum, spec);
+        Path file = dir.resolve(rel);
+        if (touch(rel) && Files.exists(file)) return file;
+
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        CompletableFuture<Path> running = inFlight.putIfAbsent(rel, mine);
+        if (running != null) return await(running);
+        try {
+            if (!Files.exists(file)) {
+                Files.createDirectories(file.getParent());
+                Path tmp = Files.createTempFile(file.getParent(), "render-", ".tmp");
+                try {
+                    render(original, spec, tmp);
+                    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+            record(rel, Files.size(file));
+            mine.complete(file);
+            return file;
+        } catch (NoSuchFileException e) {
+            NotFoundException missing = new NotFoundException("file missing on disk");
+            mine.completeExceptionally(missing);
+            throw missing;
+        } catch (IOException e) {
+            mine.completeExceptionally(e);
+            throw new UncheckedIOException("cannot render variant", e);
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(rel, mine);
+        }
+    }
+
+    /** The variant file if it has been rendered already (and marks it recently used), else null. */
+    public Path find(String checksum, VariantSpec spec) {
+        String rel = relativePath(checksum, spec);
+        Path file = dir.resolve(rel);
+        return touch(rel) && Files.exists(file) ? file : null;
+    }
+
+    /** Drops a rendered variant, e.g. one that turned out not to be worth keeping. */
+    public void remove(String checksum, VariantSpec spec) {
+        String rel = relativePath(checksum, spec);
+        lruLock.lock();
+        try {
+            Long size = lru.remove(rel);
+            if (size != null) totalBytes -= size;
+        } finally {
+            lruLock.unlock();
+        }
+        try { Files.deleteIfExists(dir.resolve(rel)); } catch (IOException ignore) {}
+    }
+
+    private static String relativePath(String checksum, VariantSpec spec) {
+        if (checksum == null || !checksum.matches("[0-9a-f]{64}")) throw new BadRequestException("invalid checksum");
+        return checksum.substring(0, 2) + "/" + checksum + "_" + spec.key();
+    }
+
+    /** Decodes (subsampled when much larger than the target), scales and encodes {@code src} into {@code out}. */
+    void render(BlobSource src, VariantSpec spec, Path out) throws IOException {
+        BufferedImage img = decode(src.read(), spec);
+        BufferedImage scaled = scale(img, spec);
+        encode(scaled, spec, out);
+    }
+
+    private static BufferedImage decode(ByteBuffer src, VariantSpec spec) throws IOException {
+        try (ImageInputStream iis = ByteBufferStreams.imageInputStream(src)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) throw new BadRequestException("unsupported image format");
+            ImageReader r = readers.next();
+            try {
+                r.setInput(iis, true, true);
+                int sw = r.getWidth(0), sh = r.getHeight(0);
+                ImageReadParam param = r.getDefaultReadParam();
+                // keep at least 2x the target so the final resample still has detail to work with
+                int sub = Math.min(
+                        spec.width() == null ? Integer.MAX_VALUE : sw / (spec.width() * 2),
+                        spec.height() == null ? Integer.MAX_VALUE : sh / (spec.height() * 2));
+                if (sub > 1 && sub != Integer.MAX_VALUE) param.setSourceSubsampling(sub, sub, 0, 0);
+                return r.read(0, param);
+            } finally {
+                r.dispose();
+            }
+        }
+    }
+
+    static BufferedImage scale(BufferedImage img, VariantSpec spec) {
+        int sw = img.getWidth(), sh = img.getHeight();
+        Integer tw = spec.width(), th = spec.height();
+        if (tw == null && th == null) return img;
+
+        int outW, outH, drawW, drawH;
+        switch (spec.fit()) {
+            case FILL -> { outW = drawW = tw; outH = drawH = th; }
+            case COVER -> {
+                double s = Math.max((double) tw / sw, (double) th / sh);
+                outW = tw; outH = th;
+                drawW = (int) Math.ceil(sw * s); drawH = (int) Math.ceil(sh * s);
+            }
+            default -> {
+                double s = Math.min(tw == null ? Double.MAX_VALUE : (double) tw / sw,
+                                    th == null ? Double.MAX_VALUE : (double) th / sh);
+                s = Math.min(s, 1.0); // never upscale for contain
+                outW = drawW = Math.max(1, (int) Math.round(sw * s));
+                outH = drawH = Math.max(1, (int) Math.round(sh * s));
+            }
+        }
+
+        BufferedImage src = img;
+        // halve step by step for large reductions; a single bilinear pass aliases badly
+        while (src.getWidth() / 2 >= drawW && src.getHeight() / 2 >= drawH) {
+            src = resample(src, src.getWidth() / 2, src.getHeight() / 2, src.getWidth() / 2, src.getHeight() / 2);
+        }
+        return resample(src, outW, outH, drawW, drawH);
+    }
+
+    private static BufferedImage resample(BufferedImage src, int outW, int outH, int drawW, int drawH) {
+        int type = src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage dst = new BufferedImage(outW, outH, type);
+        Graphics2D g = dst.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(src, (outW - drawW) / 2, (outH - drawH) / 2, drawW, drawH, null);
+        } finally {
+            g.dispose();
+        }
+        return dst;
+    }
+
+    private static void encode(BufferedImage img, VariantSpec spec, Path out) throws IOException {
+        if (spec.format().equals("jpeg") && img.getColorModel().hasAlpha()) {
+            BufferedImage rgb = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = rgb.createGraphics();
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, img.getWidth(), img.getHeight());
+            g.drawImage(img, 0, 0, null);
+            g.dispose();
+            img = rgb;
+        }
+        ImageWriter w = ImageIO.getImageWritersByFormatName(spec.format()).next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out.toFile())) {
+            w.setOutput(ios);
+            ImageWriteParam p = w.getDefaultWriteParam();
+            if (spec.format().equals("jpeg")) {
+                p.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                p.setCompressionQuality(spec.quality() / 100f);
+                if (spec.progressive()) {
+                    p.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                    if (p instanceof JPEGImageWriteParam jp) jp.setOptimizeHuffmanTables(true);
+                }
+            }
+            w.write(null, new IIOImage(img, null, null), p);
+        } finally {
+            w.dispose();
+        }
+    }
+
+    private boolean touch(String rel) {
+        lruLock.lock();
+        try {
+            return lru.get(rel) != null;
+        } finally {
+            lruLock.unlock();
+        }
+    }
+
+    private void record(String rel, long size) {
+        List<String> evicted = new ArrayList<>();
+        lruLock.lock();
+        try {
+            Long prev = lru.put(rel, size);
+            totalBytes += size - (prev == null ? 0 : prev);
+            Iterator<Map.Entry<String, Long>> it = lru.entrySet().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Long> e = it.next();
+                if (e.getKey().equals(rel)) continue;
+                totalBytes -= e.getValue();
+                evicted.add(e.getKey());
+                it.remove();
+            }
+        } finally {
+            lruLock.unlock();
+        }
+        for (String e : evicted) {
+            try { Files.deleteIfExists(dir.resolve(e)); } catch (IOException ignore) {}
+        }
+    }
+
+    /** Rebuilds the LRU from disk, oldest modification first. */
+    private void loadIndex() throws IOException {
+        record Entry(String rel, long size, long mtime) {}
+        List<Entry> entries = new ArrayList<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) throws IOException {
+                String name = f.getFileName().toString();
+                if (name.endsWith(".tmp")) Files.deleteIfExists(f);
+                else entries.add(new Entry(dir.relativize(f).toString().replace('\\', '/'), attrs.size(), attrs.lastModifiedTime().toMillis()));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        entries.sort(Comparator.comparingLong(Entry::mtime));
+        for (Entry e : entries) {
+            lru.put(e.rel(), e.size());
+            totalBytes += e.size();
+        }
+    }
+
+    private static Path await(CompletableFuture<Path> f) {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof IOException io) throw new UncheckedIOException("cannot render variant", io);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.web.BadRequestException;
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+
+/**
+ * Resize/re-encode parameters for a derived image, e.g. {@code ?w=200&h=200&fit=cover&format=jpeg&q=80}.
+ * {@code progressive} (jpeg only, not exposed as a request parameter) is used for {@link CompactVariants}.
+ */
+public record VariantSpec(Integer width, Integer height, Fit fit, String format, int quality, boolean progressive) {
+
+    public enum Fit { CONTAIN, COVER, FILL }
+
+    public static final int MAX_DIMENSION = 4096;
+    public static final int DEFAULT_QUALITY = 85;
+
+    public static boolean requested(Integer w, Integer h, String fit, String format, Integer q) {
+        return w != null || h != null || fit != null || format != null || q != null;
+    }
+
+    /** Validates request parameters; format defaults to png for png/gif originals and jpeg otherwise. */
+    public static VariantSpec of(Integer w, Integer h, String fit, String format, Integer q, String originalContentType) {
+        if (w != null && (w < 1 || w > MAX_DIMENSION)) throw new BadRequestException("w out of range");
+        if (h != null && (h < 1 || h > MAX_DIMENSION)) throw new BadRequestException("h out of range");
+        if (q != null && (q < 1 || q > 100)) throw new BadRequestException("q out of range");
+
+        Fit f;
+        try {
+            f = fit == null ? Fit.CONTAIN : Fit.valueOf(fit.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("fit must be contain, cover or fill");
+        }
+        if (f != Fit.CONTAIN && (w == null || h == null)) throw new BadRequestException("fit=" + fit + " needs w and h");
+
+        String fmt = format == null ? defaultFormat(originalContentType) : format.trim().toLowerCase(Locale.ROOT);
+        if (fmt.equals("jpg")) fmt = "jpeg";
+        if (!fmt.equals("jpeg") && !fmt.equals("png")) throw new BadRequestException("format must be jpeg or png");
+
+        return new VariantSpec(w, h, f, fmt, q == null ? DEFAULT_QUALITY : q, false);
+    }
+
+    /** Full-size progressive jpeg with optimized Huffman tables. */
+    public static VariantSpec compactJpeg(int quality) {
+        if (quality < 1 || quality > 100) throw new IllegalArgumentException("quality out of range");
+        return new VariantSpec(null, null, Fit.CONTAIN, "jpeg", quality, true);
+    }
+
+    /** Stable file-name fragment; part of the derivative cache key. */
+    public String key() {
+        return (width == null ? "" : width) + "x" + (height == null ? "" : height)
+                + "_" + fit.name().toLowerCase(Locale.ROOT)
+                + (format.equals("jpeg") ? "_q" + quality : "")
+                + (progressive ? "_progressive" : "")
+                + "." + format;
+    }
+
+    public MediaType mediaType() {
+        return format.equals("png") ? MediaType.IMAGE_PNG : MediaType.IMAGE_JPEG;
+    }
+
+    private static String defaultFormat(String contentType) {
+        if (contentType == null) return "jpeg";
+        return contentType.equals("image/png") || contentType.equals("image/gif") ? "png" : "jpeg";
+    }
+}
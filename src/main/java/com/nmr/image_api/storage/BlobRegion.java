@@ -0,0 +1,6 @@
+package com.nmr.image_api.storage;
+
+import java.nio.file.Path;
+
+/** {@code length} bytes of {@code file} starting at {@code offset}; what sendfile and range responses work on. */
+public record BlobRegion(Path file, long offset, long length) {}
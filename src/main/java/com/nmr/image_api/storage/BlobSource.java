@@ -0,0 +1,24 @@
+package com.nmr.image_api.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Bytes of one blob, read on demand (so callers that find a cached result never touch the original). */
+@FunctionalInterface
+public interface BlobSource {
+
+    /** @throws java.nio.file.NoSuchFileException when the blob is gone */
+    ByteBuffer read() throws IOException;
+
+    /** A whole file, memory-mapped on read. */
+    static BlobSource of(Path file) {
+        return () -> {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()); // stays valid after close
+            }
+        };
+    }
+}
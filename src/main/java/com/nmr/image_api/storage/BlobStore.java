@@ -0,0 +1,53 @@
+package com.nmr.image_api.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Where original image bytes live, addressed by the key stored in {@code image_asset.stored_filename}
+ * ({@code ab/cd/<sha256>} for content-addressed blobs). Selected with {@code storage.backend}; see
+ * {@link StorageConfig}. Implementations are thread-safe.
+ */
+public interface BlobStore {
+
+    /** Directory for staged uploads; on the store's file system so {@link #put} can take the file over cheaply. */
+    Path stagingDir();
+
+    /** Stores the staged file under {@code key}, replacing any existing blob; the staged file is consumed. */
+    void put(String key, Path staged) throws IOException;
+
+    boolean exists(String key);
+
+    /**
+     * Where the bytes are on disk; a whole file or a region of a larger one. {@link PackBlobStore} keeps regions
+     * readable for a grace period after the blob is moved or deleted, long enough to finish serving a response;
+     * {@link DirectoryBlobStore} deletes the file at once, so a response still being sent for it can fail.
+     *
+     * @throws NoSuchFileException when there is no such blob
+     */
+    BlobRegion locate(String key) throws IOException;
+
+    /**
+     * Read-only view of the whole blob, memory-mapped where the store allows it.
+     *
+     * @throws NoSuchFileException when there is no such blob
+     */
+    ByteBuffer read(String key) throws IOException;
+
+    /** Returns false when there was no such blob. */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Keys greater than {@code after} ("" for all), in ascending order, produced lazily so a caller can walk a
+     * large store in batches and resume from the last key it saw. The stream must be closed.
+     */
+    Stream<String> keys(String after) throws IOException;
+
+    /** Lazily read contents of one blob. */
+    default BlobSource source(String key) {
+        return () -> read(key);
+    }
+}
@@ -0,0 +1,130 @@
+package com.nmr.image_api.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * One file per blob, at {@code <root>/<key>} ({@code storage.backend=directory}, the default). Staged uploads
+ * ({@code *.tmp}) and a {@code packs} directory left by the pack backend are not blobs.
+ * <p>
+ * {@link #put} is write-ahead: the staged file is synced (per {@link Fsync}) before the atomic rename that makes
+ * it the blob, and the directories holding the new name after it, so a crash never leaves a torn file under a
+ * key, and a key that {@code put} returned survives one. Staged files a crash left behind are deleted on startup.
+ */
+public class DirectoryBlobStore implements BlobStore {
+    private static final Logger log = LoggerFactory.getLogger(DirectoryBlobStore.class);
+
+    private static final String PACKS_DIR = "packs";
+
+    private final Path root;
+    private final Fsync fsync;
+
+    public DirectoryBlobStore(Path root) throws IOException {
+        this(root, Fsync.none());
+    }
+
+    public DirectoryBlobStore(Path root, Fsync fsync) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.fsync = fsync;
+        Files.createDirectories(this.root);
+        Staging.sweep(this.root);
+        log.info("Storage at {} (fsync {})", this.root, fsync.mode());
+    }
+
+    @Override
+    public Path stagingDir() {
+        return root;
+    }
+
+    @Override
+    public void put(String key, Path staged) throws IOException {
+        Path target = resolve(key);
+        // the new entry's directory, and each directory created for it together with the one it was created in
+        List<Path> dirs = new ArrayList<>();
+        for (Path d = target.getParent(); ; d = d.getParent()) {
+            dirs.add(d);
+            if (d.equals(root) || Files.isDirectory(d)) break;
+        }
+        Files.createDirectories(target.getParent());
+        fsync.sync(staged);
+        Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        fsync.sync(dirs.toArray(Path[]::new));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public BlobRegion locate(String key) throws IOException {
+        Path p = resolve(key);
+        return new BlobRegion(p, 0, Files.size(p)); // NoSuchFileException when missing
+    }
+
+    @Override
+    public ByteBuffer read(String key) throws IOException {
+        Path p = resolve(key);
+        if (!Files.exists(p)) throw new NoSuchFileException(p.toString());
+        return BlobSource.of(p).read();
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(resolve(key));
+    }
+
+    /** Lists one directory at a time, sorted, descending only into directories that can hold keys after {@code after}. */
+    @Override
+    public Stream<String> keys(String after) throws IOException {
+        return children(root, "", after);
+    }
+
+    private record Child(Path path, String key, boolean dir) {
+        /** "ab/" sorts where the keys under it do, e.g. after "ab.png" */
+        String sortKey() { return dir ? key + "/" : key; }
+    }
+
+    private Stream<String> children(Path dir, String prefix, String after) throws IOException {
+        List<Child> children;
+        try (Stream<Path> s = Files.list(dir)) {
+            children = s.map(p -> {
+                        String name = p.getFileName().toString();
+                        return new Child(p, prefix + name, Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS));
+                    })
+                    .filter(c -> c.dir() ? !(prefix.isEmpty() && c.key().equals(PACKS_DIR)) : !c.key().endsWith(".tmp"))
+                    .sorted(Comparator.comparing(Child::sortKey))
+                    .toList();
+        }
+        return children.stream().flatMap(c -> {
+            if (!c.dir()) return c.key().compareTo(after) > 0 ? Stream.of(c.key()) : Stream.empty();
+            String sub = c.sortKey();
+            // every key under sub sorts before after
+            if (sub.compareTo(after) < 0 && !after.startsWith(sub)) return Stream.empty();
+            try {
+                return children(c.path(), sub, after);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Path resolve(String key) {
+        Path p = root.resolve(key).normalize();
+        if (!p.startsWith(root) || p.equals(root)) throw new IllegalArgumentException("invalid blob key: " + key);
+        return p;
+    }
+}
@@ -0,0 +1,186 @@
+package com.nmr.image_api.storage;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * When blob writes reach the disk ({@code storage.fsync.mode}), trading upload throughput against what a power
+ * loss can take:
+ * <ul>
+ *   <li>ALWAYS: every {@code sync} forces its files before returning.</li>
+ *   <li>GROUP: {@code sync} registers its files and waits for the next group commit, which runs every
+ *   {@code storage.fsync.group-interval} and forces each registered file (or pack) once, however many writes it
+ *   had. Uploads wait up to one interval longer but share fsyncs.</li>
+ *   <li>NONE: left to the OS. Fastest; a crash of the machine (not only the process) can lose or tear blobs whose
+ *   rows are already committed.</li>
+ * </ul>
+ * After {@link #close()}, GROUP forces inline like ALWAYS, for writers still storing during shutdown.
+ * Directories are synced too, for the entries of renamed blobs and new packs; on platforms that cannot open a
+ * directory for that (Windows) that part is skipped.
+ */
+public final class Fsync implements AutoCloseable {
+
+    public enum Mode { ALWAYS, GROUP, NONE }
+
+    @FunctionalInterface
+    private interface Target {
+        void force() throws IOException;
+    }
+
+    /** how much longer than one group interval a writer waits for its commit before giving up */
+    private static final Duration COMMIT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final Mode mode;
+    private final long waitNanos;
+    private final ScheduledExecutorService committer;
+    private final ReentrantLock lock = new ReentrantLock();
+    /** by Path or FileChannel, so a target registered several times is forced once per commit */
+    private Map<Object, Target> pending = new LinkedHashMap<>();
+    private CompletableFuture<Void> batch = new CompletableFuture<>();
+    /** set by {@link #close()}; nothing commits pending targets after that */
+    private boolean closed;
+    private final AtomicLong commits = new AtomicLong();
+
+    public Fsync(Mode mode, Duration groupInterval) {
+        this.mode = mode;
+        this.waitNanos = groupInterval.plus(COMMIT_TIMEOUT).toNanos();
+        if (mode == Mode.GROUP) {
+            committer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("fsync-group").daemon().factory());
+            long nanos = groupInterval.toNanos();
+            committer.scheduleWithFixedDelay(this::commit, nanos, nanos, TimeUnit.NANOSECONDS);
+        } else {
+            committer = null;
+        }
+    }
+
+    public static Fsync none() {
+        return new Fsync(Mode.NONE, Duration.ZERO);
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /** Makes the contents of these files and the entries of these directories durable, as the mode allows. */
+    public void sync(Path... paths) throws IOException {
+        if (mode == Mode.NONE || paths.length == 0) return;
+        Map<Object, Target> targets = new LinkedHashMap<>();
+        for (Path p : paths) targets.put(p, () -> force(p));
+        sync(targets);
+    }
+
+    /** Makes what was written to {@code ch} so far durable, as the mode allows. */
+    public void sync(FileChannel ch) throws IOException {
+        if (mode == Mode.NONE) return;
+        sync(Map.of(ch, () -> ch.force(false))); // fdatasync: includes a grown file size
+    }
+
+    private void sync(Map<Object, Target> targets) throws IOException {
+        CompletableFuture<Void> committed = null;
+        if (mode == Mode.GROUP) {
+            lock.lock();
+            try {
+                if (!closed) {
+                    targets.forEach(pending::putIfAbsent);
+                    committed = batch;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (committed == null) {
+            for (Target t : targets.values()) t.force();
+            return;
+        }
+        try {
+            committed.get(waitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted waiting for group fsync");
+        } catch (ExecutionException e) {
+            throw new IOException("group fsync failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("group fsync did not complete within " + Duration.ofNanos(waitNanos));
+        }
+    }
+
+    /** Forces everything registered since the previous commit and releases its waiters. */
+    void commit() {
+        Map<Object, Target> todo;
+        CompletableFuture<Void> done;
+        lock.lock();
+        try {
+            if (pending.isEmpty()) return;
+            todo = pending;
+            done = batch;
+            pending = new LinkedHashMap<>();
+            batch = new CompletableFuture<>();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            for (Target t : todo.values()) t.force();
+            commits.incrementAndGet();
+            done.complete(null);
+        } catch (IOException | RuntimeException e) {
+            done.completeExceptionally(e);
+        }
+    }
+
+    /** Group commits that forced something (GROUP only). */
+    long commits() {
+        return commits.get();
+    }
+
+    @Override
+    public void close() {
+        if (committer == null) return;
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        committer.shutdown();
+        try {
+            committer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        commit(); // whoever registered after the last run
+    }
+
+    /** fsync of one file or directory, regardless of mode. */
+    static void force(Path p) throws IOException {
+        if (Files.isDirectory(p)) {
+            FileChannel dir;
+            try {
+                dir = FileChannel.open(p, StandardOpenOption.READ);
+            } catch (IOException unsupported) {
+                return;
+            }
+            try (dir) {
+                dir.force(true);
+            }
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+    }
+}
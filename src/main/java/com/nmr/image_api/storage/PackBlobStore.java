@@ -0,0 +1,393 @@
+package com.nmr.image_api.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Blobs appended to a few large pack files ({@code storage.backend=pack}) instead of one file each, so millions
+ * of small images cost neither an inode nor an open/close per read.
+ * <p>
+ * Layout: {@code <root>/packs/pack-NNNNNNNN.dat}, each a sequence of records
+ * {@code [magic:int][type:byte][keyLength:short][dataLength:long][key][data]}. A PUT record holds a blob, a
+ * DELETE record (no data) is a tombstone; for a key, the last record across packs in file order wins. Only the
+ * newest pack is appended to; it is sealed once it reaches {@code storage.pack.max-size}.
+ * <p>
+ * The key -> (pack, offset, length) index lives in memory and is rebuilt by scanning the record headers on
+ * startup; an incomplete record at the end of the newest pack (a crash mid-write) is cut off. Reads map the
+ * blob's region of the pack read-only. {@link #compact()} rewrites sealed packs whose dead bytes (replaced or
+ * deleted blobs, tombstones) exceed {@code storage.pack.compact-threshold}: live blobs are copied to the newest
+ * pack and the old file is deleted after a grace period, so regions handed out just before stay readable.
+ * <p>
+ * A put returns once its record is synced as {@link Fsync} allows (under GROUP, appends of many uploads share one
+ * fsync of the pack). Deletes are not synced: a tombstone lost in a crash leaves an unreferenced blob, which the
+ * storage scrubber removes. Compaction always syncs the copies before retiring a pack, since it moves blobs that
+ * were already durable.
+ */
+public class PackBlobStore implements BlobStore, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(PackBlobStore.class);
+
+    static final int MAGIC = 0x424c4f42; // "BLOB"
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final int HEADER_BYTES = 4 + 1 + 2 + 8;
+    static final Duration RETIRE_GRACE = Duration.ofMinutes(1);
+    private static final Pattern PACK_NAME = Pattern.compile("pack-(\\d{8})\\.dat");
+
+    /** Index entry; {@code record} is where the record starts, {@code offset} where its data starts. */
+    private record Entry(int pack, long record, long offset, long length) {
+        long recordBytes() { return offset + length - record; }
+    }
+
+    private static final class Pack {
+        final int id;
+        final Path path;
+        final FileChannel ch;
+        volatile long size;
+        final AtomicLong dead = new AtomicLong();
+
+        Pack(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+    }
+
+    private record Retired(Pack pack, Instant at) {}
+
+    /** One parsed record header, as seen while scanning a pack. */
+    private record Rec(byte type, String key, long record, long offset, long length) {}
+
+    private final Path root;
+    private final Path dir;
+    private final long maxPackSize;
+    private final double compactThreshold;
+    private final Fsync fsync;
+
+    private final ConcurrentNavigableMap<String, Entry> index = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Integer, Pack> packs = new ConcurrentSkipListMap<>();
+    private final Queue<Retired> retired = new ConcurrentLinkedQueue<>();
+    /** serializes appends (and index updates that must agree with them) */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Pack active;
+
+    public PackBlobStore(Path root, long maxPackSize, double compactThreshold) throws IOException {
+        this(root, maxPackSize, compactThreshold, Fsync.none());
+    }
+
+    public PackBlobStore(Path root, long maxPackSize, double compactThreshold, Fsync fsync) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.dir = Files.createDirectories(this.root.resolve("packs"));
+        this.maxPackSize = maxPackSize;
+        this.compactThreshold = compactThreshold;
+        this.fsync = fsync;
+        Staging.sweep(this.root);
+        load();
+        log.info("Pack storage at {} ({} packs, {} blobs, fsync {})", dir, packs.size(), index.size(), fsync.mode());
+    }
+
+    @Override
+    public Path stagingDir() {
+        return root;
+    }
+
+    @Override
+    public void put(String key, Path staged) throws IOException {
+        byte[] k = keyBytes(key);
+        Pack p;
+        try (FileChannel src = FileChannel.open(staged, StandardOpenOption.READ)) {
+            long length = src.size();
+            writeLock.lock();
+            try {
+                p = appendTarget(HEADER_BYTES + k.length + length);
+                long record = p.size;
+                long offset = record + writeHeader(p, record, PUT, k, length);
+                for (long done = 0; done < length; ) {
+                    long n = p.ch.transferFrom(src, offset + done, length - done);
+                    if (n <= 0) throw new IOException("short copy from " + staged);
+                    done += n;
+                }
+                p.size = offset + length;
+                replaced(index.put(key, new Entry(p.id, record, offset, length)));
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        fsync.sync(p.ch); // outside the lock, so other appends can join the same group commit
+        Files.deleteIfExists(staged);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public BlobRegion locate(String key) throws IOException {
+        Entry e = index.get(key);
+        Pack p = e == null ? null : packOf(e);
+        if (p == null) throw new NoSuchFileException(key);
+        return new BlobRegion(p.path, e.offset(), e.length());
+    }
+
+    @Override
+    public ByteBuffer read(String key) throws IOException {
+        Entry e = index.get(key);
+        Pack p = e == null ? null : packOf(e);
+        if (p == null) throw new NoSuchFileException(key);
+        return p.ch.map(FileChannel.MapMode.READ_ONLY, e.offset(), e.length());
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        byte[] k = keyBytes(key);
+        writeLock.lock();
+        try {
+            Entry prev = index.remove(key);
+            if (prev == null) return false;
+            appendTombstone(k);
+            replaced(prev);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Stream<String> keys(String after) {
+        return index.tailMap(after, false).keySet().stream();
+    }
+
+    /**
+     * Rewrites sealed packs that are mostly dead and deletes packs retired by earlier runs once their grace period
+     * is over. Returns the number of packs rewritten.
+     */
+    @Scheduled(initialDelayString = "${storage.pack.compact-interval:10m}",
+               fixedDelayString = "${storage.pack.compact-interval:10m}")
+    public int compact() {
+        dropRetired(Instant.now().minus(RETIRE_GRACE));
+        int rewritten = 0;
+        for (Pack p : new ArrayList<>(packs.values())) {
+            if (p == active || p.size == 0 || (double) p.dead.get() / p.size < compactThreshold) continue;
+            try {
+                rewrite(p);
+                rewritten++;
+            } catch (IOException e) {
+                log.warn("Compacting {} failed: {}", p.path.getFileName(), e.toString());
+            }
+        }
+        return rewritten;
+    }
+
+    /** Total bytes in live packs, and the part of it that compaction could reclaim. */
+    public long[] usage() {
+        long size = 0, dead = 0;
+        for (Pack p : packs.values()) {
+            size += p.size;
+            dead += p.dead.get();
+        }
+        return new long[]{size, dead};
+    }
+
+    @Override
+    public void close() throws IOException {
+        dropRetired(Instant.MAX);
+        for (Pack p : packs.values()) p.ch.close();
+    }
+
+    private void rewrite(Pack p) throws IOException {
+        boolean olderPacks = packs.firstKey() < p.id;
+        Set<Pack> written = new LinkedHashSet<>();
+        for (Rec r : scan(p)) {
+            writeLock.lock();
+            try {
+                if (r.type() == PUT) {
+                    Entry cur = index.get(r.key());
+                    if (cur == null || cur.pack() != p.id || cur.record() != r.record()) continue; // dead
+                    byte[] k = keyBytes(r.key());
+                    Pack target = appendTarget(HEADER_BYTES + k.length + r.length());
+                    long record = target.size;
+                    long offset = record + writeHeader(target, record, PUT, k, r.length());
+                    for (long done = 0; done < r.length(); ) {
+                        long n = p.ch.transferTo(r.offset() + done, r.length() - done, target.ch.position(offset + done));
+                        if (n <= 0) throw new IOException("short copy from " + p.path);
+                        done += n;
+                    }
+                    target.size = offset + r.length();
+                    index.put(r.key(), new Entry(target.id, record, offset, r.length()));
+                    written.add(target);
+                } else if (olderPacks && !index.containsKey(r.key())) {
+                    // may still shadow a PUT in an older pack; dropping it would resurrect that blob on restart
+                    appendTombstone(keyBytes(r.key()));
+                    written.add(active);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        for (Pack w : written) w.ch.force(false);
+        Fsync.force(dir);
+        packs.remove(p.id);
+        retired.add(new Retired(p, Instant.now()));
+        log.info("Compacted {} ({} of {} bytes were dead)", p.path.getFileName(), p.dead.get(), p.size);
+    }
+
+    private void dropRetired(Instant before) {
+        for (Retired r; (r = retired.peek()) != null && r.at().isBefore(before); ) {
+            retired.poll();
+            try {
+                r.pack().ch.close();
+                Files.deleteIfExists(r.pack().path);
+            } catch (IOException e) {
+                log.warn("Cannot delete retired {}: {}", r.pack().path, e.toString());
+            }
+        }
+    }
+
+    /** The pack to append {@code recordBytes} to; seals the current one when it would overflow. Under writeLock. */
+    private Pack appendTarget(long recordBytes) throws IOException {
+        if (active.size > 0 && active.size + recordBytes > maxPackSize) active = newPack(active.id + 1);
+        return active;
+    }
+
+    private Pack newPack(int id) throws IOException {
+        Pack p = new Pack(id, dir.resolve(packName(id)));
+        packs.put(id, p);
+        fsync.sync(dir);
+        return p;
+    }
+
+    private void appendTombstone(byte[] k) throws IOException {
+        Pack p = appendTarget(HEADER_BYTES + k.length);
+        long record = p.size;
+        p.size = record + writeHeader(p, record, DELETE, k, 0);
+        p.dead.addAndGet(HEADER_BYTES + k.length); // reclaimable once what it shadows is gone
+    }
+
+    /** Writes header + key at {@code pos}; returns their length. */
+    private static int writeHeader(Pack p, long pos, byte type, byte[] k, long length) throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES + k.length)
+                .putInt(MAGIC).put(type).putShort((short) k.length).putLong(length).put(k).flip();
+        while (h.hasRemaining()) pos += p.ch.write(h, pos);
+        return HEADER_BYTES + k.length;
+    }
+
+    private void replaced(Entry prev) {
+        if (prev == null) return;
+        Pack p = packs.get(prev.pack());
+        if (p != null) p.dead.addAndGet(prev.recordBytes());
+    }
+
+    /** The pack holding {@code e}, also while it is retired. */
+    private Pack packOf(Entry e) {
+        Pack p = packs.get(e.pack());
+        if (p != null) return p;
+        for (Retired r : retired) if (r.pack().id == e.pack()) return r.pack();
+        return null;
+    }
+
+    private void load() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "pack-*.dat")) {
+            for (Path f : ds) {
+                Matcher m = PACK_NAME.matcher(f.getFileName().toString());
+                if (m.matches()) ids.add(Integer.parseInt(m.group(1)));
+            }
+        }
+        ids.sort(Comparator.naturalOrder());
+        for (int i = 0; i < ids.size(); i++) {
+            Pack p = new Pack(ids.get(i), dir.resolve(packName(ids.get(i))));
+            packs.put(p.id, p);
+            for (Rec r : scan(p)) {
+                if (r.type() == PUT) {
+                    replaced(index.put(r.key(), new Entry(p.id, r.record(), r.offset(), r.length())));
+                } else {
+                    replaced(index.remove(r.key()));
+                    p.dead.addAndGet(r.offset() - r.record());
+                }
+            }
+            long actual = p.ch.size();
+            if (p.size < actual) {
+                if (i == ids.size() - 1) {
+                    log.warn("Dropping {} bytes of incomplete record at the end of {}", actual - p.size, p.path);
+                    p.ch.truncate(p.size);
+                } else {
+                    log.error("Unreadable record in {} at offset {}; later records of this pack are ignored",
+                            p.path, p.size);
+                }
+            }
+        }
+        active = packs.isEmpty() ? null : packs.lastEntry().getValue();
+        if (active == null || active.size >= maxPackSize) active = newPack(active == null ? 1 : active.id + 1);
+    }
+
+    /** Parses record headers from the start of {@code p}; sets {@code p.size} to the end of the last whole record. */
+    private static List<Rec> scan(Pack p) throws IOException {
+        List<Rec> recs = new ArrayList<>();
+        long end = p.ch.size();
+        long pos = 0;
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES);
+        while (pos + HEADER_BYTES <= end) {
+            h.clear();
+            readFully(p.ch, h, pos);
+            h.flip();
+            int magic = h.getInt();
+            byte type = h.get();
+            int keyLength = Short.toUnsignedInt(h.getShort());
+            long length = h.getLong();
+            if (magic != MAGIC || (type != PUT && type != DELETE) || length < 0
+                    || pos + HEADER_BYTES + keyLength + length > end) break;
+            ByteBuffer k = ByteBuffer.allocate(keyLength);
+            readFully(p.ch, k, pos + HEADER_BYTES);
+            long offset = pos + HEADER_BYTES + keyLength;
+            recs.add(new Rec(type, new String(k.array(), StandardCharsets.UTF_8), pos, offset, length));
+            pos = offset + length;
+        }
+        p.size = pos;
+        return recs;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if (n < 0) throw new IOException("unexpected end of pack");
+            pos += n;
+        }
+    }
+
+    private static byte[] keyBytes(String key) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        if (k.length == 0 || k.length > 0xffff) throw new IllegalArgumentException("invalid blob key: " + key);
+        return k;
+    }
+
+    static String packName(int id) {
+        return String.format("pack-%08d.dat", id);
+    }
+}
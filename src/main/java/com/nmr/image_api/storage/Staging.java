@@ -0,0 +1,40 @@
+package com.nmr.image_api.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+/** Staged uploads ({@code *.tmp} directly in {@link BlobStore#stagingDir()}) left behind by a crash. */
+final class Staging {
+    private static final Logger log = LoggerFactory.getLogger(Staging.class);
+
+    /**
+     * Older than any upload still being received; younger files may belong to another instance sharing the
+     * storage directory.
+     */
+    static final Duration STALE_AFTER = Duration.ofHours(1);
+
+    private Staging() {}
+
+    /** Deletes staged files last written more than {@link #STALE_AFTER} ago; returns how many. */
+    static int sweep(Path dir) throws IOException {
+        FileTime before = FileTime.from(Instant.now().minus(STALE_AFTER));
+        int deleted = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.tmp")) {
+            for (Path f : ds) {
+                if (Files.isRegularFile(f) && Files.getLastModifiedTime(f).compareTo(before) < 0 && Files.deleteIfExists(f)) {
+                    deleted++;
+                }
+            }
+        }
+        if (deleted > 0) log.warn("Deleted {} staged uploads left over in {}", deleted, dir);
+        return deleted;
+    }
+}
@@ -0,0 +1,40 @@
+package com.nmr.image_api.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * {@code storage.backend=directory} (default): one file per blob under {@code storage.dir}.
+ * {@code storage.backend=pack}: append-only pack files under {@code storage.dir/packs}, see {@link PackBlobStore}.
+ * Switching backends does not migrate existing blobs. {@code storage.fsync.mode} (always, group, none) sets when
+ * writes reach the disk, see {@link Fsync}.
+ */
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    public Fsync fsync(@Value("${storage.fsync.mode:always}") String mode,
+                       @Value("${storage.fsync.group-interval:5ms}") Duration groupInterval) {
+        return new Fsync(Fsync.Mode.valueOf(mode.toUpperCase(Locale.ROOT)), groupInterval);
+    }
+
+    @Bean
+    public BlobStore blobStore(@Value("${storage.backend:directory}") String backend,
+                               @Value("${storage.dir:./storage}") String dir,
+                               @Value("${storage.pack.max-size:1GB}") DataSize maxPackSize,
+                               @Value("${storage.pack.compact-threshold:0.5}") double compactThreshold,
+                               Fsync fsync) throws IOException {
+        return switch (backend) {
+            case "directory" -> new DirectoryBlobStore(Paths.get(dir), fsync);
+            case "pack" -> new PackBlobStore(Paths.get(dir), maxPackSize.toBytes(), compactThreshold, fsync);
+            default -> throw new IllegalArgumentException("storage.backend must be directory or pack, not " + backend);
+        };
+    }
+}
@@ -0,0 +1,112 @@
+package com.nmr.image_api.util;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Stream views over a (typically memory-mapped) buffer, so decoders and parsers read blob bytes in place instead
+ * of through a file handle or a copy. The views use absolute reads; the caller's buffer position is not moved.
+ */
+public final class ByteBufferStreams {
+    private ByteBufferStreams() {}
+
+    public static InputStream inputStream(ByteBuffer data) {
+        return new BufferInputStream(data.slice());
+    }
+
+    /** Seekable view for ImageIO readers (which otherwise cache a plain InputStream in memory or a temp file). */
+    public static ImageInputStream imageInputStream(ByteBuffer data) {
+        return new BufferImageInputStream(data.slice());
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+        private int pos;
+        private int mark;
+
+        BufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return pos < buf.limit() ? buf.get(pos++) & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) return 0;
+            int n = Math.min(len, buf.limit() - pos);
+            if (n <= 0) return -1;
+            buf.get(pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buf.limit() - pos));
+            pos += k;
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return buf.limit() - pos;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readLimit) {
+            mark = pos;
+        }
+
+        @Override
+        public void reset() {
+            pos = mark;
+        }
+    }
+
+    private static final class BufferImageInputStream extends ImageInputStreamImpl {
+        private final ByteBuffer buf;
+
+        BufferImageInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (streamPos >= buf.limit()) return -1;
+            return buf.get((int) streamPos++) & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            Objects.checkFromIndexSize(off, len, b.length);
+            bitOffset = 0;
+            if (len == 0) return 0;
+            int n = (int) Math.min(len, buf.limit() - streamPos);
+            if (n <= 0) return -1;
+            buf.get((int) streamPos, b, off, n);
+            streamPos += n;
+            return n;
+        }
+
+        @Override
+        public long length() {
+            return buf.limit();
+        }
+    }
+}
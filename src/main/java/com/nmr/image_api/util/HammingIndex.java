@@ -0,0 +1,236 @@
+package com.nmr.image_api.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory (id, 64-bit hash) pairs searchable by Hamming distance, using multi-index hashing: the hash is cut
+ * into four 16-bit chunks, and two hashes at most {@code d} apart agree within {@code d / 4} bits on at least one
+ * chunk. A query therefore only scans, per chunk, the buckets of chunk values within {@code d / 4} bits of its own
+ * (1, 17, 137, ... buckets) and checks the full distance there.
+ * <p>
+ * Everything is in primitive arrays: per chunk, the hashes in bucket order (counting-sorted) with bucket offsets
+ * and the entry each slot belongs to. Such a table is rebuilt, not updated; {@link #add} appends to a small delta
+ * that queries scan linearly and that is merged into a new table once it grows past an eighth of the table.
+ * Writers are serialized, queries take no lock.
+ */
+public final class HammingIndex {
+
+    public record Match(long id, long hash, int distance) {}
+
+    public static final int MAX_DISTANCE = 16;
+
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = 16;
+    private static final int BUCKETS = 1 << CHUNK_BITS;
+    private static final int MIN_DELTA = 1024;
+
+    /** 16-bit masks with at most MAX_DISTANCE / CHUNKS bits set, by popcount; the first MASKS_UPTO[r] have <= r */
+    private static final int[] MASKS;
+    private static final int[] MASKS_UPTO = new int[MAX_DISTANCE / CHUNKS + 1];
+
+    static {
+        List<Integer> masks = new ArrayList<>();
+        for (int r = 0; r < MASKS_UPTO.length; r++) {
+            for (int m = 0; m < BUCKETS; m++) if (Integer.bitCount(m) == r) masks.add(m);
+            MASKS_UPTO[r] = masks.size();
+        }
+        MASKS = masks.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Immutable but for removals, which overwrite an id with -1. */
+    private static final class Table {
+        static final Table EMPTY = build(new long[0], new long[0], 0);
+
+        final long[] ids;
+        final int size;
+        final int[][] start = new int[CHUNKS][];     // bucket -> first slot; start[c][BUCKETS] = size
+        final long[][] slotHash = new long[CHUNKS][];
+        final int[][] slotEntry = new int[CHUNKS][];
+
+        private Table(long[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        static Table build(long[] ids, long[] hashes, int size) {
+            Table t = new Table(ids, size);
+            for (int c = 0; c < CHUNKS; c++) {
+                int[] start = new int[BUCKETS + 1];
+                for (int i = 0; i < size; i++) start[chunk(hashes[i], c) + 1]++;
+                for (int b = 0; b < BUCKETS; b++) start[b + 1] += start[b];
+                int[] next = Arrays.copyOf(start, BUCKETS);
+                long[] slotHash = new long[size];
+                int[] slotEntry = new int[size];
+                for (int i = 0; i < size; i++) {
+                    int s = next[chunk(hashes[i], c)]++;
+                    slotHash[s] = hashes[i];
+                    slotEntry[s] = i;
+                }
+                t.start[c] = start;
+                t.slotHash[c] = slotHash;
+                t.slotEntry[c] = slotEntry;
+            }
+            return t;
+        }
+    }
+
+    /** Appended to in place; a query only reads the first {@code size} of the arrays it got with the record. */
+    private record Delta(long[] ids, long[] hashes, int size) {
+        static Delta empty() {
+            return new Delta(new long[64], new long[64], 0);
+        }
+    }
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Table table = Table.EMPTY;
+    private volatile Delta delta = Delta.empty();
+    /** removed entries still in table or delta; counted towards the next merge */
+    private int dead;
+
+    /** Entries, including removed ones not yet merged away. */
+    public int size() {
+        return table.size + delta.size();
+    }
+
+    public void add(long id, long hash) {
+        writeLock.lock();
+        try {
+            Delta d = delta;
+            long[] ids = d.ids(), hashes = d.hashes();
+            if (d.size() == ids.length) {
+                ids = Arrays.copyOf(ids, ids.length * 2);
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            ids[d.size()] = id;
+            hashes[d.size()] = hash;
+            delta = new Delta(ids, hashes, d.size() + 1);
+            if (delta.size() + dead > Math.max(MIN_DELTA, table.size / 8)) merge(new long[0], new long[0], 0);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Adds many entries with one rebuild, e.g. the whole catalogue on startup. */
+    public void addAll(long[] ids, long[] hashes, int n) {
+        writeLock.lock();
+        try {
+            merge(ids, hashes, n);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Removes every entry of {@code id} with {@code hash}; returns how many. */
+    public int remove(long id, long hash) {
+        writeLock.lock();
+        try {
+            int removed = 0;
+            Table t = table;
+            int c0 = chunk(hash, 0);
+            for (int s = t.start[0][c0]; s < t.start[0][c0 + 1]; s++) {
+                int e = t.slotEntry[0][s];
+                if (t.slotHash[0][s] == hash && t.ids[e] == id) {
+                    t.ids[e] = -1; // a racing query may still report it; callers look rows up anyway
+                    removed++;
+                }
+            }
+            Delta d = delta;
+            for (int i = 0; i < d.size(); i++) {
+                if (d.ids()[i] == id && d.hashes()[i] == hash) {
+                    d.ids()[i] = -1;
+                    removed++;
+                }
+            }
+            dead += removed;
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Entries within {@code maxDistance} (at most {@link #MAX_DISTANCE}) of {@code hash}, nearest first (ties by
+     * id), at most {@code limit}, without {@code excludeId}. An id indexed more than once is reported once.
+     */
+    public List<Match> query(long hash, int maxDistance, int limit, long excludeId) {
+        if (maxDistance < 0 || maxDistance > MAX_DISTANCE) {
+            throw new IllegalArgumentException("maxDistance must be 0.." + MAX_DISTANCE);
+        }
+        Delta d = delta; // before the table: a merge in between then shows entries twice rather than not at all
+        Table t = table;
+        int r = maxDistance / CHUNKS;
+        List<Match> out = new ArrayList<>();
+        for (int c = 0; c < CHUNKS; c++) {
+            int q = chunk(hash, c);
+            int[] start = t.start[c];
+            long[] slotHash = t.slotHash[c];
+            int[] slotEntry = t.slotEntry[c];
+            for (int m = 0; m < MASKS_UPTO[r]; m++) {
+                int b = q ^ MASKS[m];
+                for (int s = start[b], end = start[b + 1]; s < end; s++) {
+                    long x = slotHash[s] ^ hash;
+                    int dist = Long.bitCount(x);
+                    // an entry close enough in an earlier chunk was reported there
+                    if (dist > maxDistance || closeInEarlierChunk(x, c, r)) continue;
+                    long id = t.ids[slotEntry[s]];
+                    if (id >= 0 && id != excludeId) out.add(new Match(id, slotHash[s], dist));
+                }
+            }
+        }
+        long[] ids = d.ids(), hashes = d.hashes();
+        for (int i = 0; i < d.size(); i++) {
+            int dist = Long.bitCount(hashes[i] ^ hash);
+            if (dist <= maxDistance && ids[i] >= 0 && ids[i] != excludeId) out.add(new Match(ids[i], hashes[i], dist));
+        }
+        out.sort(Comparator.comparingInt(Match::distance).thenComparingLong(Match::id));
+        Set<Long> seen = new HashSet<>();
+        List<Match> top = new ArrayList<>(Math.min(limit, out.size()));
+        for (Match match : out) {
+            if (top.size() == limit) break;
+            if (seen.add(match.id())) top.add(match);
+        }
+        return top;
+    }
+
+    /** Rebuilds the table from its live entries, the delta's and {@code n} more. Under writeLock. */
+    private void merge(long[] moreIds, long[] moreHashes, int n) {
+        Table t = table;
+        Delta d = delta;
+        int capacity = t.size + d.size() + n;
+        long[] ids = new long[capacity], hashes = new long[capacity];
+        int size = 0;
+        // table hashes by entry: chunk 0 holds every entry once
+        for (int s = 0; s < t.size; s++) {
+            int e = t.slotEntry[0][s];
+            if (t.ids[e] < 0) continue;
+            ids[size] = t.ids[e];
+            hashes[size++] = t.slotHash[0][s];
+        }
+        for (int i = 0; i < d.size(); i++) {
+            if (d.ids()[i] < 0) continue;
+            ids[size] = d.ids()[i];
+            hashes[size++] = d.hashes()[i];
+        }
+        System.arraycopy(moreIds, 0, ids, size, n);
+        System.arraycopy(moreHashes, 0, hashes, size, n);
+        size += n;
+        table = Table.build(ids, hashes, size);
+        delta = Delta.empty();
+        dead = 0;
+    }
+
+    private static boolean closeInEarlierChunk(long x, int c, int r) {
+        for (int e = 0; e < c; e++) if (Integer.bitCount(chunk(x, e)) <= r) return true;
+        return false;
+    }
+
+    private static int chunk(long hash, int c) {
+        return (int) (hash >>> (c * CHUNK_BITS)) & (BUCKETS - 1);
+    }
+}
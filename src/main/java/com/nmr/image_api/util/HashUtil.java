@@ -1,16 +1,91 @@
 package com.nmr.image_api.util;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
+/**
+ * SHA-256 helpers; results are lower-case hex. Each call clones its own digest from a prototype (not cached per
+ * thread: request threads are virtual, one per request, so a per-thread cache would only allocate and retain).
+ * Files are hashed through read-only memory maps, so recomputing a stored blob's checksum does not copy it
+ * onto the heap.
+ */
 public final class HashUtil {
     private HashUtil() {}
+
+    private static final HexFormat HEX = HexFormat.of();
+    /** mapped window when hashing files; bounded so huge files don't need one giant mapping */
+    static final long MAP_CHUNK = 64L << 20;
+    private static final int STREAM_BUFFER = 64 << 10;
+
+    private static final MessageDigest PROTOTYPE = create();
+
     public static String sha256(byte[] data) {
+        MessageDigest md = newSha256();
+        return hex(md.digest(data));
+    }
+
+    /** Hashes the remaining bytes of {@code data} (heap or direct); its position ends at the limit. */
+    public static String sha256(ByteBuffer data) {
+        MessageDigest md = newSha256();
+        md.update(data);
+        return hex(md.digest());
+    }
+
+    /** Hashes {@code in} to EOF; the stream is not closed. */
+    public static String sha256(InputStream in) throws IOException {
+        MessageDigest md = newSha256();
+        byte[] buf = new byte[STREAM_BUFFER];
+        for (int n; (n = in.read(buf)) > 0; ) md.update(buf, 0, n);
+        return hex(md.digest());
+    }
+
+    /** Hashes the whole file through memory-mapped windows of {@link #MAP_CHUNK} bytes. */
+    public static String sha256(Path file) {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return sha256(ch);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot hash " + file, e);
+        }
+    }
+
+    /** Hashes {@code ch} from position 0 to its current size through read-only mappings. */
+    public static String sha256(FileChannel ch) throws IOException {
+        MessageDigest md = newSha256();
+        long size = ch.size();
+        for (long pos = 0; pos < size; pos += MAP_CHUNK) {
+            MappedByteBuffer window = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_CHUNK, size - pos));
+            md.update(window);
+        }
+        return hex(md.digest());
+    }
+
+    /** Fresh SHA-256 digest for incremental (streaming) hashing; owned by the caller. */
+    public static MessageDigest newSha256() {
+        try {
+            return (MessageDigest) PROTOTYPE.clone();
+        } catch (CloneNotSupportedException e) {
+            return create();
+        }
+    }
+
+    public static String hex(byte[] dig) {
+        return HEX.formatHex(dig);
+    }
+
+    private static MessageDigest create() {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] dig = md.digest(data);
-            StringBuilder sb = new StringBuilder(dig.length*2);
-            for (byte b : dig) sb.append(String.format("%02x", b));
-            return sb.toString();
-        } catch (Exception e) { throw new RuntimeException(e); }
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
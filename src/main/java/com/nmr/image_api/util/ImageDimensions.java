@@ -0,0 +1,187 @@
+package com.nmr.image_api.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Reads image width/height without decoding pixels.
+ * Order: hand-parsed headers (PNG IHDR, JPEG SOFn, GIF, BMP, WebP) → ImageReader.getWidth(0) → full decode.
+ */
+public final class ImageDimensions {
+    private ImageDimensions() {}
+
+    public record Size(int width, int height) {}
+
+    private static final int SIGNATURE_BYTES = 32;
+
+    /** Best-effort probe; returns null when the file is not a readable image. */
+    public static Size probe(Path p) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(p))) {
+            Size s = fromHeader(in);
+            if (s != null) return s;
+        } catch (IOException ignored) {}
+        Size s = fromReader(p);
+        return s != null ? s : fromDecode(p);
+    }
+
+    /** Like {@link #probe(Path)}, for bytes already in memory (e.g. a memory-mapped blob). */
+    public static Size probe(ByteBuffer data) {
+        try {
+            Size s = fromHeader(ByteBufferStreams.inputStream(data));
+            if (s != null) return s;
+        } catch (IOException ignored) {}
+        Size s = fromReader(ByteBufferStreams.imageInputStream(data));
+        return s != null ? s : fromDecode(ByteBufferStreams.imageInputStream(data));
+    }
+
+    /** Parses the container header only. Returns null for unknown formats or truncated headers. */
+    public static Size fromHeader(InputStream raw) throws IOException {
+        InputStream in = raw.markSupported() ? raw : new BufferedInputStream(raw);
+        in.mark(SIGNATURE_BYTES);
+        byte[] b = in.readNBytes(SIGNATURE_BYTES);
+        in.reset();
+        if (b.length < 4) return null;
+
+        if (b.length >= 24 && (b[0] & 0xff) == 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G'
+                && b[12] == 'I' && b[13] == 'H' && b[14] == 'D' && b[15] == 'R') {
+            return size(be32(b, 16), be32(b, 20));
+        }
+        if ((b[0] & 0xff) == 0xFF && (b[1] & 0xff) == 0xD8) {
+            return jpeg(new DataInputStream(in));
+        }
+        if (b.length >= 10 && b[0] == 'G' && b[1] == 'I' && b[2] == 'F' && b[3] == '8') {
+            return size(le16(b, 6), le16(b, 8));
+        }
+        if (b.length >= 26 && b[0] == 'B' && b[1] == 'M') {
+            int dib = le32(b, 14);
+            if (dib == 12) return size(le16(b, 18), le16(b, 20));
+            return size(le32(b, 18), Math.abs(le32(b, 22)));
+        }
+        if (b.length >= 30 && b[0] == 'R' && b[1] == 'I' && b[2] == 'F' && b[3] == 'F'
+                && b[8] == 'W' && b[9] == 'E' && b[10] == 'B' && b[11] == 'P') {
+            return webp(b);
+        }
+        return null;
+    }
+
+    /** Lets the registered ImageReader parse its header; pixels are not read. */
+    public static Size fromReader(Path p) {
+        try {
+            return fromReader(ImageIO.createImageInputStream(p.toFile()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Size fromReader(ImageInputStream input) {
+        try (ImageInputStream iis = input) {
+            if (iis == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) return null;
+            ImageReader r = readers.next();
+            try {
+                r.setInput(iis, true, true);
+                return size(r.getWidth(0), r.getHeight(0));
+            } finally {
+                r.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Last resort: full raster decode. */
+    public static Size fromDecode(Path p) {
+        try {
+            BufferedImage img = ImageIO.read(p.toFile());
+            return img == null ? null : size(img.getWidth(), img.getHeight());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Size fromDecode(ImageInputStream iis) {
+        try {
+            BufferedImage img = ImageIO.read(iis); // closes iis
+            return img == null ? null : size(img.getWidth(), img.getHeight());
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Size jpeg(DataInputStream in) throws IOException {
+        try {
+            in.skipNBytes(2); // SOI
+            while (true) {
+                int b = in.readUnsignedByte();
+                if (b != 0xFF) return null;
+                int marker = in.readUnsignedByte();
+                while (marker == 0xFF) marker = in.readUnsignedByte(); // fill bytes
+                if (marker == 0xD9 || marker == 0xDA) return null;     // EOI / SOS before any SOFn
+                if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) continue; // no length
+                int len = in.readUnsignedShort();
+                if (len < 2) return null;
+                boolean sof = marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+                if (sof) {
+                    in.readUnsignedByte(); // precision
+                    int h = in.readUnsignedShort();
+                    int w = in.readUnsignedShort();
+                    return size(w, h);
+                }
+                in.skipNBytes(len - 2);
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static Size webp(byte[] b) {
+        if (b[12] == 'V' && b[13] == 'P' && b[14] == '8') {
+            switch (b[15]) {
+                case ' ': // lossy: frame tag (3) + start code (3), then 14-bit dimensions
+                    return size(le16(b, 26) & 0x3FFF, le16(b, 28) & 0x3FFF);
+                case 'L': { // lossless: 0x2f signature, then 14-bit width-1 / height-1
+                    if ((b[20] & 0xff) != 0x2F) return null;
+                    int bits = le32(b, 21);
+                    return size((bits & 0x3FFF) + 1, ((bits >>> 14) & 0x3FFF) + 1);
+                }
+                case 'X': // extended: 24-bit canvas width-1 / height-1
+                    return size(le24(b, 24) + 1, le24(b, 27) + 1);
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    private static Size size(int w, int h) {
+        return w > 0 && h > 0 ? new Size(w, h) : null;
+    }
+
+    private static int be32(byte[] b, int o) {
+        return ((b[o] & 0xff) << 24) | ((b[o + 1] & 0xff) << 16) | ((b[o + 2] & 0xff) << 8) | (b[o + 3] & 0xff);
+    }
+
+    private static int le16(byte[] b, int o) {
+        return (b[o] & 0xff) | ((b[o + 1] & 0xff) << 8);
+    }
+
+    private static int le24(byte[] b, int o) {
+        return le16(b, o) | ((b[o + 2] & 0xff) << 16);
+    }
+
+    private static int le32(byte[] b, int o) {
+        return le24(b, o) | ((b[o + 3] & 0xff) << 24);
+    }
+}
@@ -0,0 +1,84 @@
+package com.nmr.image_api.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * 64-bit difference hash (dHash): the image is averaged down to 9x8 grey cells and each bit says whether a cell is
+ * brighter than its right neighbour. Re-encoding, resizing and small colour changes move few bits, so
+ * near-duplicates are a small Hamming distance apart ({@link #distance}); unrelated images are about 32 apart.
+ */
+public final class PerceptualHash {
+    private PerceptualHash() {}
+
+    private static final int COLS = 9, ROWS = 8;
+    /** source pixels per cell to keep when decoding subsampled; averaging more adds nothing */
+    private static final int PIXELS_PER_CELL = 8;
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    public static String hex(long hash) {
+        return String.format("%016x", hash);
+    }
+
+    /** Decodes {@code data} (subsampled) and hashes it; null when it is not a decodable image. */
+    public static Long dHash(ByteBuffer data) {
+        try (ImageInputStream iis = ByteBufferStreams.imageInputStream(data.duplicate())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) return null;
+            ImageReader r = readers.next();
+            try {
+                r.setInput(iis, true, true);
+                int sub = Math.min(r.getWidth(0) / (COLS * PIXELS_PER_CELL), r.getHeight(0) / (ROWS * PIXELS_PER_CELL));
+                ImageReadParam param = r.getDefaultReadParam();
+                if (sub > 1) param.setSourceSubsampling(sub, sub, 0, 0);
+                return dHash(r.read(0, param));
+            } finally {
+                r.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public static long dHash(BufferedImage img) {
+        int w = img.getWidth(), h = img.getHeight();
+        long[] sum = new long[COLS * ROWS];
+        int[] count = new int[COLS * ROWS];
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            int cy = y * ROWS / h;
+            for (int x = 0; x < w; x++) {
+                int cell = cy * COLS + x * COLS / w;
+                sum[cell] += grey(row[x]);
+                count[cell]++;
+            }
+        }
+        double[] cells = new double[COLS * ROWS];
+        for (int i = 0; i < cells.length; i++) cells[i] = count[i] == 0 ? 0 : (double) sum[i] / count[i];
+        long hash = 0;
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLS - 1; x++) {
+                hash <<= 1;
+                if (cells[y * COLS + x] > cells[y * COLS + x + 1]) hash |= 1;
+            }
+        }
+        return hash;
+    }
+
+    /** Rec. 601 luma, composited over white, in 0..255 */
+    private static int grey(int argb) {
+        int a = argb >>> 24, r = (argb >> 16) & 0xff, g = (argb >> 8) & 0xff, b = argb & 0xff;
+        int y = (299 * r + 587 * g + 114 * b) / 1000;
+        return (y * a + 255 * (255 - a)) / 255;
+    }
+}
@@ -0,0 +1,112 @@
+package com.nmr.image_api.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-endpoint caps on downloads in progress (image.limits.{id,ref,variant}; 0 = unlimited), so a burst on one
+ * image cannot occupy every container thread and stall the other endpoints. A request over its cap waits up to
+ * max-wait for a slot and is then shed with 503 and Retry-After. The controller takes the slot; this filter gives
+ * it back when the request leaves the filter chain. Bodies the servlet writes itself (in-memory blobs,
+ * multi-range responses, containers without sendfile) have been written by then, so slow clients hold their slot.
+ * A file region handed to Tomcat's sendfile (see {@link FileResponder}) is sent afterwards by the connector's
+ * poller, after the slot is given back; for those the cap bounds the request processing, not the transfer.
+ * <p>
+ * Meters: image.limits.active {endpoint} (slots in use), image.limits.shed {endpoint} (requests rejected).
+ */
+@Component
+public class ConcurrencyLimits extends OncePerRequestFilter implements MeterBinder {
+
+    private static final String PERMIT = ConcurrencyLimits.class.getName() + ".permit";
+
+    private record Limit(int max, Semaphore slots) {}
+
+    private final Map<String, Limit> limits = new LinkedHashMap<>();
+    private final Duration maxWait;
+    private final Duration retryAfter;
+    private MeterRegistry registry;
+
+    @Autowired
+    public ConcurrencyLimits(@Value("${image.limits.id:64}") int id,
+                             @Value("${image.limits.ref:64}") int ref,
+                             @Value("${image.limits.variant:16}") int variant,
+                             @Value("${image.limits.max-wait:100ms}") Duration maxWait,
+                             @Value("${image.limits.retry-after:1s}") Duration retryAfter) {
+        this(Map.of("id", id, "ref", ref, "variant", variant), maxWait, retryAfter);
+    }
+
+    ConcurrencyLimits(Map<String, Integer> maxConcurrent, Duration maxWait, Duration retryAfter) {
+        maxConcurrent.forEach((endpoint, max) -> {
+            if (max > 0) limits.put(endpoint, new Limit(max, new Semaphore(max)));
+        });
+        this.maxWait = maxWait;
+        this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        limits.forEach((endpoint, l) -> Gauge.builder("image.limits.active", l, x -> x.max() - x.slots().availablePermits())
+                .tag("endpoint", endpoint).register(registry));
+    }
+
+    /**
+     * Takes a slot of {@code endpoint} for the rest of {@code request}, waiting up to max-wait.
+     *
+     * @throws OverloadedException when no slot became free in time
+     */
+    public void acquire(String endpoint, HttpServletRequest request) {
+        Limit l = limits.get(endpoint);
+        if (l == null || request.getAttribute(PERMIT) != null) return;
+        boolean acquired;
+        try {
+            acquired = l.slots().tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            if (registry != null) Counter.builder("image.limits.shed").tag("endpoint", endpoint).register(registry).increment();
+            throw new OverloadedException("too many concurrent " + endpoint + " downloads", retryAfter);
+        }
+        request.setAttribute(PERMIT, l.slots());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            release(request);
+        }
+    }
+
+    void release(HttpServletRequest request) {
+        if (request.getAttribute(PERMIT) instanceof Semaphore slots) {
+            request.removeAttribute(PERMIT);
+            slots.release();
+        }
+    }
+
+    int available(String endpoint) {
+        return limits.get(endpoint).slots().availablePermits();
+    }
+}
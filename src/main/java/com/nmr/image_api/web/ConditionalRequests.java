@@ -0,0 +1,93 @@
+package com.nmr.image_api.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Enumeration;
+
+/**
+ * Evaluates HTTP preconditions (RFC 9110 §13.2.2) against a resource's current validators before any file I/O:
+ * If-Match / If-Unmodified-Since (412), then If-None-Match / If-Modified-Since (304 for GET/HEAD, 412 otherwise).
+ * ETag lists and {@code *} are supported; If-Match uses strong comparison, If-None-Match weak comparison.
+ */
+public final class ConditionalRequests {
+    private ConditionalRequests() {}
+
+    /**
+     * @param etag         current entity tag (quoted, optionally {@code W/}-prefixed), or null
+     * @param lastModified current modification time, or null
+     * @param headers      validator/caching headers to send with a 304 (ETag, Last-Modified, Cache-Control, ...)
+     * @return the 304/412 response to send, or null when the request should proceed
+     */
+    public static <T> ResponseEntity<T> evaluate(HttpServletRequest request, String etag, Instant lastModified,
+                                                 HttpHeaders headers) {
+        ETag current = etag == null ? null : ETag.create(etag);
+        Instant modified = lastModified == null ? null : lastModified.truncatedTo(ChronoUnit.SECONDS);
+        boolean safe = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+
+        if (request.getHeaders(HttpHeaders.IF_MATCH).hasMoreElements()) {
+            if (!matches(request.getHeaders(HttpHeaders.IF_MATCH), current, true)) return failed();
+        } else {
+            Instant since = date(request, HttpHeaders.IF_UNMODIFIED_SINCE);
+            if (since != null && modified != null && modified.isAfter(since)) return failed();
+        }
+
+        if (request.getHeaders(HttpHeaders.IF_NONE_MATCH).hasMoreElements()) {
+            if (matches(request.getHeaders(HttpHeaders.IF_NONE_MATCH), current, false)) {
+                return safe ? notModified(headers) : failed();
+            }
+        } else if (safe) {
+            Instant since = date(request, HttpHeaders.IF_MODIFIED_SINCE);
+            if (since != null && modified != null && !modified.isAfter(since)) return notModified(headers);
+        }
+        return null;
+    }
+
+    /** Sets ETag (when given) and Last-Modified (when given) on {@code headers}. */
+    public static HttpHeaders validators(HttpHeaders headers, String etag, Instant lastModified) {
+        if (etag != null) headers.setETag(etag);
+        if (lastModified != null) headers.setLastModified(lastModified);
+        return headers;
+    }
+
+    private static boolean matches(Enumeration<String> values, ETag current, boolean strong) {
+        while (values.hasMoreElements()) {
+            for (ETag candidate : ETag.parse(values.nextElement())) {
+                if (candidate.isWildcard()) {
+                    if (current != null) return true;
+                } else if (current != null && candidate.compare(current, strong)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Parsed HTTP-date, or null when absent or malformed (a malformed date is ignored, per RFC). */
+    private static Instant date(HttpServletRequest request, String name) {
+        try {
+            long millis = request.getDateHeader(name);
+            return millis < 0 ? null : Instant.ofEpochMilli(millis);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static <T> ResponseEntity<T> notModified(HttpHeaders headers) {
+        HttpHeaders h = new HttpHeaders();
+        for (String name : new String[]{HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED, HttpHeaders.CACHE_CONTROL,
+                HttpHeaders.VARY, HttpHeaders.EXPIRES}) {
+            if (headers.containsKey(name)) h.put(name, headers.get(name));
+        }
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(h).build();
+    }
+
+    private static <T> ResponseEntity<T> failed() {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+    }
+}
@@ -0,0 +1,351 @@
+package com.nmr.image_api.web;
+
+import com.nmr.image_api.util.ByteBufferStreams;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.*;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds file download responses with byte-range support (single and multi-range, 206/416, If-Range).
+ * On Tomcat the whole file or a single range is handed to the connector's sendfile, so bytes go from the page
+ * cache to the socket without passing through the JVM; other cases stream the file region. Bodies already held in
+ * memory (see {@code HotBlobCache}) are served with the same range handling, from the buffer.
+ */
+public final class FileResponder {
+    private FileResponder() {}
+
+    // Tomcat connector attributes (org.apache.catalina.Globals); ignored by other containers
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private record Span(long start, long end) { // end inclusive
+        long length() { return end - start + 1; }
+    }
+
+    /** Where the representation's bytes are; slices are relative to its first byte. */
+    private interface Body {
+        Resource slice(long start, long count);
+
+        /** For sendfile; null when the bytes are not in a file. */
+        default Path file() { return null; }
+
+        default long offset() { return 0; }
+    }
+
+    private record FileBody(Path file, long offset) implements Body {
+        @Override
+        public Resource slice(long start, long count) {
+            return new RegionResource(file, offset + start, count);
+        }
+    }
+
+    private record BufferBody(ByteBuffer data) implements Body {
+        @Override
+        public Resource slice(long start, long count) {
+            return new BufferResource(data.slice(data.position() + (int) start, (int) count));
+        }
+    }
+
+    /**
+     * @param headers response headers prepared by the caller (ETag, Cache-Control, ...); content type, length,
+     *                Accept-Ranges and Content-Range are filled in here
+     */
+    public static ResponseEntity<Resource> serve(HttpServletRequest request, Path file, long length, MediaType type,
+                                                 HttpHeaders headers, Instant lastModified) {
+        return serve(request, file, 0, length, type, headers, lastModified);
+    }
+
+    /**
+     * Serves the {@code length} bytes of {@code file} starting at {@code offset} (a blob inside a pack file) as
+     * the whole representation; ranges are relative to {@code offset}.
+     */
+    public static ResponseEntity<Resource> serve(HttpServletRequest request, Path file, long offset, long length,
+                                                 MediaType type, HttpHeaders headers, Instant lastModified) {
+        return serve(request, new FileBody(file, offset), length, type, headers, lastModified);
+    }
+
+    /** Serves the remaining bytes of {@code data} (not consumed) as the whole representation. */
+    public static ResponseEntity<Resource> serve(HttpServletRequest request, ByteBuffer data, MediaType type,
+                                                 HttpHeaders headers, Instant lastModified) {
+        return serve(request, new BufferBody(data), data.remaining(), type, headers, lastModified);
+    }
+
+    private static ResponseEntity<Resource> serve(HttpServletRequest request, Body body, long length,
+                                                  MediaType type, HttpHeaders headers, Instant lastModified) {
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && !range.trim().toLowerCase(Locale.ROOT).startsWith("bytes=")) range = null; // unknown unit: ignore
+        boolean useRange = range != null && "GET".equals(request.getMethod())
+                && ifRangeMatches(request.getHeader(HttpHeaders.IF_RANGE), headers.getETag(), lastModified);
+
+        if (!useRange) {
+            headers.setContentType(type);
+            headers.setContentLength(length);
+            Resource full = body.slice(0, length);
+            if (range != null) full = ignoringRange(full);
+            return respond(request, HttpStatus.OK, headers, body, new Span(0, length - 1), full);
+        }
+
+        List<Span> spans = parse(range, length);
+        if (spans == null) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+        }
+
+        if (spans.size() == 1) {
+            Span s = spans.get(0);
+            headers.setContentType(type);
+            headers.setContentLength(s.length());
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + s.start() + "-" + s.end() + "/" + length);
+            return respond(request, HttpStatus.PARTIAL_CONTENT, headers, body, s, body.slice(s.start(), s.length()));
+        }
+
+        MultipartRangesResource parts = new MultipartRangesResource(body, length, type, spans);
+        headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + parts.boundary));
+        headers.setContentLength(parts.contentLength());
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(parts);
+    }
+
+    private static ResponseEntity<Resource> respond(HttpServletRequest request, HttpStatus status, HttpHeaders headers,
+                                                    Body body, Span span, Resource fallback) {
+        if (body.file() != null && span.length() > 0 && "GET".equals(request.getMethod())
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, body.file().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, body.offset() + span.start());
+            request.setAttribute(SENDFILE_END, body.offset() + span.end() + 1);
+            return ResponseEntity.status(status).headers(headers).build();
+        }
+        return ResponseEntity.status(status).headers(headers).body(fallback);
+    }
+
+    /** Full body while a (non-matching If-Range) Range header is present; not re-ranged by Spring MVC. */
+    private static Resource ignoringRange(Resource full) {
+        try {
+            return new InputStreamResource(full.getInputStream());
+        } catch (IOException e) {
+            throw new NotFoundException("file missing on disk");
+        }
+    }
+
+    /** If-Range holds an entity tag (strong comparison) or an HTTP-date (exact match); absent means "use the range". */
+    static boolean ifRangeMatches(String ifRange, String etag, Instant lastModified) {
+        if (ifRange == null || ifRange.isBlank()) return true;
+        String v = ifRange.trim();
+        if (v.startsWith("\"") || v.startsWith("W/")) {
+            return etag != null && !v.startsWith("W/") && !etag.startsWith("W/") && v.equals(etag);
+        }
+        if (lastModified == null) return false;
+        try {
+            Instant since = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return since.equals(lastModified.truncatedTo(ChronoUnit.SECONDS));
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /** Returns satisfiable spans, or null for a syntactically invalid or unsatisfiable Range header. */
+    private static List<Span> parse(String header, long length) {
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        List<Span> spans = new ArrayList<>(ranges.size());
+        long total = 0;
+        for (HttpRange r : ranges) {
+            long start, end;
+            try {
+                start = r.getRangeStart(length);
+                end = r.getRangeEnd(length);
+            } catch (IllegalArgumentException unsatisfiable) {
+                continue;
+            }
+            if (start >= length || end < start) continue; // e.g. start beyond EOF; other ranges may still be satisfiable
+            spans.add(new Span(start, end));
+            total += end - start + 1;
+        }
+        // many overlapping ranges asking for more than the file itself is an amplification attempt
+        if (spans.isEmpty() || (spans.size() > 1 && total > length)) return null;
+        return spans;
+    }
+
+    /** A slice of a file; streamed through a positioned channel. */
+    public static final class RegionResource extends AbstractResource {
+        private final Path file;
+        private final long position;
+        private final long count;
+
+        public RegionResource(Path file, long position, long count) {
+            this.file = file;
+            this.position = position;
+            this.count = count;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+            ch.position(position);
+            return new BoundedInputStream(Channels.newInputStream(ch), count);
+        }
+
+        @Override
+        public long contentLength() {
+            return count;
+        }
+
+        @Override
+        public boolean exists() {
+            return Files.exists(file);
+        }
+
+        @Override
+        public String getFilename() {
+            return file.getFileName().toString();
+        }
+
+        @Override
+        public String getDescription() {
+            return "file region [" + file + " @" + position + "+" + count + "]";
+        }
+    }
+
+    /** Bytes held in memory; each stream reads them in place. */
+    public static final class BufferResource extends AbstractResource {
+        private final ByteBuffer data;
+
+        public BufferResource(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return ByteBufferStreams.inputStream(data);
+        }
+
+        @Override
+        public long contentLength() {
+            return data.remaining();
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public String getDescription() {
+            return "buffer [" + data.remaining() + " bytes]";
+        }
+    }
+
+    /** multipart/byteranges body (RFC 9110 §14.6) with a precomputed length. */
+    static final class MultipartRangesResource extends AbstractResource {
+        final String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        private final Body body;
+        private final List<byte[]> partHeaders = new ArrayList<>();
+        private final List<Span> spans;
+        private final byte[] trailer;
+
+        MultipartRangesResource(Body body, long length, MediaType type, List<Span> spans) {
+            this.body = body;
+            this.spans = spans;
+            for (Span s : spans) {
+                partHeaders.add(("\r\n--" + boundary + "\r\n"
+                        + "Content-Type: " + type + "\r\n"
+                        + "Content-Range: bytes " + s.start() + "-" + s.end() + "/" + length + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+            }
+            trailer = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public long contentLength() {
+            long n = trailer.length;
+            for (int i = 0; i < spans.size(); i++) n += partHeaders.get(i).length + spans.get(i).length();
+            return n;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            List<InputStream> parts = new ArrayList<>();
+            for (int i = 0; i < spans.size(); i++) {
+                Span s = spans.get(i);
+                parts.add(new ByteArrayInputStream(partHeaders.get(i)));
+                parts.add(new LazyInputStream(body.slice(s.start(), s.length())));
+            }
+            parts.add(new ByteArrayInputStream(trailer));
+            Enumeration<InputStream> e = java.util.Collections.enumeration(parts);
+            return new SequenceInputStream(e);
+        }
+
+        @Override
+        public String getDescription() {
+            return "multipart/byteranges [" + body + "]";
+        }
+    }
+
+    /** Opens the region only when first read, so a multi-range body holds at most one open channel. */
+    private static final class LazyInputStream extends InputStream {
+        private final Resource source;
+        private InputStream in;
+
+        LazyInputStream(Resource source) { this.source = source; }
+
+        private InputStream in() throws IOException {
+            if (in == null) in = source.getInputStream();
+            return in;
+        }
+
+        @Override public int read() throws IOException { return in().read(); }
+        @Override public int read(byte[] b, int off, int len) throws IOException { return in().read(b, off, len); }
+        @Override public void close() throws IOException { if (in != null) in.close(); }
+    }
+
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.nmr.image_api.web;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.Locale;
+
+/** Accept / Accept-Encoding evaluation for endpoints that choose their representation themselves. */
+public final class Negotiation {
+    private Negotiation() {}
+
+    /** Parsed Accept ranges; empty when absent or malformed. */
+    public static List<MediaType> ranges(String accept) {
+        if (accept == null || accept.isBlank()) return List.of();
+        try {
+            return MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return List.of();
+        }
+    }
+
+    /** q of the most specific range matching {@code type}; 0 when none does. */
+    public static double quality(List<MediaType> ranges, MediaType type) {
+        int best = -1;
+        double q = 0;
+        for (MediaType r : ranges) {
+            if (!r.includes(type)) continue;
+            int specificity = r.isWildcardType() ? 0 : r.isWildcardSubtype() ? 1 : 2;
+            if (specificity > best) {
+                best = specificity;
+                q = r.getQualityValue();
+            }
+        }
+        return q;
+    }
+
+    /** Whether Accept names {@code type} explicitly and ranks it above {@code fallback}. */
+    public static boolean prefers(String accept, MediaType type, MediaType fallback) {
+        List<MediaType> ranges = ranges(accept);
+        if (ranges.stream().noneMatch(r -> r.getType().equals(type.getType()) && r.getSubtype().equals(type.getSubtype()))) {
+            return false;
+        }
+        double q = quality(ranges, type);
+        return q > 0 && q > quality(ranges, fallback);
+    }
+
+    /** Whether Accept-Encoding allows gzip (directly or through {@code *}) with a non-zero q. */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        double gzip = -1, any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] p = part.trim().split(";");
+            String coding = p[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < p.length; i++) {
+                String param = p[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) gzip = Math.max(gzip, q);
+            else if (coding.equals("*")) any = q;
+        }
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+}
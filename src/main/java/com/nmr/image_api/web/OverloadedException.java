@@ -0,0 +1,19 @@
+package com.nmr.image_api.web;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+
+/** Load shed by {@link ConcurrencyLimits}; answered with 503 and Retry-After. */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class OverloadedException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public OverloadedException(String m, Duration retryAfter) {
+        super(m);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() { return retryAfter; }
+}
@@ -0,0 +1,10 @@
+package com.nmr.image_api.web;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** An If-Match / If-Unmodified-Since precondition did not hold for the row being written; answered with 412. */
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String m) { super(m); }
+}
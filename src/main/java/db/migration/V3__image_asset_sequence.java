@@ -0,0 +1,26 @@
+package db.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Creates image_asset_seq for sequence-generated ids (batchable inserts). Java rather than SQL because the start
+ * value has to clear the ids already handed out by the identity column, and that needs a literal in DDL.
+ */
+public class V3__image_asset_sequence extends BaseJavaMigration {
+    @Override
+    public void migrate(Context context) throws Exception {
+        try (Statement st = context.getConnection().createStatement()) {
+            long maxId;
+            try (ResultSet rs = st.executeQuery("select coalesce(max(id), 0) from image_asset")) {
+                rs.next();
+                maxId = rs.getLong(1);
+            }
+            // +allocationSize of headroom: the pooled optimizer may hand out ids just below the value it fetched
+            st.execute("create sequence image_asset_seq start with " + (maxId + 51) + " increment by 50");
+        }
+    }
+}
@@ -0,0 +1,26 @@
+-- Schema as previously created by ddl-auto=update; "if not exists" so databases created that way baseline cleanly.
+create table if not exists image_asset (
+    id                bigint generated by default as identity primary key,
+    original_filename varchar(255) not null,
+    stored_filename   varchar(255) not null,
+    content_type      varchar(255) not null,
+    size_bytes        bigint not null,
+    uploaded_by       varchar(255) not null,
+    uploaded_at       timestamp(6) with time zone not null,
+    checksum_sha256   varchar(255) not null,
+    width             integer,
+    height            integer,
+    reference_id      varchar(255) not null,
+    reference_type    varchar(255) not null
+);
+
+-- stored_filename stopped being unique with content-addressed blobs (several rows share one file)
+alter table image_asset drop constraint if exists UKcpyr02n9dqcyhq5vscwpt7s1m;
+
+create table if not exists stored_blob (
+    checksum_sha256 varchar(64) primary key,
+    stored_filename varchar(255) not null unique,
+    size_bytes      bigint not null,
+    ref_count       bigint not null,
+    created_at      timestamp(6) with time zone not null
+);
@@ -0,0 +1,3 @@
+-- Serves findTopByReferenceIdAndReferenceTypeOrderByUploadedAtDesc (/images/ref) without a scan + sort.
+create index if not exists idx_image_asset_ref_lookup
+    on image_asset (reference_type, reference_id, uploaded_at desc);
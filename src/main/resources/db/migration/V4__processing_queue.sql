@@ -0,0 +1,15 @@
+-- Uploads are saved as PROCESSING and finished by ProcessingQueue; rows that existed before are complete.
+alter table image_asset add column if not exists status varchar(16) default 'READY' not null;
+
+-- Post-processing work, persisted so it survives a restart. Rows are deleted once done; FAILED ones are kept.
+create table if not exists processing_task (
+    id         bigint generated by default as identity primary key,
+    image_id   bigint not null,
+    state      varchar(16) not null,
+    attempts   integer not null,
+    created_at timestamp(6) with time zone not null,
+    started_at timestamp(6) with time zone,
+    last_error varchar(1000)
+);
+
+create index if not exists idx_processing_task_state on processing_task (state, id);
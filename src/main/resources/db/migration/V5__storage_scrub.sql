@@ -0,0 +1,25 @@
+-- StorageScrubber: where the current pass is, so a restart resumes it (one row per scrubber, name = 'storage').
+create table if not exists scrub_progress (
+    name             varchar(32) primary key,
+    phase            varchar(16) not null,
+    last_id          bigint not null,
+    last_key         varchar(255),
+    pass_started_at  timestamp(6) with time zone,
+    pass_finished_at timestamp(6) with time zone,
+    rows_checked     bigint not null,
+    blobs_checked    bigint not null,
+    bytes_verified   bigint not null,
+    missing          bigint not null,
+    corrupt          bigint not null,
+    orphans          bigint not null
+);
+
+-- Blobs no row references, with when they were first seen; only deleted once older than image.scrub.orphan-grace.
+create table if not exists scrub_orphan (
+    blob_key   varchar(255) primary key,
+    first_seen timestamp(6) with time zone not null,
+    last_seen  timestamp(6) with time zone not null
+);
+
+-- Orphan checks look blobs up by key; legacy (pre content-addressing) keys are only in image_asset.
+create index if not exists idx_image_asset_stored_filename on image_asset (stored_filename);
@@ -0,0 +1,3 @@
+-- Row version (@Version on ImageAsset), bumped by every update of the row, bulk updates included. Cached per-row
+-- JSON is reused while it is unchanged, and the GET /images/allmeta ETag is derived from count, sum(id), sum(version).
+alter table image_asset add column if not exists version bigint default 0 not null;
@@ -0,0 +1,3 @@
+-- 64-bit dHash of the decoded image (PerceptualHash), set by post-processing; null until then, or when the bytes
+-- cannot be decoded. SimilarityIndex loads all of them on startup, in id order.
+alter table image_asset add column if not exists perceptual_hash bigint;
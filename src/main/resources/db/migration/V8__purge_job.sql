@@ -0,0 +1,21 @@
+-- Bulk deletes (POST /images/purge) run as background jobs, one batch at a time; PurgeJobs resumes a job from
+-- last_id after a restart. Only rows with id <= max_id (those that existed when the job was created) are deleted.
+create table if not exists purge_job (
+    id              bigint generated by default as identity primary key,
+    state           varchar(16) not null,
+    reference_type  varchar(255),
+    reference_ids   text,
+    uploaded_before timestamp(6) with time zone,
+    max_id          bigint not null,
+    last_id         bigint not null,
+    created_at      timestamp(6) with time zone not null,
+    started_at      timestamp(6) with time zone,
+    finished_at     timestamp(6) with time zone,
+    images_deleted  bigint not null,
+    files_deleted   bigint not null,
+    file_errors     bigint not null,
+    last_error      varchar(1000)
+);
+
+-- Retention sweeps select by uploaded_at; without this, finding that nothing is old enough scans the table.
+create index if not exists idx_image_asset_uploaded_at on image_asset (uploaded_at);
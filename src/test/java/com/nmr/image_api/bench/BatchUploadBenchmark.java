@@ -0,0 +1,76 @@
+package com.nmr.image_api.bench;
+
+import com.nmr.image_api.service.BatchUploadService;
+import com.nmr.image_api.service.ImageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * N sequential {@link ImageService#upload} calls (one transaction each) vs one {@link BatchUploadService#upload}
+ * of N files. Scores are files/s. Full Spring context on in-memory H2; every file has distinct bytes so nothing
+ * deduplicates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class BatchUploadBenchmark {
+
+    public static final int FILES = 64;
+
+    @Param({"1024x768"})
+    public String dimensions;
+
+    private BenchContext bench;
+    private ImageService images;
+    private BatchUploadService batch;
+    private byte[] template;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bench = BenchContext.start("batch-bench");
+        images = bench.bean(ImageService.class);
+        batch = bench.bean(BatchUploadService.class);
+        int[] wh = ImageCorpus.dimensions(dimensions);
+        template = ImageCorpus.encode(wh[0], wh[1], "jpeg", dimensions.hashCode());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bench.close();
+    }
+
+    /** Distinct files: the template with a counter appended after the JPEG EOI marker (decoders ignore it). */
+    private List<MultipartFile> nextFiles() {
+        List<MultipartFile> files = new ArrayList<>(FILES);
+        for (int i = 0; i < FILES; i++) {
+            byte[] data = ByteBuffer.allocate(template.length + Long.BYTES).put(template).putLong(counter++).array();
+            files.add(new MockMultipartFile("file", "f" + i + ".jpg", "image/jpeg", data));
+        }
+        return files;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public long singleUploads() {
+        long last = 0;
+        for (MultipartFile f : nextFiles()) last = images.upload(f, "bench", "ref" + counter, "bench").getId();
+        return last;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public int batchUpload() {
+        return batch.upload(nextFiles(), "bench", List.of("ref" + counter), "bench").size();
+    }
+}
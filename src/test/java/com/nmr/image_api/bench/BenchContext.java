@@ -0,0 +1,112 @@
+package com.nmr.image_api.bench;
+
+import com.nmr.image_api.ImageApiApplication;
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.service.ImageService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The application on a private in-memory H2 and a temporary storage directory; without a web server unless
+ * started with {@link #startServer}.
+ */
+final class BenchContext implements AutoCloseable {
+
+    final ConfigurableApplicationContext ctx;
+    final Path storage;
+
+    private BenchContext(ConfigurableApplicationContext ctx, Path storage) {
+        this.ctx = ctx;
+        this.storage = storage;
+    }
+
+    static BenchContext start(String name, String... properties) throws IOException {
+        return start(name, WebApplicationType.NONE, properties);
+    }
+
+    /** With Tomcat on a free port, see {@link #port()}. */
+    static BenchContext startServer(String name, String... properties) throws IOException {
+        List<String> args = new ArrayList<>(List.of("server.port=0"));
+        args.addAll(List.of(properties));
+        return start(name, WebApplicationType.SERVLET, args.toArray(String[]::new));
+    }
+
+    private static BenchContext start(String name, WebApplicationType type, String... properties) throws IOException {
+        Path storage = Files.createTempDirectory(name);
+        // command-line args, so they win over application.properties (builder .properties() are only defaults)
+        List<String> args = new ArrayList<>(List.of(
+                "--storage.dir=" + storage,
+                "--spring.datasource.url=jdbc:h2:mem:" + name + ";MODE=PostgreSQL;DB_CLOSE_ON_EXIT=FALSE",
+                "--spring.h2.console.enabled=false",
+                "--logging.level.root=WARN",
+                // H2's own shutdown hook can beat context close at fork exit; that race is harmless
+                "--logging.level.org.springframework.beans.factory.support.DisposableBeanAdapter=ERROR"));
+        for (String p : properties) args.add("--" + p);
+        ConfigurableApplicationContext ctx = new SpringApplicationBuilder(ImageApiApplication.class)
+                .web(type)
+                .run(args.toArray(String[]::new));
+        return new BenchContext(ctx, storage);
+    }
+
+    int port() {
+        return ((WebServerApplicationContext) ctx).getWebServer().getPort();
+    }
+
+    <T> T bean(Class<T> type) {
+        return ctx.getBean(type);
+    }
+
+    /**
+     * Uploads one corpus image through {@link ImageService} and adds {@code rows} more rows sharing its blob
+     * (plain JDBC batches) with consecutive ids, spread over {@code references} referenceIds and two referenceTypes.
+     * Returns the highest id.
+     */
+    long seed(int rows, int references) {
+        ImageAsset first = bean(ImageService.class).upload(
+                new MockMultipartFile("file", "seed.jpg", "image/jpeg", ImageCorpus.encode(640, 480, "jpeg", 1)),
+                "bench", "ref0", "user");
+        JdbcTemplate jdbc = bean(JdbcTemplate.class);
+        // image_asset_seq hands out blocks of 50: start past any block the application already holds, and move the
+        // sequence past the seeded ids afterwards, so later uploads do not collide with them
+        long id = jdbc.queryForObject("select nextval('image_asset_seq')", Long.class) + 49;
+        Instant t0 = first.getUploadedAt();
+        List<Object[]> batch = new ArrayList<>(5_000);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[]{++id, "f" + i + ".jpg", first.getStoredFilename(), first.getSizeBytes(),
+                    i % 7 == 0 ? "importer" : "bench", Timestamp.from(t0.plusSeconds(i)), first.getChecksumSha256(),
+                    "ref" + (i % references), (i & 1) == 0 ? "user" : "product"});
+            if (batch.size() == 5_000 || i == rows - 1) {
+                jdbc.batchUpdate("""
+                        insert into image_asset (id, original_filename, stored_filename, content_type, size_bytes,
+                            uploaded_by, uploaded_at, checksum_sha256, width, height, reference_id, reference_type)
+                        values (?, ?, ?, 'image/jpeg', ?, ?, ?, ?, 640, 480, ?, ?)""", batch);
+                batch.clear();
+            }
+        }
+        jdbc.execute("alter sequence image_asset_seq restart with " + (id + 51));
+        jdbc.update("update stored_blob set ref_count = ref_count + ? where checksum_sha256 = ?", rows,
+                first.getChecksumSha256());
+        return id;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ctx.close();
+        try (var s = Files.walk(storage)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.nmr.image_api.bench;
+
+import com.nmr.image_api.util.ImageDimensions;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Header parse vs ImageReader header vs the old full ImageIO.read decode, on large images.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class DimensionProbeBenchmark {
+
+    @Param({"jpeg", "png"})
+    public String format;
+
+    @Param({"6000x4000"})
+    public String dimensions;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] wh = dimensions.split("x");
+        BufferedImage img = new BufferedImage(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]), BufferedImage.TYPE_INT_RGB);
+        var g = img.createGraphics();
+        g.setPaint(new java.awt.GradientPaint(0, 0, java.awt.Color.ORANGE, img.getWidth(), img.getHeight(), java.awt.Color.BLUE));
+        g.fillRect(0, 0, img.getWidth(), img.getHeight());
+        g.dispose();
+        file = Files.createTempFile("probe-bench", "." + format);
+        ImageIO.write(img, format, file.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ImageDimensions.Size header() throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return ImageDimensions.fromHeader(in);
+        }
+    }
+
+    @Benchmark
+    public ImageDimensions.Size imageReader() {
+        return ImageDimensions.fromReader(file);
+    }
+
+    @Benchmark
+    public ImageDimensions.Size fullDecode() {
+        return ImageDimensions.fromDecode(file);
+    }
+}
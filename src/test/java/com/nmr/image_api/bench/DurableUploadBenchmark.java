@@ -0,0 +1,56 @@
+package com.nmr.image_api.bench;
+
+import com.nmr.image_api.service.ImageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Upload throughput per {@code storage.fsync.mode} and backend, with concurrent uploaders so GROUP has writes to
+ * share fsyncs between. Storage is under java.io.tmpdir; point it at the disk to be measured (a tmpfs makes every
+ * fsync free), e.g. {@code -Djmh.args="DurableUpload -jvmArgsAppend -Djava.io.tmpdir=/data/bench"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(8)
+@State(Scope.Benchmark)
+public class DurableUploadBenchmark {
+
+    @Param({"always", "group", "none"})
+    public String fsync;
+
+    @Param({"directory", "pack"})
+    public String backend;
+
+    private BenchContext bench;
+    private ImageService images;
+    private byte[] template;
+    private final AtomicLong counter = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bench = BenchContext.start("durable-upload-bench", "storage.fsync.mode=" + fsync, "storage.backend=" + backend);
+        images = bench.bean(ImageService.class);
+        template = ImageCorpus.encode(640, 480, "jpeg", 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bench.close();
+    }
+
+    @Benchmark
+    public long upload() {
+        long n = counter.incrementAndGet();
+        byte[] data = ByteBuffer.allocate(template.length + Long.BYTES).put(template).putLong(n).array();
+        MockMultipartFile file = new MockMultipartFile("file", "f.jpg", "image/jpeg", data);
+        return images.upload(file, "bench", "ref" + (n & 1023), "bench").getId();
+    }
+}
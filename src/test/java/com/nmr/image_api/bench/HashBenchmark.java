@@ -0,0 +1,76 @@
+package com.nmr.image_api.bench;
+
+import com.nmr.image_api.util.HashUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SHA-256 + hex: the previous implementation (getInstance per call, String.format per byte) vs {@link HashUtil},
+ * for in-memory inputs and for a stored file (stream read vs memory-mapped). Run with {@code -prof gc} to see
+ * the allocation difference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashBenchmark {
+
+    @Param({"64", "65536", "4194304"})
+    public int size;
+
+    private byte[] data;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = new byte[size];
+        ThreadLocalRandom.current().nextBytes(data);
+        file = Files.createTempFile("hash-bench", ".bin");
+        Files.write(file, data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String bytesLegacy() throws Exception {
+        return legacyHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+
+    @Benchmark
+    public String bytes() {
+        return HashUtil.sha256(data);
+    }
+
+    @Benchmark
+    public String fileStreamLegacy() throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) > 0; ) md.update(buf, 0, n);
+        }
+        return legacyHex(md.digest());
+    }
+
+    @Benchmark
+    public String fileMapped() {
+        return HashUtil.sha256(file);
+    }
+
+    private static String legacyHex(byte[] dig) {
+        StringBuilder sb = new StringBuilder(dig.length * 2);
+        for (byte b : dig) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package com.nmr.image_api.bench;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Reproducible benchmark images: the same (width, height, format, seed) always yields the same pixels, and the
+ * same bytes for a given JDK's encoders. Pictures are a gradient with seeded shapes, so they compress roughly
+ * like real content rather than like a flat fill or pure noise.
+ * <p>
+ * {@code main} writes a corpus to disk: {@code ImageCorpus <dir> [WxH ...]}.
+ */
+public final class ImageCorpus {
+    private ImageCorpus() {}
+
+    public static final String[] FORMATS = {"jpeg", "png", "gif"};
+    public static final String[] SIZES = {"640x480", "1920x1080", "3000x2000"};
+
+    public static BufferedImage draw(int width, int height, long seed) {
+        Random rnd = new Random(seed);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setPaint(new GradientPaint(0, 0, new Color(rnd.nextInt(0xffffff)),
+                    width, height, new Color(rnd.nextInt(0xffffff))));
+            g.fillRect(0, 0, width, height);
+            int shapes = 40 + rnd.nextInt(40);
+            for (int i = 0; i < shapes; i++) {
+                g.setColor(new Color(rnd.nextInt(256), rnd.nextInt(256), rnd.nextInt(256), 64 + rnd.nextInt(192)));
+                int x = rnd.nextInt(width), y = rnd.nextInt(height);
+                int w = 1 + rnd.nextInt(Math.max(1, width / 3)), h = 1 + rnd.nextInt(Math.max(1, height / 3));
+                if (rnd.nextBoolean()) g.fillOval(x - w / 2, y - h / 2, w, h);
+                else g.fillRect(x - w / 2, y - h / 2, w, h);
+            }
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    /** Encoded image; jpeg at quality 0.85. */
+    public static byte[] encode(int width, int height, String format, long seed) {
+        BufferedImage img = draw(width, height, seed);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            if (format.equals("jpeg")) {
+                ImageWriter w = ImageIO.getImageWritersByFormatName("jpeg").next();
+                try (ImageOutputStream ios = ImageIO.createImageOutputStream(bos)) {
+                    w.setOutput(ios);
+                    ImageWriteParam p = w.getDefaultWriteParam();
+                    p.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    p.setCompressionQuality(0.85f);
+                    w.write(null, new IIOImage(img, null, null), p);
+                } finally {
+                    w.dispose();
+                }
+            } else if (!ImageIO.write(img, format, bos)) {
+                throw new IllegalArgumentException("no writer for " + format);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    /** "1920x1080" -> {1920, 1080} */
+    public static int[] dimensions(String wxh) {
+        String[] p = wxh.split("x");
+        return new int[]{Integer.parseInt(p[0]), Integer.parseInt(p[1])};
+    }
+
+    public static String contentType(String format) {
+        return "image/" + format;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ImageCorpus <dir> [WxH ...]");
+            System.exit(2);
+        }
+        Path dir = Files.createDirectories(Path.of(args[0]));
+        String[] sizes = args.length > 1 ? java.util.Arrays.copyOfRange(args, 1, args.length) : SIZES;
+        for (String size : sizes) {
+            int[] wh = dimensions(size);
+            for (String format : FORMATS) {
+                Path f = dir.resolve(size + "." + (format.equals("jpeg") ? "jpg" : format));
+                Files.write(f, encode(wh[0], wh[1], format, size.hashCode()));
+                System.out.println(f + " " + Files.size(f));
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.nmr.image_api.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH JSON result files (e.g. from two commits):
+ * {@code JmhCompare base.json head.json}. Prints each benchmark/params pair present in both with the score
+ * change; for time-per-op modes a positive change is a slowdown, for throughput a speedup.
+ */
+public final class JmhCompare {
+    private JmhCompare() {}
+
+    record Score(double value, String unit) {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: JmhCompare <base.json> <head.json>");
+            System.exit(2);
+        }
+        Map<String, Score> base = load(Path.of(args[0]));
+        Map<String, Score> head = load(Path.of(args[1]));
+        System.out.printf("%-70s %14s %14s %9s  %s%n", "benchmark", "base", "head", "change", "unit");
+        for (Map.Entry<String, Score> e : head.entrySet()) {
+            Score b = base.get(e.getKey());
+            Score h = e.getValue();
+            if (b == null) {
+                System.out.printf("%-70s %14s %14.3f %9s  %s%n", e.getKey(), "-", h.value(), "new", h.unit());
+                continue;
+            }
+            double change = (h.value() - b.value()) / b.value() * 100;
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%%  %s%n", e.getKey(), b.value(), h.value(), change, h.unit());
+        }
+    }
+
+    static Map<String, Score> load(Path file) throws IOException {
+        Map<String, Score> out = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(run.get("benchmark").asText().replaceFirst("^.*\\.bench\\.", ""));
+            JsonNode params = run.get("params");
+            if (params != null) params.properties().forEach(p -> key.append(' ').append(p.getKey()).append('=').append(p.getValue().asText()));
+            JsonNode m = run.get("primaryMetric");
+            out.put(key.toString(), new Score(m.get("score").asDouble(), m.get("scoreUnit").asText()));
+        }
+        return out;
+    }
+}
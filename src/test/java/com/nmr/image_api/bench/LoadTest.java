@@ -0,0 +1,154 @@
+package com.nmr.image_api.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * HTTP load test of the download endpoints, run against the same seeded data once per thread mode: Tomcat's
+ * platform pool ({@code spring.threads.virtual.enabled=false}) and virtual threads. Not a JMH benchmark:
+ * <pre>
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.nmr.image_api.bench.LoadTest \
+ *       -Dexec.args="connections=2000 seconds=30"
+ * </pre>
+ * Arguments (key=value): connections (1000), seconds (20) measured after warmup (5), rows (20000; more than the
+ * descriptor cache holds, so some lookups reach H2), modes (platform,virtual). Any other key containing a dot is
+ * passed to both servers as an application property, e.g. {@code image.cache.hot.max-size=0}. Download limits
+ * (image.limits.*) are off unless given, so the thread model rather than load shedding is measured.
+ * <p>
+ * Each connection is a virtual thread sending requests back to back (80% GET /images/{id}, 20% GET /images/ref).
+ * Client and server share the machine, so compare the two modes with each other, not with production. Needs an
+ * open-file limit above twice the connection count ({@code ulimit -n}).
+ */
+public final class LoadTest {
+
+    private static final int REFERENCES = 5_000;
+
+    record Result(String mode, long ok, long failed, double seconds, long[] latenciesNanos) {
+        double throughput() { return ok / seconds; }
+
+        double percentileMillis(double p) {
+            if (latenciesNanos.length == 0) return Double.NaN;
+            int i = (int) Math.min(latenciesNanos.length - 1, Math.ceil(p / 100 * latenciesNanos.length) - 1);
+            return latenciesNanos[Math.max(0, i)] / 1e6;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new LinkedHashMap<>(Map.of(
+                "connections", "1000", "seconds", "20", "warmup", "5", "rows", "20000", "modes", "platform,virtual"));
+        List<String> properties = new ArrayList<>(List.of("image.limits.id=0", "image.limits.ref=0", "image.limits.variant=0"));
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("expected key=value: " + a);
+            if (a.substring(0, eq).contains(".")) properties.add(a);
+            else opts.put(a.substring(0, eq), a.substring(eq + 1));
+        }
+        int connections = Integer.parseInt(opts.get("connections"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(opts.get("warmup")));
+        Duration measure = Duration.ofSeconds(Long.parseLong(opts.get("seconds")));
+        int rows = Integer.parseInt(opts.get("rows"));
+
+        List<Result> results = new ArrayList<>();
+        for (String mode : opts.get("modes").split(",")) {
+            List<String> props = new ArrayList<>(properties);
+            props.add("spring.threads.virtual.enabled=" + mode.trim().equals("virtual"));
+            try (BenchContext bench = BenchContext.startServer("load-" + mode.trim(), props.toArray(String[]::new))) {
+                long lastId = bench.seed(rows, REFERENCES);
+                System.out.printf("%s: %d connections, %ss warmup + %ss%n", mode, connections,
+                        warmup.toSeconds(), measure.toSeconds());
+                results.add(run(mode.trim(), bench.port(), lastId - rows + 1, rows, connections, warmup, measure));
+            }
+        }
+
+        System.out.printf("%n%-9s %10s %9s %9s %9s %9s %8s%n", "mode", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        for (Result r : results) {
+            System.out.printf("%-9s %10.0f %9.2f %9.2f %9.2f %9.2f %8d%n", r.mode(), r.throughput(),
+                    r.percentileMillis(50), r.percentileMillis(99), r.percentileMillis(99.9),
+                    r.percentileMillis(100), r.failed());
+        }
+    }
+
+    static Result run(String mode, int port, long firstId, int rows, int connections, Duration warmup, Duration measure)
+            throws Exception {
+        String base = "http://localhost:" + port;
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + measure.toNanos();
+        try (ExecutorService clientPool = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .connectTimeout(Duration.ofSeconds(10))
+                     .executor(clientPool)
+                     .build();
+             ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Worker>> futures = new ArrayList<>(connections);
+            for (int i = 0; i < connections; i++) {
+                futures.add(workers.submit(() -> new Worker().run(client, base, firstId, rows, measureFrom, end)));
+            }
+            List<Worker> done = new ArrayList<>(connections);
+            for (Future<Worker> f : futures) done.add(f.get());
+            long ok = 0, failed = 0;
+            long[] latencies = new long[done.stream().mapToInt(w -> w.count).sum()];
+            int pos = 0;
+            for (Worker w : done) {
+                ok += w.ok;
+                failed += w.failed;
+                System.arraycopy(w.latencies, 0, latencies, pos, w.count);
+                pos += w.count;
+            }
+            Arrays.sort(latencies);
+            return new Result(mode, ok, failed, measure.toNanos() / 1e9, latencies);
+        }
+    }
+
+    /** One connection's closed loop; only requests started after warmup are recorded. */
+    private static final class Worker {
+        long ok, failed;
+        long[] latencies = new long[1024];
+        int count;
+
+        Worker run(HttpClient client, String base, long firstId, int rows, long measureFrom, long end) {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+                String path;
+                if (rnd.nextInt(5) == 0) {
+                    int ref = rnd.nextInt(REFERENCES); // seeded rows: ref(i % REFERENCES), type by parity of i
+                    path = "/images/ref?referenceId=ref" + ref + "&referenceType=" + ((ref & 1) == 0 ? "user" : "product");
+                } else {
+                    path = "/images/" + (firstId + rnd.nextInt(rows));
+                }
+                boolean success;
+                try {
+                    HttpResponse<Void> r = client.send(HttpRequest.newBuilder(URI.create(base + path)).build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    success = r.statusCode() / 100 == 2;
+                } catch (Exception e) {
+                    if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+                    success = false;
+                }
+                long done = System.nanoTime();
+                if (now < measureFrom) continue;
+                if (!success) {
+                    failed++;
+                    continue;
+                }
+                ok++;
+                if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                latencies[count++] = done - now;
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.nmr.image_api.bench;
+
+import com.nmr.image_api.service.ImageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Download-path lookups against a seeded H2: uncached by-id / by-reference queries (getImageData,
+ * getByReference) over all rows, and the cached descriptors the controller actually uses (resolve,
+ * resolveByReference) over a hot set that fits the descriptor cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    private static final int REFERENCES = 10_000;
+    private static final int HOT = 1_000;
+
+    private BenchContext bench;
+    private ImageService images;
+    private long firstId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bench = BenchContext.start("lookup-bench");
+        images = bench.bean(ImageService.class);
+        firstId = bench.seed(rows, REFERENCES) - rows + 1;
+        for (int i = 0; i < HOT; i++) { // the cached benchmarks measure hits, not the first miss
+            images.resolve(firstId + i);
+            images.resolveByReference("ref" + i, (i & 1) == 0 ? "user" : "product");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bench.close();
+    }
+
+    private long randomId(long bound) {
+        return firstId + ThreadLocalRandom.current().nextLong(bound);
+    }
+
+    /** seeded rows use ref(i % REFERENCES) with type by parity of i, so even refs are "user" */
+    private static String[] randomRef(int bound) {
+        int ref = ThreadLocalRandom.current().nextInt(bound);
+        return new String[]{"ref" + ref, (ref & 1) == 0 ? "user" : "product"};
+    }
+
+    @Benchmark
+    public Resource getImageData() {
+        return images.getImageData(randomId(rows));
+    }
+
+    @Benchmark
+    public Resource getByReference() {
+        String[] ref = randomRef(REFERENCES);
+        return images.getByReference(ref[0], ref[1]);
+    }
+
+    @Benchmark
+    public Object resolveCached() {
+        return images.resolve(randomId(HOT));
+    }
+
+    @Benchmark
+    public Object resolveByReferenceCached() {
+        String[] ref = randomRef(HOT);
+        return images.resolveByReference(ref[0], ref[1]);
+    }
+}
@@ -0,0 +1,106 @@
+package com.nmr.image_api.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.nmr.image_api.dto.ImageMetaResponse;
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import com.nmr.image_api.service.ImageService;
+import com.nmr.image_api.service.MetaJsonCache;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoding the /allmeta body without the database: Jackson reflection over ImageMetaResponse (the JSON path before
+ * MetaJsonCache), the array assembled from cached per-row JSON, gzip of that array (paid once per catalogue
+ * change), and CBOR through Spring's converter mapper. Body sizes are printed at setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class MetaEncodingBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private ObjectMapper json;
+    private ObjectMapper cbor;
+    private MetaJsonCache cache;
+    private List<ImageAsset> assets;
+    private byte[] cachedArray;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        json = Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        cbor = Jackson2ObjectMapperBuilder.cbor().build(); // as MappingJackson2CborHttpMessageConverter has it
+        cache = new MetaJsonCache(null, json, DataSize.ofMegabytes(512)); // no repository: per-row JSON only
+        assets = new ArrayList<>(rows);
+        Instant t0 = Instant.parse("2025-01-01T00:00:00Z");
+        for (int i = 1; i <= rows; i++) {
+            ImageAsset a = new ImageAsset();
+            a.setId((long) i);
+            a.setOriginalFilename("IMG_" + (100_000 + i) + ".jpg");
+            a.setStoredFilename("ab/cd/" + i);
+            a.setContentType("image/jpeg");
+            a.setSizeBytes(50_000L + i * 37L % 2_000_000);
+            a.setUploadedBy(i % 7 == 0 ? "importer" : "bench");
+            a.setUploadedAt(t0.plusSeconds(i));
+            a.setChecksumSha256(String.format("%064x", i * 0x9E3779B97F4A7C15L & Long.MAX_VALUE));
+            a.setWidth(640 + i % 1280);
+            a.setHeight(480 + i % 720);
+            a.setReferenceId("ref" + i % 5_000);
+            a.setReferenceType((i & 1) == 0 ? "user" : "product");
+            a.setStatus(ImageStatus.READY);
+            assets.add(a);
+        }
+        cachedArray = cache.jsonArray(assets); // warms the per-row cache
+        byte[] reflective = jsonReflection();
+        byte[] binary = cbor();
+        System.out.printf("%n%d rows: json %,d B, json+gzip %,d B, cbor %,d B, cbor+gzip %,d B%n", rows,
+                reflective.length, gzip(reflective).length, binary.length, gzip(binary).length);
+    }
+
+    private List<ImageMetaResponse> responses() {
+        return assets.stream().map(ImageService::toMeta).toList();
+    }
+
+    @Benchmark
+    public byte[] jsonReflection() throws IOException {
+        return json.writeValueAsBytes(responses());
+    }
+
+    @Benchmark
+    public byte[] jsonCachedRows() {
+        return cache.jsonArray(assets);
+    }
+
+    @Benchmark
+    public byte[] jsonGzip() throws IOException {
+        return gzip(cachedArray);
+    }
+
+    @Benchmark
+    public byte[] cbor() throws IOException {
+        return cbor.writeValueAsBytes(responses());
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 8);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out, 64 << 10)) {
+            gz.write(data);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,63 @@
+package com.nmr.image_api.bench;
+
+import com.nmr.image_api.dto.ImageMetaPage;
+import com.nmr.image_api.service.ImageService;
+import com.nmr.image_api.service.MetaExportService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/** Metadata listing: one keyset page, a filtered page, the whole catalogue via /allmeta, and the NDJSON export. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class MetaListingBenchmark {
+
+    @Param({"10000"})
+    public int rows;
+
+    private BenchContext bench;
+    private ImageService images;
+    private MetaExportService exporter;
+    private long lastId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bench = BenchContext.start("listing-bench");
+        images = bench.bean(ImageService.class);
+        exporter = bench.bean(MetaExportService.class);
+        lastId = bench.seed(rows, 1_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bench.close();
+    }
+
+    @Benchmark
+    public ImageMetaPage page() {
+        return images.getMetaPage(ThreadLocalRandom.current().nextLong(lastId), 100, null, null);
+    }
+
+    @Benchmark
+    public ImageMetaPage filteredPage() {
+        return images.getMetaPage(ThreadLocalRandom.current().nextLong(lastId), 100, "user", "importer");
+    }
+
+    @Benchmark
+    public List<?> allMeta() {
+        return images.getAllMeta();
+    }
+
+    @Benchmark
+    public long exportNdjson() throws IOException {
+        return exporter.exportNdjson(null, null, OutputStream.nullOutputStream());
+    }
+}
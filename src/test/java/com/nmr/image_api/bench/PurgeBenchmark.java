@@ -0,0 +1,69 @@
+package com.nmr.image_api.bench;
+
+import com.nmr.image_api.dto.PurgeJobResponse;
+import com.nmr.image_api.entity.PurgeJob;
+import com.nmr.image_api.service.ImageService;
+import com.nmr.image_api.service.PurgeJobs;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deleting a whole catalogue: row by row as DELETE /images/{id} does, against one purge job. The job runs without
+ * pauses between batches or file pacing here, so this measures the statements, not the configured throttling.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class PurgeBenchmark {
+
+    @Param({"5000"})
+    public int rows;
+
+    private BenchContext bench;
+    private ImageService images;
+    private PurgeJobs purges;
+    private long firstId;
+    private long lastId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bench = BenchContext.start("purge-bench", "image.purge.delay=0ms", "image.purge.file-rate=0",
+                "image.scrub.enabled=false");
+        images = bench.bean(ImageService.class);
+        purges = bench.bean(PurgeJobs.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void seed() {
+        lastId = bench.seed(rows, 1_000);
+        firstId = lastId - rows + 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bench.close();
+    }
+
+    @Benchmark
+    public long oneByOne() {
+        for (long id = firstId; id <= lastId; id++) images.deleteImage(id);
+        return lastId;
+    }
+
+    @Benchmark
+    public long purgeJob() throws InterruptedException {
+        PurgeJobResponse job = purges.submit(null, null, Instant.now().plusSeconds(86_400));
+        while (job.state() == PurgeJob.State.QUEUED || job.state() == PurgeJob.State.RUNNING) {
+            TimeUnit.MILLISECONDS.sleep(5);
+            job = purges.status(job.id());
+        }
+        if (job.imagesDeleted() != rows) throw new IllegalStateException("deleted " + job.imagesDeleted());
+        return job.imagesDeleted();
+    }
+}
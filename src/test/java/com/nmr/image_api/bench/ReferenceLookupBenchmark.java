@@ -0,0 +1,90 @@
+package com.nmr.image_api.bench;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.*;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latest-image-by-reference lookup (the /images/ref query) over a seeded table, with and without
+ * idx_image_asset_ref_lookup. H2 in PostgreSQL mode, schema from the Flyway migrations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ReferenceLookupBenchmark {
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private static final int REFERENCES = 50_000;
+
+    private Connection conn;
+    private PreparedStatement lookup;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        String url = "jdbc:h2:mem:ref-bench-" + indexed + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        Flyway.configure().dataSource(url, "sa", "").load().migrate();
+        conn = DriverManager.getConnection(url, "sa", "");
+        if (!indexed) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("drop index idx_image_asset_ref_lookup");
+            }
+        }
+        seed();
+        lookup = conn.prepareStatement("""
+                select * from image_asset where reference_id = ? and reference_type = ?
+                order by uploaded_at desc fetch first 1 rows only""");
+    }
+
+    private void seed() throws SQLException {
+        conn.setAutoCommit(false);
+        Instant t0 = Instant.parse("2024-01-01T00:00:00Z");
+        try (PreparedStatement ps = conn.prepareStatement("""
+                insert into image_asset (original_filename, stored_filename, content_type, size_bytes, uploaded_by,
+                    uploaded_at, checksum_sha256, reference_id, reference_type)
+                values (?, ?, 'image/jpeg', 1000, 'bench', ?, ?, ?, ?)""")) {
+            for (int i = 0; i < rows; i++) {
+                ps.setString(1, "f" + i + ".jpg");
+                ps.setString(2, "blob" + i);
+                ps.setTimestamp(3, Timestamp.from(t0.plusSeconds(i)));
+                ps.setString(4, Integer.toHexString(i));
+                ps.setString(5, "ref" + (i % REFERENCES));
+                ps.setString(6, (i & 1) == 0 ? "user" : "product");
+                ps.addBatch();
+                if (i % 5_000 == 4_999) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("drop all objects");
+        }
+        conn.close();
+    }
+
+    @Benchmark
+    public long latestByReference() throws SQLException {
+        int ref = ThreadLocalRandom.current().nextInt(REFERENCES);
+        lookup.setString(1, "ref" + ref);
+        lookup.setString(2, (ref & 1) == 0 ? "user" : "product");
+        try (ResultSet rs = lookup.executeQuery()) {
+            return rs.next() ? rs.getLong("id") : -1;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.nmr.image_api.bench;
+
+import com.nmr.image_api.util.HammingIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HammingIndex} over synthetic catalogues: random 64-bit hashes, a quarter of them near-duplicates (up to
+ * 8 bits flipped) of earlier ones. {@code build} is the startup load (one rebuild over all entries); {@code query}
+ * looks up the neighbours of a stored hash with a few bits flipped, as GET /images/{id}/similar does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SimilarityIndexBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Catalogue {
+        @Param({"1000000", "4000000"})
+        public int size;
+
+        long[] ids;
+        long[] hashes;
+        HammingIndex index;
+        final SplittableRandom rnd = new SplittableRandom(1);
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ids = new long[size];
+            hashes = new long[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = i + 1;
+                hashes[i] = i % 4 == 3 ? flip(hashes[rnd.nextInt(i)], rnd.nextInt(9), rnd) : rnd.nextLong();
+            }
+            index = new HammingIndex();
+            index.addAll(ids, hashes, size);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Distance {
+        @Param({"4", "10", "16"})
+        public int maxDistance;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public HammingIndex build(Catalogue c) {
+        HammingIndex fresh = new HammingIndex();
+        fresh.addAll(c.ids, c.hashes, c.size);
+        return fresh;
+    }
+
+    @Benchmark
+    public List<HammingIndex.Match> query(Catalogue c, Distance d) {
+        int i = c.rnd.nextInt(c.size);
+        return c.index.query(flip(c.hashes[i], c.rnd.nextInt(4), c.rnd), d.maxDistance, 50, c.ids[i]);
+    }
+
+    static long flip(long hash, int bits, SplittableRandom rnd) {
+        for (int b = 0; b < bits; b++) hash ^= 1L << rnd.nextInt(64);
+        return hash;
+    }
+}
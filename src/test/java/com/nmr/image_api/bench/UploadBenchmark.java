@@ -0,0 +1,53 @@
+package com.nmr.image_api.bench;
+
+import com.nmr.image_api.service.ImageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ImageService#upload} end to end (stream to disk + SHA-256, dimension probe, blob store, row insert) per
+ * corpus size and format. Each invocation appends a counter after the image data so no upload deduplicates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class UploadBenchmark {
+
+    @Param({"jpeg", "png", "gif"})
+    public String format;
+
+    @Param({"640x480", "1920x1080", "3000x2000"})
+    public String dimensions;
+
+    private BenchContext bench;
+    private ImageService images;
+    private byte[] template;
+    private long counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        bench = BenchContext.start("upload-bench");
+        images = bench.bean(ImageService.class);
+        int[] wh = ImageCorpus.dimensions(dimensions);
+        template = ImageCorpus.encode(wh[0], wh[1], format, dimensions.hashCode());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bench.close();
+    }
+
+    @Benchmark
+    public long upload() {
+        byte[] data = ByteBuffer.allocate(template.length + Long.BYTES).put(template).putLong(counter++).array();
+        MockMultipartFile file = new MockMultipartFile("file", "f." + format, ImageCorpus.contentType(format), data);
+        return images.upload(file, "bench", "ref" + (counter & 1023), "bench").getId();
+    }
+}
@@ -0,0 +1,45 @@
+package com.nmr.image_api.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageMetricsTest {
+
+    @TempDir
+    Path storage;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void download_tagsCacheAndStatus_andCountsServedBytes() {
+        ImageMetrics m = new ImageMetrics(registry, storage.toString());
+        m.download("id", true, 200, 1000, TimeUnit.MILLISECONDS.toNanos(3));
+        m.download("id", false, 304, 0, TimeUnit.MILLISECONDS.toNanos(1));
+        m.ingested(500);
+
+        assertEquals(1, registry.get("image.download").tags("endpoint", "id", "cache", "hit", "status", "200").timer().count());
+        assertEquals(1, registry.get("image.download").tags("cache", "miss", "status", "304").timer().count());
+        assertEquals(1000, registry.get("image.bytes").tag("direction", "served").counter().count());
+        assertEquals(500, registry.get("image.bytes").tag("direction", "ingested").counter().count());
+    }
+
+    @Test
+    void scanStorage_updatesSizeAndFileCountGauges() throws Exception {
+        Files.createDirectories(storage.resolve("ab/cd"));
+        Files.write(storage.resolve("ab/cd/one"), new byte[100]);
+        Files.write(storage.resolve("two"), new byte[23]);
+        ImageMetrics m = new ImageMetrics(registry, storage.toString());
+
+        m.scanStorage();
+
+        assertEquals(123, registry.get("image.storage.bytes").gauge().value());
+        assertEquals(2, registry.get("image.storage.files").gauge().value());
+    }
+}
@@ -0,0 +1,108 @@
+package com.nmr.image_api.repo;
+
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** The batched reference lookups behind GET /images/refs and the purge queries, against the Flyway schema. */
+@DataJpaTest(showSql = false)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:repo-test;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+class ImageAssetRepositoryTest {
+
+    private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Autowired
+    ImageAssetRepository repo;
+
+    private long a1, a2, b1, b2Tie, c1;
+
+    @BeforeEach
+    void setUp() {
+        repo.deleteAll();
+        a1 = save("a", "product", 0);
+        a2 = save("a", "product", 60);
+        b1 = save("b", "product", 30);
+        b2Tie = save("b", "product", 30);
+        c1 = save("c", "product", 0);
+        save("a", "user", 120); // same id, other type
+    }
+
+    @Test
+    void findByReferences_returnsAllImages_newestFirstPerReference() {
+        List<Long> ids = repo.findByReferences("product", List.of("b", "a")).stream().map(ImageAsset::getId).toList();
+
+        assertEquals(List.of(a2, a1, b2Tie, b1), ids);
+    }
+
+    @Test
+    void findLatestByReferences_returnsOnePerReference_tiesGoToTheHigherId() {
+        List<Long> ids = repo.findLatestByReferences("product", List.of("a", "b", "c", "missing"))
+                .stream().map(ImageAsset::getId).toList();
+
+        assertEquals(List.of(a2, b2Tie, c1), ids);
+    }
+
+    @Test
+    void catalogueState_changesOnInsertDeleteAndEveryUpdate() {
+        CatalogueState before = repo.catalogueState();
+        assertEquals(6, before.rows());
+
+        repo.updateStatus(a1, ImageStatus.MISSING);
+        CatalogueState updated = repo.catalogueState();
+        assertEquals(before.versionSum() + 1, updated.versionSum());
+
+        repo.deleteById(c1);
+        long replacement = save("c", "product", 0); // same row count as before the delete
+        CatalogueState replaced = repo.catalogueState();
+        assertEquals(updated.rows(), replaced.rows());
+        assertNotEquals(updated, replaced);
+        assertTrue(replacement > c1);
+    }
+
+    @Test
+    void purgeBatches_selectByReferencesOrCutoff_inIdOrderUpToTheMaxId_andDeleteSetBased() {
+        long late = save("a", "product", 300);
+        long upTo = repo.maxId();
+        save("a", "product", 0); // uploaded after the job was created
+
+        List<Long> refs = repo.findPurgeBatchByReferences("product", List.of("a", "c"), null, 0, upTo, Limit.of(10))
+                .stream().map(ImageAsset::getId).toList();
+        assertEquals(List.of(a1, a2, c1, late), refs);
+        List<Long> old = repo.findPurgeBatchByReferences("product", List.of("a", "c"), T0.plusSeconds(60), a1, upTo,
+                Limit.of(10)).stream().map(ImageAsset::getId).toList();
+        assertEquals(List.of(c1), old);
+        List<Long> retention = repo.findPurgeBatch(null, T0.plusSeconds(31), 0, upTo, Limit.of(3))
+                .stream().map(ImageAsset::getId).toList();
+        assertEquals(List.of(a1, b1, b2Tie), retention);
+
+        assertEquals(2, repo.deleteByIds(List.of(a1, c1, -1L)));
+        assertFalse(repo.existsById(a1));
+        assertEquals(6, repo.count());
+    }
+
+    private long save(String referenceId, String referenceType, long secondsAfterT0) {
+        ImageAsset a = new ImageAsset();
+        a.setOriginalFilename(referenceId + ".png");
+        a.setStoredFilename("x/" + referenceId);
+        a.setContentType("image/png");
+        a.setSizeBytes(1);
+        a.setUploadedBy("test");
+        a.setUploadedAt(T0.plusSeconds(secondsAfterT0));
+        a.setChecksumSha256("0".repeat(64));
+        a.setReferenceId(referenceId);
+        a.setReferenceType(referenceType);
+        return repo.saveAndFlush(a).getId();
+    }
+}
@@ -0,0 +1,35 @@
+package com.nmr.image_api.repo;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Checks that the migrated schema answers the /images/ref lookup from idx_image_asset_ref_lookup. */
+class ReferenceLookupIndexTest {
+
+    private static final String URL = "jdbc:h2:mem:ref-index;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+    @Test
+    void latestByReference_usesCompositeIndex() throws Exception {
+        Flyway.configure().dataSource(URL, "sa", "").load().migrate();
+
+        try (Connection c = DriverManager.getConnection(URL, "sa", "");
+             Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("""
+                     explain select * from image_asset
+                     where reference_id = 'r1' and reference_type = 'user'
+                     order by uploaded_at desc
+                     fetch first 1 rows only""")) {
+            assertTrue(rs.next());
+            String plan = rs.getString(1);
+            assertTrue(plan.contains("IDX_IMAGE_ASSET_REF_LOOKUP: REFERENCE_ID = 'r1'"), plan);
+            assertFalse(plan.contains("tableScan"), plan);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.metrics.ImageMetrics;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import com.nmr.image_api.repo.StoredBlobRepository;
+import com.nmr.image_api.storage.DirectoryBlobStore;
+import com.nmr.image_api.web.BadRequestException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class BatchUploadServiceTest {
+
+    @TempDir
+    Path tmp;
+
+    private ImageAssetRepository repo;
+    private StoredBlobRepository blobs;
+    private BatchUploadService batch;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repo = mock(ImageAssetRepository.class);
+        blobs = mock(StoredBlobRepository.class);
+        ImageService images = new ImageService(new DirectoryBlobStore(tmp), repo, blobs, new DescriptorCache(100, Duration.ofMinutes(5)),
+                new ImageMetrics(new SimpleMeterRegistry(), tmp.toString()), mock(ProcessingQueue.class),
+                TransactionOperations.withoutTransaction());
+        batch = new BatchUploadService(images, 2, 10);
+    }
+
+    @Test
+    void mixedBatch_reportsPerFileStatus_andInsertsOnce() {
+        AtomicLong ids = new AtomicLong();
+        when(repo.saveAll(anyList())).thenAnswer(inv -> {
+            List<ImageAsset> rows = inv.getArgument(0);
+            rows.forEach(a -> a.setId(ids.incrementAndGet()));
+            return rows;
+        });
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) files.add(file("f" + i + ".png", "image/png", "bytes-" + i));
+        files.set(3, file("notes.txt", "text/plain", "hello"));
+
+        List<BatchUploadService.Result> results = batch.upload(files, "me", List.of("a", "b", "c", "d", "e", "f"), "t");
+
+        assertEquals(6, results.size());
+        for (int i = 0; i < 6; i++) assertEquals(i, results.get(i).index());
+        assertFalse(results.get(3).ok());
+        assertEquals("only image/* allowed", results.get(3).error());
+        assertEquals("f", results.get(5).asset().getReferenceId());
+        assertEquals(5, results.stream().filter(BatchUploadService.Result::ok).count());
+        verify(repo, times(1)).saveAll(anyList());
+        verify(repo, never()).save(any());
+    }
+
+    @Test
+    void referenceIdsMustMatchFiles() {
+        List<MultipartFile> files = List.of(file("a.png", "image/png", "a"), file("b.png", "image/png", "b"));
+        assertThrows(BadRequestException.class, () -> batch.upload(files, null, List.of("1", "2", "3"), "t"));
+        assertThrows(BadRequestException.class, () -> batch.upload(
+                java.util.Collections.nCopies(11, files.get(0)), null, List.of("1"), "t"));
+    }
+
+    @Test
+    void failedInsert_releasesBlobsAndFailsEveryStagedFile() throws Exception {
+        when(repo.saveAll(anyList())).thenThrow(new DataAccessResourceFailureException("db down"));
+        when(blobs.deleteIfUnreferenced(any())).thenReturn(1);
+
+        List<BatchUploadService.Result> results = batch.upload(
+                List.of(file("a.png", "image/png", "a"), file("b.png", "image/png", "b")), null, List.of("r"), "t");
+
+        assertTrue(results.stream().noneMatch(BatchUploadService.Result::ok));
+        verify(blobs, times(2)).release(any());
+        try (var s = Files.walk(tmp)) {
+            assertEquals(0, s.filter(Files::isRegularFile).count());
+        }
+    }
+
+    private static MockMultipartFile file(String name, String type, String content) {
+        return new MockMultipartFile("file", name, type, content.getBytes());
+    }
+}
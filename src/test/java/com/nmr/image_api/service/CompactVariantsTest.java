@@ -0,0 +1,102 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.bench.ImageCorpus;
+import com.nmr.image_api.storage.BlobSource;
+import com.nmr.image_api.storage.DirectoryBlobStore;
+import com.nmr.image_api.util.HashUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactVariantsTest {
+
+    private static final String BROWSER = "image/avif,image/webp,image/apng,image/svg+xml,image/*,*/*;q=0.8";
+
+    @TempDir
+    Path tmp;
+
+    private VariantService variants;
+    private CompactVariants compact;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path storage = Files.createDirectories(tmp.resolve("storage"));
+        variants = new VariantService(storage.toString(), tmp.resolve("derivatives").toString(), DataSize.ofMegabytes(50));
+        compact = new CompactVariants(variants, new DirectoryBlobStore(storage), true, 80, 0.2, DataSize.ofKilobytes(16));
+    }
+
+    @Test
+    void negotiation_needsAnImageRangeThatRanksJpegHighEnough() {
+        assertTrue(CompactVariants.prefersCompact(BROWSER, MediaType.IMAGE_PNG));
+        assertTrue(CompactVariants.prefersCompact("image/jpeg", MediaType.IMAGE_PNG));
+        assertFalse(CompactVariants.prefersCompact("*/*", MediaType.IMAGE_PNG));
+        assertFalse(CompactVariants.prefersCompact(null, MediaType.IMAGE_PNG));
+        assertFalse(CompactVariants.prefersCompact("image/png", MediaType.IMAGE_PNG));
+        assertFalse(CompactVariants.prefersCompact("image/png, image/*;q=0.5", MediaType.IMAGE_PNG));
+        assertFalse(CompactVariants.prefersCompact("image/*, image/jpeg;q=0", MediaType.IMAGE_PNG));
+        assertFalse(CompactVariants.prefersCompact("not a media type", MediaType.IMAGE_PNG));
+    }
+
+    @Test
+    void largeOpaquePng_isServedAsSmallerProgressiveJpegOnceRendered() throws Exception {
+        DownloadDescriptor d = store(ImageCorpus.encode(800, 600, "png", 7), MediaType.IMAGE_PNG);
+
+        compact.prepare(d.checksumSha256(), BlobSource.of(original(d)), "image/png", d.sizeBytes());
+        CompactVariants.Compact c = compact.select(d, BROWSER);
+
+        assertNotNull(c);
+        assertEquals(MediaType.IMAGE_JPEG, c.mediaType());
+        assertTrue(c.sizeBytes() < d.sizeBytes() * 0.8, c.sizeBytes() + " vs " + d.sizeBytes());
+        assertTrue(c.etag().startsWith("W/\"" + d.checksumSha256()));
+        assertEquals(800, ImageIO.read(c.path().toFile()).getWidth());
+        assertNull(compact.select(d, "*/*"));
+    }
+
+    @Test
+    void transparentPng_keepsItsOriginal() throws Exception {
+        BufferedImage img = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 300; y++) for (int x = 0; x < 300; x++) img.setRGB(x, y, (x * 7 ^ y * 13) << 8 | x);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", bos);
+        DownloadDescriptor d = store(bos.toByteArray(), MediaType.IMAGE_PNG);
+
+        compact.prepare(d.checksumSha256(), BlobSource.of(original(d)), "image/png", d.sizeBytes());
+
+        assertNull(compact.select(d, BROWSER));
+        assertNull(variants.find(d.checksumSha256(), VariantSpec.compactJpeg(80)));
+    }
+
+    @Test
+    void failedRead_isNotRemembered() throws Exception {
+        DownloadDescriptor d = store(ImageCorpus.encode(800, 600, "png", 3), MediaType.IMAGE_PNG);
+
+        compact.prepare(d.checksumSha256(), BlobSource.of(tmp.resolve("unreadable")), "image/png", d.sizeBytes());
+        assertNull(compact.select(d, BROWSER));
+
+        compact.prepare(d.checksumSha256(), BlobSource.of(original(d)), "image/png", d.sizeBytes());
+        assertNotNull(compact.select(d, BROWSER));
+    }
+
+    private Path original(DownloadDescriptor d) {
+        return tmp.resolve("storage").resolve(d.blobKey());
+    }
+
+    private DownloadDescriptor store(byte[] data, MediaType type) throws Exception {
+        String sum = HashUtil.sha256(data);
+        Path f = tmp.resolve("storage").resolve(ImageService.blobName(sum));
+        Files.createDirectories(f.getParent());
+        Files.write(f, data);
+        return new DownloadDescriptor(1L, ImageService.blobName(sum), type, data.length, sum, "x.png", Instant.now(), "r", "t");
+    }
+}
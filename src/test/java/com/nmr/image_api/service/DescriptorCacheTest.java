@@ -0,0 +1,120 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.web.NotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DescriptorCacheTest {
+
+    private final DescriptorCache cache = new DescriptorCache(100, Duration.ofMinutes(5));
+
+    @Test
+    void concurrentMisses_onVirtualThreads_shareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<DownloadDescriptor>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                results.add(pool.submit(() -> cache.byId(1, () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return descriptor(1);
+                })));
+            }
+            Thread.sleep(50);
+            release.countDown();
+            for (Future<DownloadDescriptor> f : results) assertEquals(1, f.get().id());
+        }
+        assertEquals(1, loads.get());
+        assertTrue(cache.containsId(1));
+    }
+
+    @Test
+    void lookups_recordOneGetEach_andReportWhetherTheCacheAnswered() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        assertFalse(cache.lookupById(5, () -> descriptor(5)).hit());
+        assertTrue(cache.containsId(5));
+        assertTrue(cache.lookupById(5, () -> descriptor(5)).hit());
+
+        assertEquals(1, registry.get("cache.gets").tags("cache", "descriptors.id", "result", "miss").functionCounter().count());
+        assertEquals(1, registry.get("cache.gets").tags("cache", "descriptors.id", "result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void failedLoads_areNotCached() {
+        assertThrows(NotFoundException.class, () -> cache.byId(2, () -> { throw new NotFoundException("Image not found"); }));
+        assertFalse(cache.containsId(2));
+        assertEquals(2, cache.byId(2, () -> descriptor(2)).id());
+    }
+
+    @Test
+    void concurrentMisses_withAFailingLoad_shareOneLoadAndItsException() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<DownloadDescriptor>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                results.add(pool.submit(() -> cache.byId(4, () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    throw new NotFoundException("Image not found");
+                })));
+            }
+            Thread.sleep(50);
+            release.countDown();
+            for (Future<DownloadDescriptor> f : results) {
+                ExecutionException e = assertThrows(ExecutionException.class, f::get);
+                assertInstanceOf(NotFoundException.class, e.getCause());
+            }
+        }
+        assertEquals(1, loads.get());
+        assertFalse(cache.containsId(4));
+    }
+
+    @Test
+    void invalidate_duringALoad_keepsItsResultOutOfTheCache() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1), release = new CountDownLatch(1);
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<DownloadDescriptor> stale = pool.submit(() -> cache.byId(3, () -> {
+                loading.countDown();
+                await(release);
+                return descriptor(3);
+            }));
+            loading.await();
+            cache.invalidate(3, "r", "t");
+            release.countDown();
+            assertEquals(3, stale.get().id());
+        }
+        AtomicInteger loads = new AtomicInteger();
+        cache.byId(3, () -> { loads.incrementAndGet(); return descriptor(3); });
+        assertEquals(1, loads.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static DownloadDescriptor descriptor(long id) {
+        return new DownloadDescriptor(id, "k", MediaType.IMAGE_PNG, 1, "0".repeat(64), "a.png", Instant.now(), "r", "t");
+    }
+}
@@ -0,0 +1,89 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.storage.BlobRegion;
+import com.nmr.image_api.web.NotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotBlobCacheTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void concurrentMisses_shareOneRead() throws Exception {
+        Path file = Files.writeString(tmp.resolve("pack"), "headerPAYLOAD");
+        HotBlobCache cache = new HotBlobCache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), false);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ByteBuffer>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(pool.submit(() -> {
+                    go.await();
+                    return cache.get("\"k\"", () -> {
+                        loads.incrementAndGet();
+                        return new BlobRegion(file, 6, 7);
+                    });
+                }));
+            }
+            go.countDown();
+            for (Future<ByteBuffer> f : results) assertEquals("PAYLOAD", text(f.get()));
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void views_areReadOnly_andIndependent_offHeapToo() throws Exception {
+        Path file = Files.writeString(tmp.resolve("blob"), "abc");
+        HotBlobCache cache = new HotBlobCache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), true);
+
+        ByteBuffer first = cache.get("k", () -> new BlobRegion(file, 0, 3));
+        first.get();
+
+        assertTrue(first.isReadOnly());
+        assertTrue(first.isDirect());
+        assertEquals("abc", text(cache.getIfPresent("k")));
+        assertNull(cache.getIfPresent("other"));
+    }
+
+    @Test
+    void admits_onlyObjectsUpToTheObjectLimit() {
+        HotBlobCache cache = new HotBlobCache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(256), false);
+        assertTrue(cache.admits(256 * 1024));
+        assertFalse(cache.admits(256 * 1024 + 1));
+        assertFalse(cache.admits(0));
+        assertFalse(new HotBlobCache(DataSize.ofBytes(0), DataSize.ofKilobytes(256), false).admits(10));
+    }
+
+    @Test
+    void missingFile_isNotFound_andNotCached() {
+        HotBlobCache cache = new HotBlobCache(DataSize.ofMegabytes(1), DataSize.ofKilobytes(64), false);
+        assertThrows(NotFoundException.class, () -> cache.get("k", () -> new BlobRegion(tmp.resolve("gone"), 0, 3)));
+        assertNull(cache.getIfPresent("k"));
+    }
+
+    private static String text(ByteBuffer b) {
+        byte[] a = new byte[b.remaining()];
+        b.duplicate().get(a);
+        return new String(a, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,87 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.storage.BlobStore;
+import com.nmr.image_api.storage.DirectoryBlobStore;
+import com.nmr.image_api.util.HashUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageArchiveServiceTest {
+
+    @TempDir
+    Path tmp;
+
+    private BlobStore store;
+    private ImageArchiveService archives;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new DirectoryBlobStore(tmp);
+        archives = new ImageArchiveService(store);
+    }
+
+    @Test
+    void zip_hasOneEntryPerStoredImage_underItsReference() throws Exception {
+        List<ImageAsset> images = List.of(
+                image(1, "r1", "cat.png", "meow"),
+                image(2, "r1", "../../etc/passwd", "sneaky"),
+                image(3, "r2", "gone.png", null));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(2, archives.writeZip(images, out));
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (ZipEntry e; (e = zip.getNextEntry()) != null; ) {
+                entries.put(e.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(Map.of("r1/1-cat.png", "meow", "r1/2-.._.._etc_passwd", "sneaky"), entries);
+    }
+
+    @Test
+    void multipart_framesEachImageWithItsHeaders() throws Exception {
+        List<ImageAsset> images = List.of(image(1, "r1", "a.png", "first"), image(2, "r1", "b.png", "second"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(2, archives.writeMultipart(images, "XYZ", out));
+
+        String body = out.toString(StandardCharsets.US_ASCII);
+        assertTrue(body.startsWith("--XYZ\r\nContent-Type: image/png\r\nContent-Length: 5\r\n"), body);
+        assertTrue(body.contains("Content-Location: /images/2\r\n"), body);
+        assertTrue(body.contains("\r\n\r\nfirst\r\n--XYZ\r\n"), body);
+        assertTrue(body.endsWith("\r\n\r\nsecond\r\n--XYZ--\r\n"), body);
+    }
+
+    /** An image row; {@code content} null means its blob is missing. */
+    private ImageAsset image(long id, String referenceId, String filename, String content) throws Exception {
+        byte[] data = (content == null ? "missing" + id : content).getBytes(StandardCharsets.UTF_8);
+        String sum = HashUtil.sha256(data);
+        ImageAsset a = new ImageAsset();
+        a.setId(id);
+        a.setReferenceId(referenceId);
+        a.setOriginalFilename(filename);
+        a.setContentType("image/png");
+        a.setChecksumSha256(sum);
+        a.setStoredFilename(ImageService.blobName(sum));
+        a.setUploadedAt(Instant.now());
+        if (content != null) store.put(a.getStoredFilename(), Files.write(tmp.resolve("staged-" + id), data));
+        return a;
+    }
+}
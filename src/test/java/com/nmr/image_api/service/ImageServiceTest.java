@@ -1,45 +1,76 @@
 package com.nmr.image_api.service;
 
+import com.nmr.image_api.dto.ImageMetaPage;
 import com.nmr.image_api.dto.ImageMetaResponse;
 import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import com.nmr.image_api.metrics.ImageMetrics;
 import com.nmr.image_api.repo.ImageAssetRepository;
+import com.nmr.image_api.repo.StoredBlobRepository;
+import com.nmr.image_api.storage.DirectoryBlobStore;
+import com.nmr.image_api.web.BadRequestException;
+import com.nmr.image_api.web.PreconditionFailedException;
+import com.nmr.image_api.util.HashUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.springframework.core.io.Resource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionOperations;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 class ImageServiceTest {
 
     private Path tmpDir;
     private ImageAssetRepository repo;
+    private StoredBlobRepository blobs;
+    private ProcessingQueue processing;
     private ImageService svc;
 
     @BeforeEach
     void setUp() throws IOException {
         tmpDir = Files.createTempDirectory("imgsvc-test");
         repo = mock(ImageAssetRepository.class);
-        svc = new ImageService(tmpDir.toString(), repo);
+        blobs = mock(StoredBlobRepository.class);
+        processing = mock(ProcessingQueue.class);
+        svc = new ImageService(new DirectoryBlobStore(tmpDir), repo, blobs, new DescriptorCache(100, Duration.ofMinutes(5)),
+                new ImageMetrics(new SimpleMeterRegistry(), tmpDir.toString()), processing,
+                TransactionOperations.withoutTransaction());
     }
 
     @AfterEach
     void tearDown() throws IOException {
-        try (var s = Files.list(tmpDir)) {
-            s.forEach(p -> { try { Files.deleteIfExists(p); } catch (IOException ignored) {} });
+        try (var s = Files.walk(tmpDir)) {
+            s.sorted(Comparator.reverseOrder())
+             .forEach(p -> { try { Files.deleteIfExists(p); } catch (IOException ignored) {} });
         }
-        Files.deleteIfExists(tmpDir);
     }
 
     @Test
@@ -70,6 +101,180 @@ class ImageServiceTest {
         assertEquals("hello.png", meta.originalFilename());
     }
 
+    @Test
+    void upload_streamsToDisk_hashes_andQueuesPostProcessing() throws Exception {
+        BufferedImage img = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", bos);
+        byte[] png = bos.toByteArray();
+        MockMultipartFile mf = new MockMultipartFile("file", "pic.png", "image/png", png);
+
+        when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+        ImageAsset out = svc.upload(mf, null, "ref1", "typeA");
+        assertEquals(HashUtil.sha256(png), out.getChecksumSha256());
+        assertEquals(png.length, out.getSizeBytes());
+        assertEquals(ImageStatus.PROCESSING, out.getStatus());
+        assertNull(out.getWidth()); // probed by ProcessingQueue
+        verify(processing).submit(List.of(out));
+        assertEquals(out.getChecksumSha256().substring(0, 2) + "/" + out.getChecksumSha256().substring(2, 4)
+                + "/" + out.getChecksumSha256(), out.getStoredFilename());
+        assertArrayEquals(png, Files.readAllBytes(tmpDir.resolve(out.getStoredFilename())));
+        verify(blobs).saveAndFlush(any());
+        try (var s = Files.list(tmpDir)) {
+            assertTrue(s.noneMatch(p -> p.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    void upload_sameBytesTwice_sharesOneBlob() throws Exception {
+        byte[] data = "same-bytes".getBytes();
+        when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+        when(blobs.retain(anyString())).thenReturn(0, 1);
+
+        ImageAsset first = svc.upload(new MockMultipartFile("file", "a.png", "image/png", data), "me", "r1", "t");
+        when(blobs.existsById(first.getChecksumSha256())).thenReturn(true);
+        ImageAsset second = svc.upload(new MockMultipartFile("file", "b.png", "image/png", data), "me", "r2", "t");
+
+        assertEquals(first.getStoredFilename(), second.getStoredFilename());
+        verify(blobs, times(1)).saveAndFlush(any());
+        verify(blobs, times(2)).retain(first.getChecksumSha256());
+        try (var s = Files.walk(tmpDir)) {
+            assertEquals(1, s.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void deleteImage_sharedBlob_removesFileOnlyWithLastReference() throws Exception {
+        byte[] data = "shared".getBytes();
+        when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+        ImageAsset a = svc.upload(new MockMultipartFile("file", "a.png", "image/png", data), "me", "r1", "t");
+        Path blob = tmpDir.resolve(a.getStoredFilename());
+        a.setId(10L);
+        when(repo.findById(10L)).thenReturn(Optional.of(a));
+
+        when(blobs.deleteIfUnreferenced(a.getChecksumSha256())).thenReturn(0);
+        svc.deleteImage(10L);
+        assertTrue(Files.exists(blob));
+
+        when(blobs.deleteIfUnreferenced(a.getChecksumSha256())).thenReturn(1);
+        svc.deleteImage(10L);
+        assertFalse(Files.exists(blob));
+        verify(blobs, times(2)).release(a.getChecksumSha256());
+    }
+
+    @Test
+    void deleteImage_referenceUpdateFails_keepsTheFile() throws Exception {
+        byte[] data = "kept".getBytes();
+        when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+        ImageAsset a = svc.upload(new MockMultipartFile("file", "a.png", "image/png", data), "me", "r1", "t");
+        a.setId(11L);
+        when(repo.findById(11L)).thenReturn(Optional.of(a));
+        when(blobs.release(a.getChecksumSha256())).thenThrow(new DataIntegrityViolationException("lost"));
+
+        assertThrows(DataIntegrityViolationException.class, () -> svc.deleteImage(11L));
+
+        // the row delete is rolled back with it, so the row still needs the file
+        assertTrue(Files.exists(tmpDir.resolve(a.getStoredFilename())));
+    }
+
+    @Test
+    void upload_rowNotSaved_releasesTheBlobAgain() throws Exception {
+        byte[] data = "orphan".getBytes();
+        when(repo.save(any())).thenThrow(new DataIntegrityViolationException("constraint"));
+        when(blobs.deleteIfUnreferenced(HashUtil.sha256(data))).thenReturn(1);
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> svc.upload(new MockMultipartFile("file", "a.png", "image/png", data), "me", "r1", "t"));
+
+        verify(blobs).release(HashUtil.sha256(data));
+        verify(processing, never()).submit(any());
+        try (var s = Files.walk(tmpDir)) {
+            assertEquals(0, s.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void upload_storeFails_leavesNoStagedFileAndNoRow() throws Exception {
+        DirectoryBlobStore store = spy(new DirectoryBlobStore(tmpDir));
+        doThrow(new IOException("disk full")).when(store).put(anyString(), any());
+        ImageService failing = new ImageService(store, repo, blobs, new DescriptorCache(100, Duration.ofMinutes(5)),
+                new ImageMetrics(new SimpleMeterRegistry(), tmpDir.toString()), processing,
+                TransactionOperations.withoutTransaction());
+
+        assertThrows(BadRequestException.class,
+                () -> failing.upload(new MockMultipartFile("file", "a.png", "image/png", "x".getBytes()), "me", "r1", "t"));
+
+        verify(repo, never()).save(any());
+        try (var s = Files.walk(tmpDir)) {
+            assertEquals(0, s.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void getMetaPage_returnsCursorOnlyWhenMoreRowsExist() {
+        List<ImageAsset> rows = new ArrayList<>();
+        for (long id = 5; id <= 7; id++) {
+            ImageAsset a = new ImageAsset();
+            a.setId(id);
+            rows.add(a);
+        }
+        when(repo.findPage(eq(4L), eq("typeA"), isNull(), eq(Limit.of(3)))).thenReturn(rows);
+        ImageMetaPage page = svc.getMetaPage(4L, 2, "typeA", " ");
+        assertEquals(List.of(5L, 6L), page.items().stream().map(ImageMetaResponse::id).toList());
+        assertEquals(6L, page.nextCursor());
+
+        when(repo.findPage(eq(6L), isNull(), isNull(), eq(Limit.of(3)))).thenReturn(rows.subList(2, 3));
+        ImageMetaPage last = svc.getMetaPage(6L, 2, null, null);
+        assertEquals(1, last.items().size());
+        assertNull(last.nextCursor());
+
+        assertThrows(RuntimeException.class, () -> svc.getMetaPage(null, 0, null, null));
+    }
+
+    @Test
+    void resolve_isCachedUntilUpdateOrDelete() {
+        ImageAsset a = new ImageAsset();
+        a.setId(4L);
+        a.setStoredFilename("aa/bb/x");
+        a.setContentType("image/jpeg");
+        a.setChecksumSha256("abc");
+        a.setOriginalFilename("x.jpg");
+        a.setReferenceId("r");
+        a.setReferenceType("t");
+        when(repo.findById(4L)).thenReturn(Optional.of(a));
+        when(repo.saveAndFlush(any())).thenAnswer(inv -> inv.getArgument(0));
+
+        DownloadDescriptor d = svc.resolve(4L);
+        assertEquals("\"abc\"", d.etag());
+        assertEquals(MediaType.IMAGE_JPEG, d.mediaType());
+        svc.resolve(4L);
+        verify(repo, times(1)).findById(4L);
+
+        svc.updateMeta(4L, null, "renamed.jpg", null);
+        assertEquals("renamed.jpg", svc.resolve(4L).filename());
+        verify(repo, times(3)).findById(4L);
+    }
+
+    @Test
+    void updateMeta_checksThePreconditionAgainstTheRowItSaves() {
+        ImageAsset a = new ImageAsset();
+        a.setId(5L);
+        a.setOriginalFilename("x.jpg");
+        a.setUploadedBy("me");
+        a.setReferenceId("r");
+        a.setReferenceType("t");
+        when(repo.findById(5L)).thenReturn(Optional.of(a));
+
+        assertThrows(PreconditionFailedException.class, () -> svc.updateMeta(5L, "you", null, m -> false));
+        verify(repo, never()).saveAndFlush(any());
+
+        // changed by another writer between loading and saving
+        when(repo.saveAndFlush(any())).thenThrow(new ObjectOptimisticLockingFailureException(ImageAsset.class, 5L));
+        assertThrows(PreconditionFailedException.class, () -> svc.updateMeta(5L, "you", null, m -> true));
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> svc.updateMeta(5L, "you", null, null));
+    }
+
     @Test
     void getMediaType_parsesOrDefaults() {
         ImageAsset a = new ImageAsset();
@@ -83,6 +288,28 @@ class ImageServiceTest {
         assertEquals(MediaType.APPLICATION_OCTET_STREAM, svc.getMediaType(2L));
     }
 
+    @Test
+    void findByReferences_queriesInChunks_andKeepsRequestOrder() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < ImageService.IN_CHUNK + 10; i++) ids.add("r" + i);
+        when(repo.findLatestByReferences(eq("t"), anyList())).thenAnswer(inv -> {
+            List<String> chunk = inv.getArgument(1);
+            // database order, not request order
+            return chunk.stream().sorted().filter(id -> id.endsWith("7")).map(id -> {
+                ImageAsset a = new ImageAsset();
+                a.setReferenceId(id);
+                return a;
+            }).toList();
+        });
+
+        List<ImageAsset> found = svc.findByReferences("t", ids, true);
+
+        verify(repo, times(2)).findLatestByReferences(eq("t"), anyList());
+        List<String> expected = ids.stream().filter(id -> id.endsWith("7")).toList();
+        assertEquals(expected, found.stream().map(ImageAsset::getReferenceId).toList());
+        assertThrows(BadRequestException.class, () -> svc.findByReferences("t", List.of(" "), false));
+    }
+
     @Test
     void getByReference_missingFile_throws() {
         ImageAsset a = new ImageAsset();
@@ -107,8 +334,30 @@ class ImageServiceTest {
 
         svc.deleteImage(3L);
 
-        verify(repo).delete(a);
+        verify(repo).deleteByIds(List.of(3L));
         assertFalse(Files.exists(f));
     }
 
+    @Test
+    void deleteAll_releasesReferencesSetBased_andLeavesFilesToTheCaller() throws Exception {
+        byte[] shared = "shared".getBytes(), single = "single".getBytes();
+        when(repo.save(any())).thenAnswer(inv -> inv.getArgument(0));
+        ImageAsset a = svc.upload(new MockMultipartFile("file", "a.png", "image/png", shared), "me", "r1", "t");
+        ImageAsset b = svc.upload(new MockMultipartFile("file", "b.png", "image/png", shared), "me", "r1", "t");
+        ImageAsset c = svc.upload(new MockMultipartFile("file", "c.png", "image/png", single), "me", "r2", "t");
+        a.setId(1L);
+        b.setId(2L);
+        c.setId(3L);
+
+        List<String> keys = svc.deleteAll(List.of(a, b, c));
+
+        verify(repo).deleteByIds(List.of(1L, 2L, 3L));
+        verify(blobs).releaseAll(List.of(HashUtil.sha256(shared)), 2L);
+        verify(blobs).releaseAll(List.of(HashUtil.sha256(single)), 1L);
+        verify(blobs).deleteUnreferenced(Set.of(HashUtil.sha256(shared), HashUtil.sha256(single)));
+        verify(blobs, never()).release(anyString());
+        assertEquals(List.of(a.getStoredFilename(), c.getStoredFilename()), keys);
+        assertTrue(Files.exists(tmpDir.resolve(a.getStoredFilename())));
+    }
+
 }
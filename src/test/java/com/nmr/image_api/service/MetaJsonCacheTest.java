@@ -0,0 +1,90 @@
+package com.nmr.image_api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import com.nmr.image_api.repo.CatalogueState;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MetaJsonCacheTest {
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+    private final ImageAssetRepository repo = mock(ImageAssetRepository.class);
+    private final MetaJsonCache cache = new MetaJsonCache(repo, mapper, DataSize.ofMegabytes(1));
+
+    @Test
+    void rowJson_isReusedUntilTheVersionChanges() throws Exception {
+        ImageAsset a = row(1);
+        byte[] first = cache.json(a);
+        assertSame(first, cache.json(a));
+
+        a.setUploadedBy("someone else");
+        assertSame(first, cache.json(a)); // same version: the cache trusts it
+
+        a.setVersion(1);
+        byte[] second = cache.json(a);
+        assertNotSame(first, second);
+        assertEquals("someone else", mapper.readTree(second).get("uploadedBy").asText());
+    }
+
+    @Test
+    void jsonArray_matchesWhatJacksonWouldWriteForTheList() throws Exception {
+        List<ImageAsset> rows = List.of(row(1), row(2), row(3));
+        cache.json(rows.get(1)); // partly warm
+
+        byte[] json = cache.jsonArray(rows);
+
+        assertArrayEquals(mapper.writeValueAsBytes(rows.stream().map(ImageService::toMeta).toList()), json);
+        assertEquals("[]", new String(cache.jsonArray(List.of())));
+    }
+
+    @Test
+    void catalogue_isRebuiltOnlyWhenTheStateChanges() throws Exception {
+        when(repo.catalogueState()).thenReturn(new CatalogueState(2L, 3L, 0L), new CatalogueState(2L, 3L, 1L));
+        when(repo.findAll(any(Sort.class))).thenReturn(List.of(row(1), row(2)));
+
+        String etag = cache.catalogueEtag();
+        MetaJsonCache.Catalogue c = cache.catalogue(etag);
+        assertTrue(etag.startsWith("W/\""), etag);
+        assertSame(c, cache.catalogue(etag));
+        verify(repo, times(1)).findAll(any(Sort.class));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(c.gzip()))) {
+            assertArrayEquals(c.json(), in.readAllBytes());
+        }
+
+        String changed = cache.catalogueEtag();
+        assertNotEquals(etag, changed);
+        assertNotSame(c, cache.catalogue(changed));
+    }
+
+    private static ImageAsset row(long id) {
+        ImageAsset a = new ImageAsset();
+        a.setId(id);
+        a.setOriginalFilename("f" + id + ".png");
+        a.setStoredFilename("x/" + id);
+        a.setContentType("image/png");
+        a.setSizeBytes(100 + id);
+        a.setUploadedBy("test");
+        a.setUploadedAt(Instant.parse("2025-01-01T00:00:00Z").plusSeconds(id));
+        a.setChecksumSha256("0".repeat(64));
+        a.setReferenceId("r" + id);
+        a.setReferenceType("user");
+        a.setStatus(ImageStatus.READY);
+        return a;
+    }
+}
@@ -0,0 +1,148 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import com.nmr.image_api.entity.ProcessingTask;
+import com.nmr.image_api.metrics.ImageMetrics;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import com.nmr.image_api.repo.ProcessingTaskRepository;
+import com.nmr.image_api.storage.BlobStore;
+import com.nmr.image_api.storage.DirectoryBlobStore;
+import com.nmr.image_api.util.HashUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ProcessingQueueTest {
+
+    @TempDir
+    Path tmp;
+
+    private final ImageAssetRepository images = mock(ImageAssetRepository.class);
+    private final ProcessingTaskRepository tasks = mock(ProcessingTaskRepository.class);
+    private final SimilarityIndex similar = mock(SimilarityIndex.class);
+    private ProcessingQueue queue;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (queue != null) queue.shutdown();
+    }
+
+    private ProcessingQueue queue(long maxBacklog) throws Exception {
+        return queue(maxBacklog, Duration.ofMinutes(10));
+    }
+
+    private ProcessingQueue queue(long maxBacklog, Duration taskTimeout) throws Exception {
+        Path storage = Files.createDirectories(tmp.resolve("storage"));
+        VariantService variants = new VariantService(storage.toString(), tmp.resolve("derivatives").toString(),
+                DataSize.ofMegabytes(10));
+        BlobStore store = new DirectoryBlobStore(storage);
+        queue = new ProcessingQueue(store, images, tasks, variants,
+                new CompactVariants(variants, store, true, 80, 0.2, DataSize.ofKilobytes(16)), similar, new ImageMetrics(new SimpleMeterRegistry(), storage.toString()), 1, 4, maxBacklog, 3,
+                taskTimeout);
+        return queue;
+    }
+
+    /** A stored 40x30 png row in PROCESSING, as ImageService leaves it. */
+    private ImageAsset stored(long id) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "png", bos);
+        String sum = HashUtil.sha256(bos.toByteArray());
+        Path f = tmp.resolve("storage").resolve(ImageService.blobName(sum));
+        Files.createDirectories(f.getParent());
+        Files.write(f, bos.toByteArray());
+        ImageAsset a = new ImageAsset();
+        a.setId(id);
+        a.setStoredFilename(ImageService.blobName(sum));
+        a.setChecksumSha256(sum);
+        a.setContentType("image/png");
+        a.setStatus(ImageStatus.PROCESSING);
+        return a;
+    }
+
+    @Test
+    void process_setsDimensions_rendersThumbnail_andMarksReady() throws Exception {
+        ImageAsset a = stored(7L);
+        queue(100).process(a);
+
+        assertEquals(40, a.getWidth());
+        assertEquals(30, a.getHeight());
+        assertEquals(ImageStatus.READY, a.getStatus());
+        assertNotNull(a.getPerceptualHash());
+        verify(images).completeProcessing(7L, 40, 30, a.getPerceptualHash(), ImageStatus.READY);
+        verify(similar).add(7L, a.getPerceptualHash());
+        try (var s = Files.walk(tmp.resolve("derivatives"))) {
+            assertTrue(s.anyMatch(p -> p.getFileName().toString().endsWith("_144x144_cover.png")));
+        }
+    }
+
+    @Test
+    void submit_persistsTasks_butRunsInlineOverBacklogLimit() throws Exception {
+        when(tasks.countByState(ProcessingTask.State.PENDING)).thenReturn(1L);
+        ImageAsset queued = stored(1L);
+        queue(1).submit(List.of(queued));
+        verify(tasks).saveAll(argThat(l -> ((List<?>) l).size() == 1));
+        assertEquals(ImageStatus.PROCESSING, queued.getStatus());
+
+        ImageAsset inline = stored(2L);
+        queue.submit(List.of(inline)); // backlog is now 1 = max
+        assertEquals(ImageStatus.READY, inline.getStatus());
+        assertEquals(40, inline.getWidth());
+        verify(tasks, times(1)).saveAll(any());
+    }
+
+    @Test
+    void lastFailedAttempt_marksTaskAndImageFailed() throws Exception {
+        ImageAsset a = stored(3L);
+        a.setStoredFilename("aa/bb/missing");
+        ProcessingTask t = new ProcessingTask();
+        t.setId(30L);
+        t.setImageId(3L);
+        t.setState(ProcessingTask.State.PENDING);
+        t.setAttempts(2);
+        when(tasks.findByStateOrderByIdAsc(eq(ProcessingTask.State.PENDING), any())).thenReturn(List.of(t)).thenReturn(List.of());
+        when(tasks.claim(eq(30L), any())).thenReturn(1);
+        when(images.findById(3L)).thenReturn(Optional.of(a));
+
+        queue(100).poll();
+
+        verify(tasks, timeout(5000)).finish(eq(30L), eq(ProcessingTask.State.FAILED), contains("NoSuchFile"));
+        verify(images, timeout(5000)).updateStatus(3L, ImageStatus.FAILED);
+        verify(tasks, never()).deleteById(any());
+    }
+
+    @Test
+    void onlyTasksRunningLongerThanTheTimeout_areRequeued() throws Exception {
+        when(tasks.findImagesWithoutTask(any(), any())).thenReturn(List.of());
+        Instant before = Instant.now();
+        queue(100).recover();
+        verify(tasks).requeueStarted(argThat(cutoff -> !cutoff.isBefore(before.minus(Duration.ofMinutes(10)))
+                && !cutoff.isAfter(Instant.now().minus(Duration.ofMinutes(10)))));
+
+        queue.poll(); // not due again yet
+        verify(tasks, times(1)).requeueStarted(any());
+    }
+
+    @Test
+    void poll_requeuesStaleTasksPeriodically() throws Exception {
+        queue(100, Duration.ZERO).poll();
+        queue.poll();
+        verify(tasks, times(2)).requeueStarted(any());
+    }
+}
@@ -0,0 +1,137 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.dto.PurgeJobResponse;
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.PurgeJob;
+import com.nmr.image_api.metrics.ImageMetrics;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import com.nmr.image_api.repo.PurgeJobRepository;
+import com.nmr.image_api.repo.StoredBlobRepository;
+import com.nmr.image_api.storage.BlobStore;
+import com.nmr.image_api.storage.DirectoryBlobStore;
+import com.nmr.image_api.util.HashUtil;
+import com.nmr.image_api.web.BadRequestException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** resume() is never called, so nothing runs in the background; the tests call step() themselves. */
+class PurgeJobsTest {
+
+    @TempDir
+    Path tmp;
+
+    private final ImageAssetRepository images = mock(ImageAssetRepository.class);
+    private final StoredBlobRepository blobs = mock(StoredBlobRepository.class);
+    private final PurgeJobRepository jobRepo = mock(PurgeJobRepository.class);
+    private BlobStore store;
+    private PurgeJobs purges;
+    private PurgeJob job;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new DirectoryBlobStore(tmp.resolve("storage"));
+        ImageService service = new ImageService(store, images, blobs, new DescriptorCache(100, Duration.ofMinutes(5)),
+                new ImageMetrics(new SimpleMeterRegistry(), tmp.toString()), mock(ProcessingQueue.class),
+                TransactionOperations.withoutTransaction());
+        purges = new PurgeJobs(images, jobRepo, service, 2, Duration.ZERO, 2, 0);
+        when(jobRepo.save(any())).thenAnswer(inv -> {
+            job = inv.getArgument(0);
+            if (job.getId() == null) job.setId(1L);
+            return job;
+        });
+        when(jobRepo.findFirstByStateInOrderByIdAsc(anyCollection())).thenAnswer(inv -> Optional.ofNullable(job)
+                .filter(j -> inv.<Collection<PurgeJob.State>>getArgument(0).contains(j.getState())));
+        when(images.maxId()).thenReturn(100L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        purges.shutdown();
+    }
+
+    @Test
+    void submit_needsReferencesOrACutoff() {
+        assertThrows(BadRequestException.class, () -> purges.submit("product", List.of(" "), null));
+        assertThrows(BadRequestException.class, () -> purges.submit(null, List.of("a"), null));
+        verify(jobRepo, never()).save(any());
+    }
+
+    @Test
+    void step_deletesBatchesUntilNoneAreLeft_thenTheUnreferencedFiles() throws Exception {
+        PurgeJobResponse queued = purges.submit("product", List.of("a", "b", "a"), null);
+        assertEquals(List.of("a", "b"), queued.referenceIds());
+        String shared = put("shared"), kept = put("kept");
+        when(images.findPurgeBatchByReferences(eq("product"), eq(List.of("a", "b")), isNull(), eq(0L), eq(100L), any()))
+                .thenReturn(List.of(row(3, shared), row(5, shared)));
+        when(images.findPurgeBatchByReferences(eq("product"), any(), isNull(), eq(5L), eq(100L), any()))
+                .thenReturn(List.of(row(8, kept)));
+        when(images.findStoredFilenames(List.of(kept))).thenReturn(List.of(kept)); // another row still uses it
+
+        assertTrue(purges.step());
+        assertEquals(PurgeJob.State.RUNNING, job.getState());
+        assertEquals(5, job.getLastId());
+        verify(images).deleteByIds(List.of(3L, 5L));
+        verify(blobs).releaseAll(List.of(HashUtil.sha256("shared".getBytes())), 2L);
+        assertFalse(store.exists(shared));
+
+        assertTrue(purges.step());
+        assertTrue(purges.step());
+        assertFalse(purges.step());
+
+        when(jobRepo.findById(1L)).thenReturn(Optional.of(job));
+        PurgeJobResponse done = purges.status(1L);
+        assertEquals(PurgeJob.State.DONE, done.state());
+        assertEquals(3, done.imagesDeleted());
+        assertEquals(1, done.filesDeleted());
+        assertTrue(store.exists(kept));
+    }
+
+    @Test
+    void step_failingBatch_failsTheJob() {
+        purges.submit(null, null, Instant.parse("2025-01-01T00:00:00Z"));
+        when(images.findPurgeBatch(isNull(), any(), anyLong(), anyLong(), any()))
+                .thenThrow(new QueryTimeoutException("timeout"));
+
+        assertTrue(purges.step());
+
+        assertEquals(PurgeJob.State.FAILED, job.getState());
+        assertTrue(job.getLastError().contains("timeout"));
+        assertFalse(purges.step());
+    }
+
+    /** Stores {@code content} under its content address; returns the key. */
+    private String put(String content) throws Exception {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        String key = ImageService.blobName(HashUtil.sha256(data));
+        store.put(key, Files.write(Files.createTempFile(store.stagingDir(), "upload-", ".tmp"), data));
+        return key;
+    }
+
+    private static ImageAsset row(long id, String key) {
+        ImageAsset a = new ImageAsset();
+        a.setId(id);
+        a.setStoredFilename(key);
+        a.setChecksumSha256(key.substring(key.lastIndexOf('/') + 1));
+        a.setReferenceId("a");
+        a.setReferenceType("product");
+        return a;
+    }
+}
@@ -0,0 +1,163 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.entity.ImageAsset;
+import com.nmr.image_api.entity.ImageStatus;
+import com.nmr.image_api.entity.ScrubOrphan;
+import com.nmr.image_api.entity.ScrubProgress;
+import com.nmr.image_api.metrics.ImageMetrics;
+import com.nmr.image_api.repo.ImageAssetRepository;
+import com.nmr.image_api.repo.ScrubOrphanRepository;
+import com.nmr.image_api.repo.ScrubProgressRepository;
+import com.nmr.image_api.repo.StoredBlobRepository;
+import com.nmr.image_api.storage.BlobStore;
+import com.nmr.image_api.storage.DirectoryBlobStore;
+import com.nmr.image_api.util.HashUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StorageScrubberTest {
+
+    @TempDir
+    Path tmp;
+
+    private final ImageAssetRepository images = mock(ImageAssetRepository.class);
+    private final StoredBlobRepository blobs = mock(StoredBlobRepository.class);
+    private final ScrubProgressRepository progressRepo = mock(ScrubProgressRepository.class);
+    private final ScrubOrphanRepository orphans = mock(ScrubOrphanRepository.class);
+    private BlobStore store;
+    private ImageMetrics metrics;
+    private ScrubProgress progress;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new DirectoryBlobStore(tmp.resolve("storage"));
+        metrics = new ImageMetrics(new SimpleMeterRegistry(), tmp.toString());
+        when(progressRepo.findById(StorageScrubber.NAME)).thenAnswer(inv -> Optional.ofNullable(progress));
+        when(progressRepo.save(any())).thenAnswer(inv -> progress = inv.getArgument(0));
+    }
+
+    private StorageScrubber scrubber(boolean repair, int batchSize, Duration orphanGrace) {
+        ImageService service = new ImageService(store, images, blobs, new DescriptorCache(100, Duration.ofMinutes(5)),
+                metrics, mock(ProcessingQueue.class), TransactionOperations.withoutTransaction());
+        return new StorageScrubber(store, images, blobs, progressRepo, orphans, service, metrics,
+                true, repair, true, DataSize.ofMegabytes(100), batchSize,
+                Duration.ofMinutes(1), Duration.ofSeconds(1), Duration.ofDays(1), orphanGrace);
+    }
+
+    @Test
+    void rows_missingAndCorruptBlobsAreMarked_inRepairMode() throws Exception {
+        ImageAsset good = row(1, put("good"), ImageStatus.READY);
+        ImageAsset corrupt = row(2, put("bad"), ImageStatus.READY);
+        Files.writeString(tmp.resolve("storage").resolve(corrupt.getStoredFilename()), "bit rot");
+        ImageAsset missing = row(3, ImageService.blobName(HashUtil.sha256("gone".getBytes())), ImageStatus.READY);
+        ImageAsset processing = row(4, missing.getStoredFilename(), ImageStatus.PROCESSING);
+        when(images.findPage(eq(0L), isNull(), isNull(), any()))
+                .thenReturn(List.of(good, corrupt, missing, processing));
+        StorageScrubber s = scrubber(true, 10, Duration.ofHours(1));
+
+        assertTrue(s.step()); // starts the pass
+        assertTrue(s.step());
+
+        verify(images).updateStatus(2L, ImageStatus.CORRUPT);
+        verify(images).updateStatus(3L, ImageStatus.MISSING);
+        verify(images, times(2)).updateStatus(anyLong(), any());
+        assertEquals(ScrubProgress.Phase.BLOBS, progress.getPhase());
+        assertEquals(4, progress.getLastId());
+        assertEquals(1, progress.getMissing());
+        assertEquals(1, progress.getCorrupt());
+        assertTrue(progress.getBytesVerified() > 0);
+    }
+
+    @Test
+    void reportOnly_changesNothing_andResumesFromTheSavedPosition() throws Exception {
+        progress = new ScrubProgress();
+        progress.setName(StorageScrubber.NAME);
+        progress.setPhase(ScrubProgress.Phase.ROWS);
+        progress.setLastId(7);
+        progress.setPassStartedAt(Instant.now());
+        String gone = ImageService.blobName(HashUtil.sha256("gone".getBytes()));
+        when(images.findPage(eq(7L), isNull(), isNull(), any()))
+                .thenReturn(List.of(row(8, gone, ImageStatus.READY), row(9, put("ok"), ImageStatus.READY)));
+
+        scrubber(false, 2, Duration.ZERO).step();
+
+        verify(images, never()).updateStatus(anyLong(), any());
+        assertEquals(9, progress.getLastId());
+        assertEquals(1, progress.getMissing());
+        assertEquals(ScrubProgress.Phase.ROWS, progress.getPhase()); // full batch: more rows may follow
+    }
+
+    @Test
+    void blobs_orphansAreRemembered_andOnlyDeletedAfterTheGracePeriod() throws Exception {
+        String used = put("used");
+        String orphan = put("orphan");
+        when(blobs.findStoredFilenames(anyCollection()))
+                .thenAnswer(inv -> inv.<Collection<String>>getArgument(0).stream().filter(used::equals).toList());
+        StorageScrubber s = scrubber(true, 10, Duration.ofHours(1));
+        progress = blobPhase();
+
+        s.step();
+
+        ArgumentCaptor<ScrubOrphan> saved = ArgumentCaptor.forClass(ScrubOrphan.class);
+        verify(orphans).save(saved.capture());
+        assertEquals(orphan, saved.getValue().getBlobKey());
+        assertTrue(store.exists(orphan));
+        assertEquals(ScrubProgress.Phase.IDLE, progress.getPhase());
+        assertEquals(1, progress.getOrphans());
+        verify(orphans).deleteNotSeenSince(any());
+
+        // next pass: first seen long enough ago
+        saved.getValue().setFirstSeen(Instant.now().minus(Duration.ofHours(2)));
+        when(orphans.findAllById(List.of(orphan))).thenReturn(List.of(saved.getValue()));
+        progress = blobPhase();
+
+        s.step();
+
+        assertFalse(store.exists(orphan));
+        assertTrue(store.exists(used));
+        verify(orphans).delete(saved.getValue());
+    }
+
+    private ScrubProgress blobPhase() {
+        ScrubProgress p = new ScrubProgress();
+        p.setName(StorageScrubber.NAME);
+        p.setPhase(ScrubProgress.Phase.BLOBS);
+        p.setPassStartedAt(Instant.now());
+        return p;
+    }
+
+    /** Stores {@code content} under its content address; returns the key. */
+    private String put(String content) throws Exception {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        String key = ImageService.blobName(HashUtil.sha256(data));
+        store.put(key, Files.write(Files.createTempFile(store.stagingDir(), "upload-", ".tmp"), data));
+        return key;
+    }
+
+    private static ImageAsset row(long id, String key, ImageStatus status) {
+        ImageAsset a = new ImageAsset();
+        a.setId(id);
+        a.setStoredFilename(key);
+        a.setChecksumSha256(key.substring(key.lastIndexOf('/') + 1));
+        a.setStatus(status);
+        return a;
+    }
+}
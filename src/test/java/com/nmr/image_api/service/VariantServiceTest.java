@@ -0,0 +1,112 @@
+package com.nmr.image_api.service;
+
+import com.nmr.image_api.storage.BlobSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VariantServiceTest {
+
+    private static final String SUM_A = "a".repeat(64);
+    private static final String SUM_B = "b".repeat(64);
+
+    @TempDir
+    Path tmp;
+
+    private Path storage;
+    private BlobSource original;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = Files.createDirectories(tmp.resolve("storage"));
+        Path file = storage.resolve("orig.png");
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        original = BlobSource.of(file);
+    }
+
+    @Test
+    void cover_cropsToExactSize_andIsServedFromDiskAfterwards() throws Exception {
+        CountingVariantService svc = new CountingVariantService(DataSize.ofMegabytes(10));
+        VariantSpec spec = VariantSpec.of(100, 100, "cover", "jpeg", 80, "image/png");
+
+        Path first = svc.getOrRender(SUM_A, original, spec);
+        BufferedImage img = ImageIO.read(first.toFile());
+        assertEquals(100, img.getWidth());
+        assertEquals(100, img.getHeight());
+        assertTrue(first.startsWith(tmp.resolve("derivatives")));
+
+        assertEquals(first, svc.getOrRender(SUM_A, original, spec));
+        assertEquals(1, svc.renders.get());
+    }
+
+    @Test
+    void contain_keepsAspectRatio() throws Exception {
+        VariantService svc = new VariantService(storage.toString(), "", DataSize.ofMegabytes(10));
+        Path p = svc.getOrRender(SUM_A, original, VariantSpec.of(100, 100, null, "png", null, "image/png"));
+        BufferedImage img = ImageIO.read(p.toFile());
+        assertEquals(100, img.getWidth());
+        assertEquals(50, img.getHeight());
+    }
+
+    @Test
+    void concurrentMisses_renderOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountingVariantService svc = new CountingVariantService(DataSize.ofMegabytes(10)) {
+            @Override
+            void render(BlobSource src, VariantSpec spec, Path out) throws IOException {
+                try { release.await(); } catch (InterruptedException e) { throw new IOException(e); }
+                super.render(src, spec, out);
+            }
+        };
+        VariantSpec spec = VariantSpec.of(50, null, null, "jpeg", null, "image/png");
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Path>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) results.add(pool.submit(() -> svc.getOrRender(SUM_A, original, spec)));
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<Path> f : results) assertTrue(Files.exists(f.get(10, TimeUnit.SECONDS)));
+        pool.shutdown();
+
+        assertEquals(1, svc.renders.get());
+    }
+
+    @Test
+    void exceedingMaxSize_evictsLeastRecentlyUsed() throws Exception {
+        VariantService svc = new VariantService(storage.toString(), "", DataSize.ofBytes(1));
+        VariantSpec spec = VariantSpec.of(80, 40, "fill", "png", null, "image/png");
+
+        Path a = svc.getOrRender(SUM_A, original, spec);
+        Path b = svc.getOrRender(SUM_B, original, spec);
+
+        assertFalse(Files.exists(a));
+        assertTrue(Files.exists(b));
+    }
+
+    private class CountingVariantService extends VariantService {
+        final AtomicInteger renders = new AtomicInteger();
+
+        CountingVariantService(DataSize max) throws IOException {
+            super(storage.toString(), "", max);
+        }
+
+        @Override
+        void render(BlobSource src, VariantSpec spec, Path out) throws IOException {
+            renders.incrementAndGet();
+            super.render(src, spec, out);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.nmr.image_api.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Behaviour every {@link BlobStore} must have; one subclass per implementation. */
+abstract class BlobStoreContractTest {
+
+    @TempDir
+    Path tmp;
+
+    private final List<BlobStore> opened = new ArrayList<>();
+
+    /** A store over {@code root}; called again with the same root to check what survives a restart. */
+    abstract BlobStore create(Path root) throws IOException;
+
+    BlobStore open() throws IOException {
+        BlobStore s = create(tmp.resolve("storage"));
+        opened.add(s);
+        return s;
+    }
+
+    /** Closes what {@link #open()} returned so far (a restart). */
+    void closeAll() throws Exception {
+        for (BlobStore s : opened) if (s instanceof AutoCloseable c) c.close();
+        opened.clear();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        closeAll();
+    }
+
+    @Test
+    void put_consumesStagedFile_andContentIsReadableAndLocatable() throws Exception {
+        BlobStore store = open();
+        byte[] data = bytes(5000, 1);
+        Path staged = stage(store, data);
+
+        store.put("ab/blob1.png", staged);
+
+        assertFalse(Files.exists(staged));
+        assertTrue(store.exists("ab/blob1.png"));
+        assertArrayEquals(data, toArray(store.read("ab/blob1.png")));
+        assertArrayEquals(data, toArray(store.source("ab/blob1.png").read()));
+        assertArrayEquals(data, readRegion(store.locate("ab/blob1.png")));
+    }
+
+    @Test
+    void put_sameKeyAgain_replacesContent() throws Exception {
+        BlobStore store = open();
+        store.put("k.png", stage(store, bytes(100, 1)));
+        byte[] second = bytes(300, 2);
+        store.put("k.png", stage(store, second));
+
+        assertArrayEquals(second, toArray(store.read("k.png")));
+        assertEquals(300, store.locate("k.png").length());
+    }
+
+    @Test
+    void delete_removesBlob_once() throws Exception {
+        BlobStore store = open();
+        store.put("gone.png", stage(store, bytes(100, 1)));
+
+        assertTrue(store.delete("gone.png"));
+
+        assertFalse(store.exists("gone.png"));
+        assertThrows(NoSuchFileException.class, () -> store.read("gone.png"));
+        assertThrows(NoSuchFileException.class, () -> store.locate("gone.png"));
+        assertFalse(store.delete("gone.png"));
+        assertFalse(store.delete("never.png"));
+    }
+
+    @Test
+    void concurrentPuts_allLand() throws Exception {
+        BlobStore store = open();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                int n = i;
+                done.add(pool.submit(() -> {
+                    store.put("c/" + n + ".bin", stage(store, bytes(1000 + n, n)));
+                    return null;
+                }));
+            }
+            for (Future<?> f : done) f.get();
+        } finally {
+            pool.shutdownNow();
+        }
+        for (int i = 0; i < 64; i++) assertArrayEquals(bytes(1000 + i, i), toArray(store.read("c/" + i + ".bin")));
+    }
+
+    @Test
+    void keys_areSorted_resumeAfterAKey_andSkipStagedFiles() throws Exception {
+        BlobStore store = open();
+        for (String k : List.of("b/x", "a.png", "a/y", "c", "a/b/z")) store.put(k, stage(store, bytes(10, 1)));
+        stage(store, bytes(10, 2)); // an upload in progress
+
+        try (var s = store.keys("")) {
+            assertEquals(List.of("a.png", "a/b/z", "a/y", "b/x", "c"), s.toList());
+        }
+        try (var s = store.keys("a/b/z")) {
+            assertEquals(List.of("a/y", "b/x", "c"), s.toList());
+        }
+        try (var s = store.keys("c")) {
+            assertEquals(List.of(), s.toList());
+        }
+    }
+
+    @Test
+    void reopen_keepsContentAndDeletions() throws Exception {
+        BlobStore store = open();
+        store.put("a.png", stage(store, bytes(100, 1)));
+        store.put("b.png", stage(store, bytes(200, 2)));
+        store.put("a.png", stage(store, bytes(150, 3)));
+        store.delete("b.png");
+        closeAll();
+
+        BlobStore again = open();
+
+        assertArrayEquals(bytes(150, 3), toArray(again.read("a.png")));
+        assertFalse(again.exists("b.png"));
+    }
+
+    static Path stage(BlobStore store, byte[] data) throws IOException {
+        Path f = Files.createTempFile(store.stagingDir(), "upload-", ".tmp");
+        return Files.write(f, data);
+    }
+
+    static byte[] bytes(int n, long seed) {
+        byte[] b = new byte[n];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    static byte[] toArray(ByteBuffer buf) {
+        byte[] b = new byte[buf.remaining()];
+        buf.duplicate().get(b);
+        return b;
+    }
+
+    static byte[] readRegion(BlobRegion r) throws IOException {
+        try (FileChannel ch = FileChannel.open(r.file(), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate((int) r.length());
+            while (buf.hasRemaining()) ch.read(buf, r.offset() + buf.position());
+            return buf.array();
+        }
+    }
+}
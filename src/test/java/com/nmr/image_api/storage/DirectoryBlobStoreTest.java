@@ -0,0 +1,56 @@
+package com.nmr.image_api.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryBlobStoreTest extends BlobStoreContractTest {
+
+    @Override
+    BlobStore create(Path root) throws IOException {
+        return new DirectoryBlobStore(root, new Fsync(Fsync.Mode.ALWAYS, Duration.ZERO));
+    }
+
+    @Test
+    void blobIsAPlainFileUnderRoot() throws Exception {
+        BlobStore store = open();
+        store.put("ab/x.png", stage(store, bytes(10, 1)));
+
+        BlobRegion r = store.locate("ab/x.png");
+
+        assertEquals(tmp.resolve("storage/ab/x.png").toAbsolutePath(), r.file());
+        assertEquals(0, r.offset());
+        assertTrue(Files.isRegularFile(r.file()));
+    }
+
+    @Test
+    void keysOutsideRoot_areRejected() throws Exception {
+        BlobStore store = open();
+        assertThrows(IllegalArgumentException.class, () -> store.exists("../escape.png"));
+        assertThrows(IllegalArgumentException.class, () -> store.delete("a/../../escape.png"));
+    }
+
+    @Test
+    void crashBeforeRename_leavesNoBlob_andTheStagedFileIsSweptOnceStale() throws Exception {
+        BlobStore store = open();
+        Path stale = stage(store, bytes(10, 1));
+        Path fresh = stage(store, bytes(10, 2)); // e.g. another instance's upload in progress
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(Staging.STALE_AFTER).minusSeconds(1)));
+        closeAll();
+
+        BlobStore again = open();
+
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(fresh));
+        try (var keys = again.keys("")) {
+            assertEquals(0, keys.count());
+        }
+    }
+}
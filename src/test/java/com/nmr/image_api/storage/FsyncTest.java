@@ -0,0 +1,75 @@
+package com.nmr.image_api.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FsyncTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void group_concurrentWritersShareCommits() throws Exception {
+        try (Fsync fsync = new Fsync(Fsync.Mode.GROUP, Duration.ofMillis(20));
+             FileChannel ch = FileChannel.open(tmp.resolve("pack"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> done = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                done.add(pool.submit(() -> {
+                    ch.write(ByteBuffer.wrap(new byte[100]));
+                    fsync.sync(ch);
+                    fsync.sync(tmp);
+                    return null;
+                }));
+            }
+            for (Future<?> f : done) f.get();
+
+            assertTrue(fsync.commits() >= 1);
+            assertTrue(fsync.commits() < 32, "commits: " + fsync.commits());
+        }
+    }
+
+    @Test
+    void group_failedCommit_failsItsWaiters() throws Exception {
+        try (Fsync fsync = new Fsync(Fsync.Mode.GROUP, Duration.ofMillis(5))) {
+            FileChannel ch = FileChannel.open(tmp.resolve("pack"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            ch.close();
+
+            assertThrows(IOException.class, () -> fsync.sync(ch));
+            fsync.sync(tmp); // the next commit is unaffected
+        }
+    }
+
+    @Test
+    void group_syncAfterClose_forcesInline() throws Exception {
+        Path f = Files.writeString(tmp.resolve("a"), "x");
+        Fsync fsync = new Fsync(Fsync.Mode.GROUP, Duration.ofMillis(5));
+        fsync.close();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> fsync.sync(f, tmp));
+        assertThrows(IOException.class, () -> fsync.sync(tmp.resolve("missing")));
+    }
+
+    @Test
+    void always_forcesFilesAndDirectories_noneDoesNothing() throws Exception {
+        Path f = Files.writeString(tmp.resolve("a"), "x");
+        new Fsync(Fsync.Mode.ALWAYS, Duration.ZERO).sync(f, tmp);
+
+        Fsync.none().sync(tmp.resolve("missing")); // would fail if it tried
+    }
+}
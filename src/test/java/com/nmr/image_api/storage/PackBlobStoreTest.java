@@ -0,0 +1,103 @@
+package com.nmr.image_api.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackBlobStoreTest extends BlobStoreContractTest {
+
+    private long maxPackSize = 1 << 20;
+    private final Fsync fsync = new Fsync(Fsync.Mode.GROUP, Duration.ofMillis(1));
+
+    @Override
+    BlobStore create(Path root) throws IOException {
+        return new PackBlobStore(root, maxPackSize, 0.5, fsync);
+    }
+
+    @AfterEach
+    void closeFsync() {
+        fsync.close();
+    }
+
+    @Test
+    void blobsShareOnePackFile() throws Exception {
+        BlobStore store = open();
+        store.put("a.png", stage(store, bytes(100, 1)));
+        store.put("b.png", stage(store, bytes(100, 2)));
+
+        BlobRegion a = store.locate("a.png"), b = store.locate("b.png");
+
+        assertEquals(a.file(), b.file());
+        assertTrue(b.offset() > a.offset());
+        assertEquals(List.of(PackBlobStore.packName(1)), packs());
+    }
+
+    @Test
+    void fullPack_isSealed_andWritesRollOver() throws Exception {
+        maxPackSize = 4096;
+        BlobStore store = open();
+        for (int i = 0; i < 6; i++) store.put(i + ".bin", stage(store, bytes(1000, i)));
+
+        assertTrue(packs().size() >= 2, packs().toString());
+        for (int i = 0; i < 6; i++) assertArrayEquals(bytes(1000, i), toArray(store.read(i + ".bin")));
+    }
+
+    @Test
+    void compaction_rewritesMostlyDeadPacks_andDeletionsStayDeleted() throws Exception {
+        maxPackSize = 8192;
+        PackBlobStore store = (PackBlobStore) open();
+        for (int i = 0; i < 4; i++) store.put(i + ".bin", stage(store, bytes(2000, i))); // pack 1, stays mostly live
+        for (int i = 4; i < 7; i++) store.put(i + ".bin", stage(store, bytes(2000, i))); // pack 2
+        store.delete("0.bin"); // tombstone in pack 2 shadowing a blob in pack 1
+        store.delete("4.bin");
+        store.delete("5.bin");
+        store.put("7.bin", stage(store, bytes(3000, 7))); // does not fit: seals pack 2, two thirds dead
+        long before = store.usage()[0];
+
+        assertEquals(1, store.compact());
+        assertTrue(store.usage()[0] < before);
+        assertArrayEquals(bytes(2000, 6), toArray(store.read("6.bin")));
+
+        closeAll(); // also drops the retired pack
+        assertFalse(packs().contains(PackBlobStore.packName(2)), packs().toString());
+        BlobStore again = open();
+        for (int i : new int[]{1, 2, 3, 6}) assertArrayEquals(bytes(2000, i), toArray(again.read(i + ".bin")));
+        assertArrayEquals(bytes(3000, 7), toArray(again.read("7.bin")));
+        for (int i : new int[]{0, 4, 5}) assertFalse(again.exists(i + ".bin"), i + ".bin");
+    }
+
+    @Test
+    void tornRecordAtTheEnd_isCutOffOnOpen() throws Exception {
+        BlobStore store = open();
+        store.put("whole.png", stage(store, bytes(300, 1)));
+        store.put("torn.png", stage(store, bytes(300, 2)));
+        BlobRegion torn = store.locate("torn.png");
+        closeAll();
+        try (FileChannel ch = FileChannel.open(torn.file(), StandardOpenOption.WRITE)) {
+            ch.truncate(torn.offset() + 100); // crash halfway through the data
+        }
+
+        BlobStore again = open();
+
+        assertArrayEquals(bytes(300, 1), toArray(again.read("whole.png")));
+        assertFalse(again.exists("torn.png"));
+        again.put("next.png", stage(again, bytes(50, 3)));
+        closeAll();
+        assertArrayEquals(bytes(50, 3), toArray(open().read("next.png")));
+    }
+
+    private List<String> packs() throws IOException {
+        try (var s = Files.list(tmp.resolve("storage/packs"))) {
+            return s.map(p -> p.getFileName().toString()).sorted().toList();
+        }
+    }
+}
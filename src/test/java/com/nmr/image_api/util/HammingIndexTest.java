@@ -0,0 +1,60 @@
+package com.nmr.image_api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HammingIndexTest {
+
+    @Test
+    void query_findsExactlyWhatABruteForceScanFinds() {
+        Random rnd = new Random(42);
+        int n = 20_000;
+        long[] ids = new long[n], hashes = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i + 1;
+            // every fourth entry is a near-duplicate of an earlier one
+            hashes[i] = i % 4 == 3 ? flip(hashes[rnd.nextInt(i)], rnd.nextInt(12), rnd) : rnd.nextLong();
+        }
+        HammingIndex index = new HammingIndex();
+        index.addAll(ids, hashes, n / 2);
+        for (int i = n / 2; i < n; i++) index.add(ids[i], hashes[i]); // through the delta and several merges
+
+        for (int q = 0; q < 200; q++) {
+            int i = rnd.nextInt(n);
+            long query = flip(hashes[i], rnd.nextInt(4), rnd);
+            for (int d : new int[]{0, 3, 8, 13, 16}) {
+                List<HammingIndex.Match> expected = IntStream.range(0, n)
+                        .filter(j -> PerceptualHash.distance(hashes[j], query) <= d && ids[j] != ids[i])
+                        .mapToObj(j -> new HammingIndex.Match(ids[j], hashes[j], PerceptualHash.distance(hashes[j], query)))
+                        .sorted(Comparator.comparingInt(HammingIndex.Match::distance).thenComparingLong(HammingIndex.Match::id))
+                        .toList();
+                assertEquals(expected, index.query(query, d, n, ids[i]), "distance " + d);
+            }
+        }
+    }
+
+    @Test
+    void removedEntries_areNotReported_andDuplicatesOnlyOnce() {
+        HammingIndex index = new HammingIndex();
+        index.addAll(new long[]{1, 2}, new long[]{0xF0L, 0xF1L}, 2);
+        index.add(3, 0xF3L);
+        index.add(2, 0xF1L); // processed twice
+
+        assertEquals(1, index.remove(1, 0xF0L));
+        assertEquals(1, index.remove(3, 0xF3L));
+
+        List<HammingIndex.Match> found = index.query(0xF0L, 4, 10, -1);
+        assertEquals(List.of(new HammingIndex.Match(2, 0xF1L, 1)), found);
+    }
+
+    private static long flip(long hash, int bits, Random rnd) {
+        for (int i = 0; i < bits; i++) hash ^= 1L << rnd.nextInt(64);
+        return hash;
+    }
+}
@@ -1,11 +1,29 @@
 package com.nmr.image_api.util;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class HashUtilTest {
 
+    private static final String ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+    private static final String EMPTY = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    @TempDir
+    Path tmp;
+
     @Test
     void sha256_producesExpectedLengthAndHex() {
         byte[] data = "hello".getBytes();
@@ -15,4 +33,52 @@ class HashUtilTest {
         assertTrue(hash.matches("[0-9a-f]{64}"));
     }
 
+    @Test
+    void sha256_knownVectors_allInputKinds() throws Exception {
+        byte[] abc = "abc".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(ABC, HashUtil.sha256(abc));
+        assertEquals(EMPTY, HashUtil.sha256(new byte[0]));
+        assertEquals(ABC, HashUtil.sha256(ByteBuffer.wrap(abc)));
+        assertEquals(ABC, HashUtil.sha256(ByteBuffer.allocateDirect(3).put(abc).flip()));
+        assertEquals(ABC, HashUtil.sha256(new ByteArrayInputStream(abc)));
+
+        Path f = Files.write(tmp.resolve("abc"), abc);
+        assertEquals(ABC, HashUtil.sha256(f));
+        assertEquals(EMPTY, HashUtil.sha256(Files.createFile(tmp.resolve("empty"))));
+    }
+
+    @Test
+    void failedHash_doesNotAffectTheNext() {
+        InputStream failing = new InputStream() {
+            int n;
+            @Override public int read() { throw new IllegalStateException(); }
+            @Override public int read(byte[] b, int off, int len) {
+                if (n++ > 0) throw new IllegalStateException("boom");
+                b[off] = 1;
+                return 1;
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> HashUtil.sha256(failing));
+        assertEquals(ABC, HashUtil.sha256("abc".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void mappedFile_spanningSeveralWindows_matchesStreamingHash() throws Exception {
+        Path f = tmp.resolve("big");
+        byte[] tail = new byte[4096];
+        ThreadLocalRandom.current().nextBytes(tail);
+        try (FileChannel ch = FileChannel.open(f, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(tail), HashUtil.MAP_CHUNK + 123); // sparse: cheap to create
+        }
+        try (InputStream in = Files.newInputStream(f)) {
+            assertEquals(HashUtil.sha256(in), HashUtil.sha256(f));
+        }
+    }
+
+    @Test
+    void hex_matchesLowerCaseEncoding() {
+        byte[] b = {0, 15, 16, (byte) 0xab, (byte) 0xff};
+        assertEquals("000f10abff", HashUtil.hex(b));
+        assertEquals(HexFormat.of().formatHex(HashUtil.newSha256().digest()), EMPTY);
+    }
 }
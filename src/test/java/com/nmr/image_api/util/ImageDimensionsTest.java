@@ -0,0 +1,65 @@
+package com.nmr.image_api.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageDimensionsTest {
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"png", "jpeg", "gif", "bmp"})
+    void fromHeader_matchesEncodedSize(String format) throws Exception {
+        byte[] data = encode(format, 123, 45);
+        assertEquals(new ImageDimensions.Size(123, 45), ImageDimensions.fromHeader(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    void fromHeader_webpExtended() throws Exception {
+        byte[] b = new byte[32];
+        System.arraycopy("RIFF".getBytes(), 0, b, 0, 4);
+        System.arraycopy("WEBPVP8X".getBytes(), 0, b, 8, 8);
+        b[24] = (byte) 199; // width-1 = 199
+        b[27] = (byte) 99;  // height-1 = 99
+        assertEquals(new ImageDimensions.Size(200, 100), ImageDimensions.fromHeader(new ByteArrayInputStream(b)));
+    }
+
+    @Test
+    void fromHeader_unknownFormat_returnsNull() throws Exception {
+        assertNull(ImageDimensions.fromHeader(new ByteArrayInputStream("<html>not an image</html>".getBytes())));
+    }
+
+    @Test
+    void probe_truncatedJpeg_fallsBackToNull() throws Exception {
+        byte[] jpeg = encode("jpeg", 10, 10);
+        Path p = dir.resolve("cut.jpg");
+        Files.write(p, java.util.Arrays.copyOf(jpeg, 4));
+        assertNull(ImageDimensions.probe(p));
+    }
+
+    @Test
+    void probe_file() throws Exception {
+        Path p = dir.resolve("a.png");
+        Files.write(p, encode("png", 64, 32));
+        assertEquals(new ImageDimensions.Size(64, 32), ImageDimensions.probe(p));
+    }
+
+    private static byte[] encode(String format, int w, int h) throws Exception {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(img, format, bos));
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,66 @@
+package com.nmr.image_api.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerceptualHashTest {
+
+    @Test
+    void resizedAndReencodedCopy_isNear_otherImageIsFar() throws Exception {
+        BufferedImage photo = scene(1200, 900, 1);
+        long original = PerceptualHash.dHash(ByteBuffer.wrap(encode(photo, "png")));
+
+        long copy = PerceptualHash.dHash(ByteBuffer.wrap(encode(resize(photo, 400, 300), "jpg")));
+        long other = PerceptualHash.dHash(ByteBuffer.wrap(encode(scene(1200, 900, 2), "png")));
+
+        assertTrue(PerceptualHash.distance(original, copy) <= 4, "copy: " + PerceptualHash.distance(original, copy));
+        assertTrue(PerceptualHash.distance(original, other) >= 16, "other: " + PerceptualHash.distance(original, other));
+    }
+
+    @Test
+    void notAnImage_hasNoHash() {
+        assertNull(PerceptualHash.dHash(ByteBuffer.wrap("not an image".getBytes())));
+    }
+
+    /** A gradient with random blocks, so the hash has structure to pick up. */
+    private static BufferedImage scene(int w, int h, long seed) {
+        Random rnd = new Random(seed);
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(rnd.nextInt()), w, h, new Color(rnd.nextInt())));
+        g.fillRect(0, 0, w, h);
+        for (int i = 0; i < 12; i++) {
+            g.setColor(new Color(rnd.nextInt()));
+            g.fillRect(rnd.nextInt(w), rnd.nextInt(h), w / 4, h / 4);
+        }
+        g.dispose();
+        return img;
+    }
+
+    private static BufferedImage resize(BufferedImage src, int w, int h) {
+        BufferedImage dst = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = dst.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(src, 0, 0, w, h, null);
+        g.dispose();
+        return dst;
+    }
+
+    private static byte[] encode(BufferedImage img, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, format, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,63 @@
+package com.nmr.image_api.web;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitsTest {
+
+    private final ConcurrencyLimits limits =
+            new ConcurrencyLimits(Map.of("id", 2, "variant", 0), Duration.ofMillis(20), Duration.ofSeconds(3));
+
+    @Test
+    void overTheCap_isShed_untilASlotIsReleased() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        limits.bindTo(registry);
+        MockHttpServletRequest a = new MockHttpServletRequest(), b = new MockHttpServletRequest();
+        limits.acquire("id", a);
+        limits.acquire("id", b);
+        assertEquals(2.0, registry.get("image.limits.active").tag("endpoint", "id").gauge().value());
+
+        OverloadedException e = assertThrows(OverloadedException.class, () -> limits.acquire("id", new MockHttpServletRequest()));
+        assertEquals(Duration.ofSeconds(3), e.getRetryAfter());
+        assertEquals(1.0, registry.get("image.limits.shed").tag("endpoint", "id").counter().count());
+
+        limits.release(a);
+        limits.release(a); // once per request
+        limits.acquire("id", new MockHttpServletRequest());
+        assertEquals(0, limits.available("id"));
+    }
+
+    @Test
+    void filter_releasesTheSlot_afterTheResponse_evenWhenTheHandlerFails() {
+        MockHttpServletRequest req = new MockHttpServletRequest("GET", "/images/1");
+        MockFilterChain failing = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest r, HttpServletResponse s) {
+                limits.acquire("id", r);
+                assertEquals(1, limits.available("id"));
+                throw new IllegalStateException("boom");
+            }
+        });
+
+        assertThrows(IllegalStateException.class, () -> limits.doFilter(req, new MockHttpServletResponse(), failing));
+
+        assertEquals(2, limits.available("id"));
+    }
+
+    @Test
+    void unlimitedEndpoints_neverWait() {
+        for (int i = 0; i < 100; i++) limits.acquire("variant", new MockHttpServletRequest());
+        limits.acquire("ref", new MockHttpServletRequest());
+    }
+}
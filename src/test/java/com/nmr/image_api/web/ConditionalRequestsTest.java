@@ -0,0 +1,81 @@
+package com.nmr.image_api.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConditionalRequestsTest {
+
+    private static final String ETAG = "\"abc\"";
+    private static final Instant MODIFIED = Instant.parse("2024-05-01T10:00:00.250Z");
+    private static final String MODIFIED_HTTP = "Wed, 01 May 2024 10:00:00 GMT";
+
+    @Test
+    void noConditions_proceeds() {
+        assertNull(evaluate(request("GET")));
+    }
+
+    @Test
+    void ifNoneMatch_listAndWildcard_notModified() {
+        ResponseEntity<Void> r = evaluate(request("GET", HttpHeaders.IF_NONE_MATCH, "\"x\", W/\"abc\""));
+        assertEquals(HttpStatus.NOT_MODIFIED, r.getStatusCode());
+        assertEquals(ETAG, r.getHeaders().getETag());
+        assertEquals("max-age=60", r.getHeaders().getCacheControl());
+
+        assertEquals(HttpStatus.NOT_MODIFIED, evaluate(request("GET", HttpHeaders.IF_NONE_MATCH, "*")).getStatusCode());
+        assertNull(evaluate(request("GET", HttpHeaders.IF_NONE_MATCH, "\"x\", \"y\"")));
+    }
+
+    @Test
+    void ifModifiedSince_usesSecondPrecision_andIsIgnoredWhenIfNoneMatchPresent() {
+        assertEquals(HttpStatus.NOT_MODIFIED,
+                evaluate(request("GET", HttpHeaders.IF_MODIFIED_SINCE, MODIFIED_HTTP)).getStatusCode());
+        assertNull(evaluate(request("GET", HttpHeaders.IF_MODIFIED_SINCE, "Wed, 01 May 2024 09:59:59 GMT")));
+
+        MockHttpServletRequest both = request("GET", HttpHeaders.IF_MODIFIED_SINCE, MODIFIED_HTTP);
+        both.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        assertNull(evaluate(both));
+    }
+
+    @Test
+    void ifMatch_onStateChangingMethods_isStrongAndFailsWith412() {
+        assertNull(evaluate(request("PUT", HttpHeaders.IF_MATCH, ETAG)));
+        assertNull(evaluate(request("DELETE", HttpHeaders.IF_MATCH, "*")));
+        assertEquals(HttpStatus.PRECONDITION_FAILED,
+                evaluate(request("PUT", HttpHeaders.IF_MATCH, "W/\"abc\"")).getStatusCode());
+        assertEquals(HttpStatus.PRECONDITION_FAILED,
+                evaluate(request("DELETE", HttpHeaders.IF_MATCH, "\"stale\"")).getStatusCode());
+    }
+
+    @Test
+    void ifUnmodifiedSince_andIfNoneMatchOnPut_failWith412() {
+        assertEquals(HttpStatus.PRECONDITION_FAILED,
+                evaluate(request("DELETE", HttpHeaders.IF_UNMODIFIED_SINCE, "Wed, 01 May 2024 09:00:00 GMT")).getStatusCode());
+        assertNull(evaluate(request("DELETE", HttpHeaders.IF_UNMODIFIED_SINCE, MODIFIED_HTTP)));
+        assertEquals(HttpStatus.PRECONDITION_FAILED,
+                evaluate(request("PUT", HttpHeaders.IF_NONE_MATCH, "*")).getStatusCode());
+    }
+
+    @Test
+    void malformedDate_isIgnored() {
+        assertNull(evaluate(request("GET", HttpHeaders.IF_MODIFIED_SINCE, "yesterday")));
+    }
+
+    private static ResponseEntity<Void> evaluate(MockHttpServletRequest request) {
+        HttpHeaders headers = ConditionalRequests.validators(new HttpHeaders(), ETAG, MODIFIED);
+        headers.setCacheControl("max-age=60");
+        return ConditionalRequests.evaluate(request, ETAG, MODIFIED, headers);
+    }
+
+    private static MockHttpServletRequest request(String method, String... header) {
+        MockHttpServletRequest r = new MockHttpServletRequest(method, "/images/1");
+        for (int i = 0; i + 1 < header.length; i += 2) r.addHeader(header[i], header[i + 1]);
+        return r;
+    }
+}
@@ -0,0 +1,136 @@
+package com.nmr.image_api.web;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileResponderTest {
+
+    private static final String ETAG = "\"abc\"";
+    private static final Instant MODIFIED = Instant.parse("2024-05-01T10:00:00Z");
+
+    @TempDir
+    Path dir;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = dir.resolve("blob");
+        Files.writeString(file, "0123456789");
+    }
+
+    @Test
+    void noRange_fullBody() throws Exception {
+        ResponseEntity<Resource> r = serve(get(null));
+        assertEquals(HttpStatus.OK, r.getStatusCode());
+        assertEquals(10, r.getHeaders().getContentLength());
+        assertEquals("bytes", r.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertEquals("0123456789", body(r));
+    }
+
+    @Test
+    void singleRange_partialContent() throws Exception {
+        ResponseEntity<Resource> r = serve(get("bytes=2-5"));
+        assertEquals(HttpStatus.PARTIAL_CONTENT, r.getStatusCode());
+        assertEquals("bytes 2-5/10", r.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, r.getHeaders().getContentLength());
+        assertEquals("2345", body(r));
+
+        assertEquals("789", body(serve(get("bytes=-3"))));
+        assertEquals("89", body(serve(get("bytes=8-"))));
+    }
+
+    @Test
+    void multiRange_multipartByteranges() throws Exception {
+        ResponseEntity<Resource> r = serve(get("bytes=0-1,7-8"));
+        assertEquals(HttpStatus.PARTIAL_CONTENT, r.getStatusCode());
+        assertTrue(r.getHeaders().getContentType().toString().startsWith("multipart/byteranges"));
+        String b = body(r);
+        assertTrue(b.contains("Content-Range: bytes 0-1/10\r\n\r\n01"));
+        assertTrue(b.contains("Content-Range: bytes 7-8/10\r\n\r\n78"));
+        assertEquals(b.getBytes(StandardCharsets.US_ASCII).length, r.getHeaders().getContentLength());
+    }
+
+    @Test
+    void unsatisfiableOrInvalid_416() {
+        ResponseEntity<Resource> r = serve(get("bytes=20-30"));
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, r.getStatusCode());
+        assertEquals("bytes */10", r.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, serve(get("bytes=5-2")).getStatusCode());
+        assertEquals(HttpStatus.OK, serve(get("items=1-2")).getStatusCode());
+    }
+
+    @Test
+    void ifRange_staleValidator_sendsFullBody() throws Exception {
+        MockHttpServletRequest req = get("bytes=0-1");
+        req.addHeader(HttpHeaders.IF_RANGE, "\"other\"");
+        ResponseEntity<Resource> r = serve(req);
+        assertEquals(HttpStatus.OK, r.getStatusCode());
+        assertEquals("0123456789", body(r));
+
+        MockHttpServletRequest byDate = get("bytes=0-1");
+        byDate.addHeader(HttpHeaders.IF_RANGE, "Wed, 01 May 2024 10:00:00 GMT");
+        assertEquals(HttpStatus.PARTIAL_CONTENT, serve(byDate).getStatusCode());
+    }
+
+    @Test
+    void tomcatSendfile_handsRangeToConnector() {
+        MockHttpServletRequest req = get("bytes=3-4");
+        req.setAttribute(FileResponder.SENDFILE_SUPPORTED, Boolean.TRUE);
+        ResponseEntity<Resource> r = serve(req);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, r.getStatusCode());
+        assertNull(r.getBody());
+        assertEquals(file.toAbsolutePath().toString(), req.getAttribute(FileResponder.SENDFILE_FILENAME));
+        assertEquals(3L, req.getAttribute(FileResponder.SENDFILE_START));
+        assertEquals(5L, req.getAttribute(FileResponder.SENDFILE_END));
+    }
+
+    @Test
+    void buffer_rangesAreSlicedFromMemory_andNeverUseSendfile() throws Exception {
+        ByteBuffer data = ByteBuffer.wrap("xx0123456789".getBytes(StandardCharsets.US_ASCII)).position(2);
+        MockHttpServletRequest req = get("bytes=3-4");
+        req.setAttribute(FileResponder.SENDFILE_SUPPORTED, Boolean.TRUE);
+
+        ResponseEntity<Resource> r = FileResponder.serve(req, data, MediaType.IMAGE_PNG, new HttpHeaders(), MODIFIED);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, r.getStatusCode());
+        assertEquals("34", body(r));
+        assertNull(req.getAttribute(FileResponder.SENDFILE_FILENAME));
+        assertEquals("0123456789", body(FileResponder.serve(get(null), data, MediaType.IMAGE_PNG, new HttpHeaders(), MODIFIED)));
+        assertTrue(body(FileResponder.serve(get("bytes=0-0,9-9"), data, MediaType.IMAGE_PNG, new HttpHeaders(), MODIFIED))
+                .contains("Content-Range: bytes 9-9/10\r\n\r\n9"));
+        assertEquals(2, data.position());
+    }
+
+    private ResponseEntity<Resource> serve(MockHttpServletRequest req) {
+        HttpHeaders h = new HttpHeaders();
+        h.setETag(ETAG);
+        return FileResponder.serve(req, file, 10, MediaType.IMAGE_PNG, h, MODIFIED);
+    }
+
+    private static MockHttpServletRequest get(String range) {
+        MockHttpServletRequest req = new MockHttpServletRequest("GET", "/images/1");
+        if (range != null) req.addHeader(HttpHeaders.RANGE, range);
+        return req;
+    }
+
+    private static String body(ResponseEntity<Resource> r) throws Exception {
+        try (var in = r.getBody().getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.nmr.image_api.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NegotiationTest {
+
+    private static final MediaType CBOR = MediaType.parseMediaType("application/cbor");
+
+    @Test
+    void prefers_onlyWhenNamedAndRankedHigher() {
+        assertTrue(Negotiation.prefers("application/cbor", CBOR, MediaType.APPLICATION_JSON));
+        assertTrue(Negotiation.prefers("application/json;q=0.5, application/cbor", CBOR, MediaType.APPLICATION_JSON));
+        assertFalse(Negotiation.prefers("*/*", CBOR, MediaType.APPLICATION_JSON));
+        assertFalse(Negotiation.prefers("application/*", CBOR, MediaType.APPLICATION_JSON));
+        assertFalse(Negotiation.prefers("application/json, application/cbor;q=0.9", CBOR, MediaType.APPLICATION_JSON));
+        assertFalse(Negotiation.prefers("not a media type", CBOR, MediaType.APPLICATION_JSON));
+        assertFalse(Negotiation.prefers(null, CBOR, MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void acceptsGzip_honoursQualityAndWildcard() {
+        assertTrue(Negotiation.acceptsGzip("gzip, deflate, br"));
+        assertTrue(Negotiation.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(Negotiation.acceptsGzip("*"));
+        assertFalse(Negotiation.acceptsGzip("gzip;q=0, *"));
+        assertFalse(Negotiation.acceptsGzip("identity"));
+        assertFalse(Negotiation.acceptsGzip("br"));
+        assertFalse(Negotiation.acceptsGzip(null));
+    }
+}